@@ -4,29 +4,38 @@
  * @output App Change Events
  * @pos Native Service
  * @description Accessibility Service detecting foreground application changes. Triggers auto-tracking features by notifying the Plugin layer.
+ * Event filtering and PackageManager lookups run on DetectionThread; bursts are debounced by AppSwitchCoalescer and
+ * stable switches are published on AppEventBus.
  */
 package com.mistycrown.lumostime;
 
 import android.accessibilityservice.AccessibilityService;
 import android.accessibilityservice.AccessibilityServiceInfo;
-import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
-import java.util.List;
-import android.os.Handler;
-import android.os.Looper;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
 
 public class AppAccessibilityService extends AccessibilityService {
     private static final String TAG = "AppAccessibilityService";
+    // 只在 DetectionThread 上访问
     private String lastPackageName = "";
-    private Handler handler;
+    // 在 DetectionThread 上创建, onDestroy (主线程) 中释放
+    private volatile AppSwitchCoalescer coalescer;
 
     @Override
     public void onServiceConnected() {
         super.onServiceConnected();
-        handler = new Handler(Looper.getMainLooper());
+        // 预先加载规则表和元数据缓存, 构建可启动应用集合 (均在检测线程), 避免第一次切换应用时才查询
+        DetectionThread.post(() -> {
+            AppRuleStore.getInstance(this);
+            PackageMetadataCache.getInstance(this);
+            // 窗口事件先经过合并/防抖, 只有稳定的切换才会分发
+            coalescer = new AppSwitchCoalescer(this, DetectionThread.getHandler(), this::dispatchSwitch);
+        });
+        LaunchablePackageSet.getInstance(this).prepare();
+        // 会话统计只使用无障碍服务这一路来源
+        AppSessionTracker.getInstance(this).setAccessibilityActive(true);
 
         AccessibilityServiceInfo info = new AccessibilityServiceInfo();
         info.eventTypes = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED;
@@ -42,48 +51,54 @@ public class AppAccessibilityService extends AccessibilityService {
     public void onAccessibilityEvent(AccessibilityEvent event) {
         if (event.getEventType() == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
             if (event.getPackageName() != null) {
+                // 主线程只取包名, 过滤/查询标签等 IPC 在检测线程执行
                 String currentPackage = event.getPackageName().toString();
+                DetectionThread.postDetection(() -> handleWindowChange(currentPackage));
+            }
+        }
+    }
 
-                // Ignore if same as last detected app
-                if (currentPackage.equals(lastPackageName)) {
-                    return;
-                }
-
-                // Filter out system/background apps (ignore apps without launch intent)
-                if (!isInterestingApp(currentPackage)) {
-                    Log.d(TAG, "Ignored non-launchable app: " + currentPackage);
-                    return;
-                }
-
-                Log.i(TAG, "===== APP SWITCHED: " + lastPackageName + " -> " + currentPackage + " =====");
-                lastPackageName = currentPackage;
-
-                // Get app label
-                String appLabel = currentPackage;
-                try {
-                    PackageManager pm = getPackageManager();
-                    appLabel = pm.getApplicationLabel(pm.getApplicationInfo(currentPackage, 0)).toString();
-                } catch (Exception e) {
-                    Log.w(TAG, "Could not get app label for " + currentPackage);
-                }
-
-                // Toast notification removed
-                // String finalAppLabel = appLabel;
-                // handler.post(() -> { ... });
-
-                // Update FloatingWindowService directly via static method
-                Log.i(TAG, "📤 Calling FloatingWindowService.updateCurrentApp");
-                FloatingWindowService.updateCurrentApp(currentPackage, appLabel);
+    /**
+     * 运行在 DetectionThread, lastPackageName 只在该线程读写
+     */
+    private void handleWindowChange(String currentPackage) {
+        // Filter out system/background apps (ignore apps without launch intent)
+        // 预先构建的可启动/桌面集合, 一次哈希查询, 不再有 IPC
+        boolean interesting = LaunchablePackageSet.getInstance(this).isInteresting(currentPackage);
+        AppSwitchCoalescer.recordWindowEvent(!interesting);
+        if (!interesting) {
+            return;
+        }
+        coalescer.offer(currentPackage);
+    }
 
-                // Also update AppUsagePlugin for frontend access
-                AppUsagePlugin.updateCurrentPackage(currentPackage);
+    /**
+     * 合并后的稳定切换, 运行在 DetectionThread
+     */
+    private void dispatchSwitch(String currentPackage) {
+        // Ignore if same as last detected app
+        if (currentPackage.equals(lastPackageName)) {
+            return;
+        }
 
-                // Trigger app detected event to React Native
-                AppUsagePlugin.triggerAppDetected(currentPackage, appLabel);
+        Log.i(TAG, "===== APP SWITCHED: " + lastPackageName + " -> " + currentPackage + " =====");
+        lastPackageName = currentPackage;
+        DetectionMetrics.recordSwitch();
+        AppSessionTracker.getInstance(this).onForeground(currentPackage, AppSessionTracker.SOURCE_ACCESSIBILITY);
 
-                Log.i(TAG, "📤 Call completed");
-            }
+        // Get app label and icon (label cached; icon pre-rasterized to the island size, cached as a bitmap)
+        PackageMetadataCache metadata = PackageMetadataCache.getInstance(this);
+        String appLabel = metadata.getLabel(currentPackage);
+        Drawable appIcon = null;
+        try {
+            appIcon = IslandIconCache.getInstance(this).get(currentPackage);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not load app icon for " + currentPackage);
         }
+
+        // 通过事件总线分发: 悬浮窗 (主线程更新图标), AppUsagePlugin (规则匹配), 发布不会阻塞检测线程
+        AppEventBus.publish(AppEvents.FOREGROUND_APP, new AppEvents.ForegroundApp(currentPackage, appLabel, appIcon,
+                SystemClock.elapsedRealtime()));
     }
 
     @Override
@@ -91,40 +106,20 @@ public class AppAccessibilityService extends AccessibilityService {
         Log.w(TAG, "AccessibilityService interrupted");
     }
 
-    private boolean isInterestingApp(String packageName) {
-        try {
-            PackageManager pm = getPackageManager();
-
-            // 1. Check if it's a Home app (Launcher)
-            // System launchers should be recorded as they signify end of app usage
-            Intent homeIntent = new Intent(Intent.ACTION_MAIN);
-            homeIntent.addCategory(Intent.CATEGORY_HOME);
-
-            // Check default launcher
-            ResolveInfo defaultLauncher = pm.resolveActivity(homeIntent, PackageManager.MATCH_DEFAULT_ONLY);
-            if (defaultLauncher != null && packageName.equals(defaultLauncher.activityInfo.packageName)) {
-                return true;
-            }
-
-            // Comprehensive check for any home activity
-            List<ResolveInfo> homeActivities = pm.queryIntentActivities(homeIntent, PackageManager.MATCH_DEFAULT_ONLY);
-            for (ResolveInfo info : homeActivities) {
-                if (packageName.equals(info.activityInfo.packageName)) {
-                    return true;
-                }
-            }
-
-            // 2. Apps that can be launched by user (have a launcher icon)
-            Intent launchIntent = pm.getLaunchIntentForPackage(packageName);
-            return launchIntent != null;
-        } catch (Exception e) {
-            return false;
+    private void releaseCoalescer() {
+        AppSwitchCoalescer current = coalescer;
+        if (current != null) {
+            current.release();
         }
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
+        // 取消等待稳定的切换, 服务销毁后不再分发; 检测线程上再释放一次, 覆盖尚未执行的初始化
+        releaseCoalescer();
+        DetectionThread.post(this::releaseCoalescer);
+        AppSessionTracker.getInstance(this).setAccessibilityActive(false);
         Log.i(TAG, "AccessibilityService destroyed");
     }
 }
@@ -0,0 +1,233 @@
+/**
+ * @file AppEventBus.java
+ * @input publish() from any thread (detection thread, UI thread)
+ * @output Ordered delivery to subscribers on their own executors
+ * @pos Native Infrastructure
+ * @description Lock-free in-process publish/subscribe bus. Each subscriber owns a bounded queue drained on its own
+ * executor, so a publisher never blocks on a slow consumer such as the WebView bridge; sticky topics replay their
+ * last value to late subscribers (e.g. the floating window starting after the current app was detected).
+ */
+package com.mistycrown.lumostime;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 进程内事件总线
+ *
+ * 溢出策略: 订阅者队列满时丢弃最旧的事件 (drop-oldest) 并计数, 发布方永不阻塞。
+ * 对 "当前前台应用" 这类状态型事件, 最新值总是保留下来; 需要每条都处理的订阅者应使用足够大的容量。
+ * 粘性主题: 新订阅者会先收到最后一次发布的值; 与并发发布交错时同一事件可能被投递两次, 订阅者需能容忍。
+ * 保留主题: 没有订阅者时发布的事件暂存 (有界, 丢弃最旧), 交给第一个订阅者后清空, 每条只投递一次。
+ */
+public final class AppEventBus {
+    private static final String TAG = "AppEventBus";
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** 主线程执行, 用于界面更新 */
+    public static final Executor MAIN = mainHandler::post;
+    /** 检测线程执行 */
+    public static final Executor DETECTION = DetectionThread::post;
+    /** 通用后台线程, 用于 WebView 桥等可能较慢的消费者 */
+    public static final Executor BACKGROUND;
+
+    static {
+        ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "LumosEventBus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        BACKGROUND = background;
+    }
+
+    private AppEventBus() {
+    }
+
+    public interface Subscriber<T> {
+        void onEvent(T event);
+    }
+
+    /**
+     * 带类型的主题
+     */
+    public static final class Topic<T> {
+        public final String name;
+        public final boolean sticky;
+        private final CopyOnWriteArrayList<Subscription<T>> subscribers = new CopyOnWriteArrayList<>();
+        private final AtomicReference<T> last = new AtomicReference<>();
+        private final AtomicLong published = new AtomicLong();
+        // 大于 0 时为保留主题; retained 由 topic 自身的锁保护
+        private final int retainCapacity;
+        private final ArrayDeque<T> retained = new ArrayDeque<>();
+
+        public Topic(String name, boolean sticky) {
+            this(name, sticky, 0);
+        }
+
+        /**
+         * @param retainCapacity 没有订阅者时最多暂存的事件数, 0 表示不暂存
+         */
+        public Topic(String name, boolean sticky, int retainCapacity) {
+            this.name = name;
+            this.sticky = sticky;
+            this.retainCapacity = retainCapacity;
+        }
+
+        /**
+         * 最后一次发布的值 (仅粘性主题), 没有时返回 null
+         */
+        public T getLast() {
+            return last.get();
+        }
+
+        public long getPublishedCount() {
+            return published.get();
+        }
+
+        public int getSubscriberCount() {
+            return subscribers.size();
+        }
+
+        public synchronized int getRetainedCount() {
+            return retained.size();
+        }
+    }
+
+    /**
+     * 单个订阅: 有界队列 + 在指定 executor 上串行消费
+     */
+    public static final class Subscription<T> {
+        private final Topic<T> topic;
+        private final Executor executor;
+        private final int capacity;
+        private final Subscriber<T> subscriber;
+        private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile boolean active = true;
+        private final Runnable drainTask = this::drain;
+
+        Subscription(Topic<T> topic, Executor executor, int capacity, Subscriber<T> subscriber) {
+            this.topic = topic;
+            this.executor = executor;
+            this.capacity = Math.max(1, capacity);
+            this.subscriber = subscriber;
+        }
+
+        public void unsubscribe() {
+            active = false;
+            topic.subscribers.remove(this);
+            queue.clear();
+            size.set(0);
+        }
+
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+
+        void offer(T event) {
+            if (!active) {
+                return;
+            }
+            queue.offer(event);
+            // drop-oldest: 超出容量时从队头丢弃
+            int pending = size.incrementAndGet();
+            while (pending > capacity && queue.poll() != null) {
+                dropped.incrementAndGet();
+                pending = size.decrementAndGet();
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(drainTask);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                T event;
+                while (active && (event = queue.poll()) != null) {
+                    size.decrementAndGet();
+                    try {
+                        subscriber.onEvent(event);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Subscriber of " + topic.name + " failed", e);
+                    }
+                }
+                scheduled.set(false);
+                // 清除标记后再检查一次, 避免丢失并发发布的事件
+                if (!active || queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 发布事件, 任何线程都可以调用, 不会阻塞
+     */
+    public static <T> void publish(Topic<T> topic, T event) {
+        topic.published.incrementAndGet();
+        if (topic.sticky) {
+            topic.last.set(event);
+        }
+        if (topic.retainCapacity > 0) {
+            // 与 subscribe 互斥, 暂存的事件不会在订阅的同时被遗漏
+            synchronized (topic) {
+                if (topic.subscribers.isEmpty()) {
+                    topic.retained.addLast(event);
+                    while (topic.retained.size() > topic.retainCapacity) {
+                        topic.retained.pollFirst();
+                    }
+                    Log.d(TAG, "📦 No subscriber for " + topic.name + ", retained (" + topic.retained.size() + ")");
+                    return;
+                }
+                for (Subscription<T> subscription : topic.subscribers) {
+                    subscription.offer(event);
+                }
+            }
+            return;
+        }
+        for (Subscription<T> subscription : topic.subscribers) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * @param executor 事件在该 executor 上按发布顺序串行投递
+     * @param capacity 队列容量, 溢出时丢弃最旧的事件
+     */
+    public static <T> Subscription<T> subscribe(Topic<T> topic, Executor executor, int capacity,
+            Subscriber<T> subscriber) {
+        Subscription<T> subscription = new Subscription<>(topic, executor, capacity, subscriber);
+        if (topic.retainCapacity > 0) {
+            synchronized (topic) {
+                topic.subscribers.add(subscription);
+                T pending;
+                while ((pending = topic.retained.pollFirst()) != null) {
+                    subscription.offer(pending);
+                }
+            }
+            return subscription;
+        }
+        topic.subscribers.add(subscription);
+        if (topic.sticky) {
+            T last = topic.last.get();
+            if (last != null) {
+                subscription.offer(last);
+            }
+        }
+        return subscription;
+    }
+}
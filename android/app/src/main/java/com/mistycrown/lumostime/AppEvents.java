@@ -0,0 +1,96 @@
+/**
+ * @file AppEvents.java
+ * @input -
+ * @output Topic definitions + event payloads for AppEventBus
+ * @pos Native Infrastructure
+ * @description Typed topics shared between the detection services, the floating window and the Capacitor plugins,
+ * replacing the static cross-component calls that silently dropped events when the target was not alive.
+ */
+package com.mistycrown.lumostime;
+
+import android.graphics.drawable.Drawable;
+
+/**
+ * 事件主题与负载定义
+ */
+public final class AppEvents {
+
+    private AppEvents() {
+    }
+
+    /**
+     * 稳定的前台应用切换 (粘性: 悬浮窗/插件稍后启动时也能拿到当前应用)
+     * 发布方: AppAccessibilityService; 订阅方: FloatingWindowService (图标), AppUsagePlugin (规则匹配)
+     */
+    public static final AppEventBus.Topic<ForegroundApp> FOREGROUND_APP =
+            new AppEventBus.Topic<>("foregroundApp", true);
+
+    /**
+     * 命中规则, 在悬浮窗显示 "开始?" 提醒
+     * 发布方: AppUsagePlugin; 订阅方: FloatingWindowService
+     */
+    public static final AppEventBus.Topic<RulePrompt> RULE_PROMPT =
+            new AppEventBus.Topic<>("rulePrompt", false);
+
+    /**
+     * 专注中点击悬浮球, 请求结束计时 (prompt 为 null)
+     * 发布方: FloatingWindowService; 订阅方: FocusNotificationPlugin
+     * 保留: 插件未加载 (WebView 被回收) 时的点击在插件加载后交给插件, 由插件等到 JS 监听后再投递
+     */
+    public static final AppEventBus.Topic<FocusRequest> FOCUS_STOP_REQUEST =
+            new AppEventBus.Topic<>("focusStopRequest", false, 1);
+
+    /**
+     * 提醒模式下点击悬浮球, 请求开始计时
+     * 发布方: FloatingWindowService; 订阅方: FocusNotificationPlugin
+     * 保留: 同上, 只保留最近一次请求
+     */
+    public static final AppEventBus.Topic<FocusRequest> FOCUS_START_REQUEST =
+            new AppEventBus.Topic<>("focusStartRequest", false, 1);
+
+    public static final class ForegroundApp {
+        public final String packageName;
+        public final String appLabel;
+        // 在检测线程预先加载, 可能为 null
+        public final Drawable icon;
+        public final long timestamp;
+
+        public ForegroundApp(String packageName, String appLabel, Drawable icon, long timestamp) {
+            this.packageName = packageName;
+            this.appLabel = appLabel;
+            this.icon = icon;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * 悬浮球发出的开始 / 结束计时请求
+     */
+    public static final class FocusRequest {
+        // 开始请求对应的提醒; 结束请求为 null
+        public final RulePrompt prompt;
+        // 点击时的墙上时间, 与 JS 的 Date.now() 可比, 用于丢弃过期的请求
+        public final long requestedAt;
+
+        public FocusRequest(RulePrompt prompt, long requestedAt) {
+            this.prompt = prompt;
+            this.requestedAt = requestedAt;
+        }
+    }
+
+    public static final class RulePrompt {
+        public final String packageName;
+        // 提醒显示的名称 (标签名称, 没有时为应用名)
+        public final String displayName;
+        // 真实应用名, 用于备注
+        public final String realAppName;
+        public final String activityId;
+
+        public RulePrompt(String packageName, String displayName, String realAppName, String activityId) {
+            this.packageName = packageName;
+            this.displayName = displayName;
+            this.realAppName = realAppName;
+            this.activityId = activityId;
+        }
+    }
+}
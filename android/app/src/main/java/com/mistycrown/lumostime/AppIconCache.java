@@ -0,0 +1,265 @@
+/**
+ * @file AppIconCache.java
+ * @input PackageManager Icons
+ * @output Pre-scaled PNG Icon Bytes
+ * @pos Native Cache
+ * @description Disk-backed icon cache (under the app cache dir) with an in-memory LRU in front. Entries are keyed by
+ * packageName + versionCode/lastUpdateTime so only packages that actually changed are re-rendered and re-encoded.
+ */
+package com.mistycrown.lumostime;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.util.Base64;
+import android.util.Log;
+import android.util.LruCache;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 应用图标缓存
+ * 图标按固定尺寸预先缩放后以PNG保存到 cacheDir/app_icons, 内存中再用LRU缓存一层
+ */
+public class AppIconCache {
+    private static final String TAG = "AppIconCache";
+    private static final String DIR_NAME = "app_icons";
+    private static final String FILE_SUFFIX = ".png";
+    // 文件名格式: <packageName>@<versionCode>_<lastUpdateTime>.png (包名中不会出现'@')
+    private static final char STAMP_SEPARATOR = '@';
+    private static final int ICON_SIZE_DP = 48;
+    private static final int MAX_ICON_SIZE_PX = 144;
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private static AppIconCache instance = null;
+
+    private final File dir;
+    private final int iconSizePx;
+    // packageName -> 磁盘上当前文件对应的版本戳
+    private final Map<String, String> diskIndex = new HashMap<>();
+    private final LruCache<String, Entry> memoryCache;
+
+    private static final class Entry {
+        final String stamp;
+        final byte[] png;
+
+        Entry(String stamp, byte[] png) {
+            this.stamp = stamp;
+            this.png = png;
+        }
+    }
+
+    public static synchronized AppIconCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new AppIconCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AppIconCache(Context context) {
+        float density = context.getResources().getDisplayMetrics().density;
+        iconSizePx = Math.min(MAX_ICON_SIZE_PX, Math.round(ICON_SIZE_DP * density));
+        dir = new File(context.getCacheDir(), DIR_NAME);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Could not create icon cache dir: " + dir);
+        }
+        memoryCache = new LruCache<String, Entry>(MEMORY_CACHE_BYTES) {
+            @Override
+            protected int sizeOf(String key, Entry value) {
+                return value.png.length;
+            }
+        };
+        loadDiskIndex();
+    }
+
+    private void loadDiskIndex() {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        synchronized (diskIndex) {
+            for (File file : files) {
+                String name = file.getName();
+                int sep = name.indexOf(STAMP_SEPARATOR);
+                if (sep <= 0 || !name.endsWith(FILE_SUFFIX)) {
+                    file.delete();
+                    continue;
+                }
+                String packageName = name.substring(0, sep);
+                String stamp = name.substring(sep + 1, name.length() - FILE_SUFFIX.length());
+                String previous = diskIndex.put(packageName, stamp);
+                if (previous != null) {
+                    // 同一个包有多个版本残留, 只保留其中一个, 下次访问时会按版本戳校验
+                    new File(dir, fileName(packageName, previous)).delete();
+                }
+            }
+        }
+        Log.d(TAG, "Icon cache index loaded: " + diskIndex.size() + " entries");
+    }
+
+    public int getIconSizePx() {
+        return iconSizePx;
+    }
+
+    /**
+     * 版本戳: versionCode + lastUpdateTime, 应用更新后自动失效
+     */
+    public static String stampOf(PackageInfo info) {
+        long versionCode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                ? info.getLongVersionCode()
+                : info.versionCode;
+        return versionCode + "_" + info.lastUpdateTime;
+    }
+
+    /**
+     * 获取预缩放的PNG图标, 依次查找内存 -> 磁盘 -> 重新渲染
+     */
+    public byte[] getIconBytes(PackageManager pm, PackageInfo info) {
+        String packageName = info.packageName;
+        String stamp = stampOf(info);
+
+        Entry cached = memoryCache.get(packageName);
+        if (cached != null && cached.stamp.equals(stamp)) {
+            return cached.png;
+        }
+
+        byte[] png = readFromDisk(packageName, stamp);
+        if (png == null) {
+            png = render(pm, info.applicationInfo);
+            if (png == null) {
+                return null;
+            }
+            writeToDisk(packageName, stamp, png);
+        }
+        memoryCache.put(packageName, new Entry(stamp, png));
+        return png;
+    }
+
+    /**
+     * 获取 data URL 形式的图标, 失败时返回空字符串
+     */
+    public String getIconDataUrl(PackageManager pm, PackageInfo info) {
+        byte[] png = getIconBytes(pm, info);
+        if (png == null) {
+            return "";
+        }
+        return "data:image/png;base64," + Base64.encodeToString(png, Base64.NO_WRAP);
+    }
+
+    /**
+     * 移除某个包的缓存 (应用被卸载/更新时调用)
+     */
+    public void invalidate(String packageName) {
+        memoryCache.remove(packageName);
+        synchronized (diskIndex) {
+            String stamp = diskIndex.remove(packageName);
+            if (stamp != null) {
+                new File(dir, fileName(packageName, stamp)).delete();
+            }
+        }
+    }
+
+    /**
+     * 清理已不再安装的应用的缓存文件
+     */
+    public void retainOnly(Set<String> installedPackages) {
+        synchronized (diskIndex) {
+            String[] packages = diskIndex.keySet().toArray(new String[0]);
+            for (String packageName : packages) {
+                if (!installedPackages.contains(packageName)) {
+                    invalidate(packageName);
+                }
+            }
+        }
+    }
+
+    private byte[] readFromDisk(String packageName, String stamp) {
+        synchronized (diskIndex) {
+            if (!stamp.equals(diskIndex.get(packageName))) {
+                return null;
+            }
+        }
+        File file = new File(dir, fileName(packageName, stamp));
+        int length = (int) file.length();
+        if (length <= 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(data, offset, length - offset);
+                if (read < 0)
+                    return null;
+                offset += read;
+            }
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "Read cached icon failed: " + packageName, e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String packageName, String stamp, byte[] png) {
+        File target = new File(dir, fileName(packageName, stamp));
+        File tmp = new File(dir, target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(png);
+        } catch (IOException e) {
+            Log.w(TAG, "Write cached icon failed: " + packageName, e);
+            tmp.delete();
+            return;
+        }
+        synchronized (diskIndex) {
+            if (!tmp.renameTo(target)) {
+                tmp.delete();
+                return;
+            }
+            String previous = diskIndex.put(packageName, stamp);
+            if (previous != null && !previous.equals(stamp)) {
+                new File(dir, fileName(packageName, previous)).delete();
+            }
+        }
+    }
+
+    private byte[] render(PackageManager pm, ApplicationInfo app) {
+        if (app == null) {
+            return null;
+        }
+        try {
+            Bitmap bitmap = rasterize(pm.getApplicationIcon(app), iconSizePx);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            bitmap.recycle();
+            return out.toByteArray();
+        } catch (Exception e) {
+            Log.w(TAG, "Render icon failed: " + app.packageName, e);
+            return null;
+        }
+    }
+
+    /**
+     * 将任意Drawable直接绘制到指定尺寸的Bitmap上 (不经过原始尺寸的中间Bitmap)
+     */
+    public static Bitmap rasterize(Drawable drawable, int sizePx) {
+        Bitmap bitmap = Bitmap.createBitmap(sizePx, sizePx, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, sizePx, sizePx);
+        drawable.draw(canvas);
+        return bitmap;
+    }
+
+    private static String fileName(String packageName, String stamp) {
+        return packageName + STAMP_SEPARATOR + stamp + FILE_SUFFIX;
+    }
+}
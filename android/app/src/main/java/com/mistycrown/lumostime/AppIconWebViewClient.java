@@ -0,0 +1,121 @@
+/**
+ * @file AppIconWebViewClient.java
+ * @input WebView Resource Requests (/_lumos_icon_/<package> on the bridge's local origin)
+ * @output PNG Icon Responses from AppIconCache
+ * @pos Native Bridge
+ * @description Capacitor WebViewClient that serves installed-app icons as ordinary image URLs, so <img> tags load
+ * them lazily straight from the native icon store instead of receiving base64 payloads over the plugin bridge.
+ */
+package com.mistycrown.lumostime;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import com.getcapacitor.Bridge;
+import com.getcapacitor.BridgeWebViewClient;
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 应用图标 URL 拦截
+ * 形如 https://localhost/_lumos_icon_/com.tencent.mm?v=<版本戳>; 只拦截 Bridge 本地源 (scheme + host + port 一致)
+ * 的请求, 其他源的页面无法借此查询已安装应用
+ * 图标尺寸固定为 AppIconCache 的预缩放尺寸
+ */
+public class AppIconWebViewClient extends BridgeWebViewClient {
+    private static final String TAG = "AppIconWebViewClient";
+    public static final String ICON_PATH_PREFIX = "/_lumos_icon_/";
+
+    private final Bridge bridge;
+    // Bridge 本地源, 首次拦截时解析
+    private volatile Uri localOrigin;
+
+    public AppIconWebViewClient(Bridge bridge) {
+        super(bridge);
+        this.bridge = bridge;
+    }
+
+    /**
+     * 生成图标 URL, v 参数为版本戳, 应用更新后 URL 随之变化
+     */
+    public static String buildIconUrl(String localUrl, PackageInfo info) {
+        return localUrl + ICON_PATH_PREFIX + info.packageName + "?v=" + AppIconCache.stampOf(info);
+    }
+
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+        Uri url = request.getUrl();
+        String packageName = parsePackageName(url);
+        if (packageName == null) {
+            return super.shouldInterceptRequest(view, request);
+        }
+        // 运行在 WebView 的 IO 线程, 可以直接访问磁盘缓存
+        return serveIcon(packageName);
+    }
+
+    private String parsePackageName(Uri url) {
+        if (url == null || !isLocalOrigin(url)) {
+            return null;
+        }
+        String path = url.getPath();
+        if (path != null && path.startsWith(ICON_PATH_PREFIX)) {
+            String packageName = path.substring(ICON_PATH_PREFIX.length());
+            return packageName.isEmpty() ? null : packageName;
+        }
+        return null;
+    }
+
+    private boolean isLocalOrigin(Uri url) {
+        Uri local = localOrigin;
+        if (local == null) {
+            String localUrl = bridge.getLocalUrl();
+            if (localUrl == null) {
+                return false;
+            }
+            local = Uri.parse(localUrl);
+            localOrigin = local;
+        }
+        return local.getScheme() != null && local.getScheme().equalsIgnoreCase(url.getScheme())
+                && local.getHost() != null && local.getHost().equalsIgnoreCase(url.getHost())
+                && local.getPort() == url.getPort();
+    }
+
+    /**
+     * 总是返回 200 + 缓存的图标; 不做条件请求 (WebResourceResponse 不接受 3xx 状态码),
+     * URL 带版本戳且标记 immutable, WebView 不会重新验证
+     */
+    private WebResourceResponse serveIcon(String packageName) {
+        Context context = bridge.getContext();
+        Map<String, String> headers = new HashMap<>();
+        try {
+            PackageManager pm = context.getPackageManager();
+            PackageInfo info = pm.getPackageInfo(packageName, 0);
+            // URL 中带有版本戳, 内容不会变化
+            headers.put("Cache-Control", "public, max-age=31536000, immutable");
+
+            byte[] png = AppIconCache.getInstance(context).getIconBytes(pm, info);
+            if (png == null) {
+                return notFound(headers);
+            }
+            headers.put("Content-Length", String.valueOf(png.length));
+            return new WebResourceResponse("image/png", null, 200, "OK", headers, new ByteArrayInputStream(png));
+        } catch (PackageManager.NameNotFoundException e) {
+            return notFound(headers);
+        } catch (Exception e) {
+            Log.e(TAG, "Serve icon failed: " + packageName, e);
+            return notFound(headers);
+        }
+    }
+
+    private WebResourceResponse notFound(Map<String, String> headers) {
+        headers.put("Cache-Control", "no-store");
+        return new WebResourceResponse("image/png", null, 404, "Not Found", headers,
+                new ByteArrayInputStream(new byte[0]));
+    }
+}
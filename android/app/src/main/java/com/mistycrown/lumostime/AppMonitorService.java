@@ -4,6 +4,9 @@
  * @output Time Tracking Logic
  * @pos Native Logic Layer
  * @description Service responsible for the core logic of app usage monitoring and time aggregation (if applicable).
+ * Polling is adaptive: it backs off while the foreground app is stable, tightens after a switch and stops entirely
+ * while the screen is off. No wake lock is held. Polling and all detection state live on DetectionThread; only the
+ * Toast is posted back to the main thread.
  */
 package com.mistycrown.lumostime;
 
@@ -11,64 +14,92 @@ import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
+import android.app.KeyguardManager;
 import android.app.Service;
-import android.app.usage.UsageEvents;
-import android.app.usage.UsageStatsManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
-import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.core.app.NotificationCompat;
-import java.util.List;
-import java.util.Map;
 
 public class AppMonitorService extends Service {
     private static final String TAG = "AppMonitorService";
     private static final String CHANNEL_ID = "app_monitor_channel";
     private static final int NOTIFICATION_ID = 2001;
-    private static final int CHECK_INTERVAL = 1000; // 1 second for faster detection
+    private static final String PREFS_NAME = "AppMonitorPrefs";
 
+    // startMonitor 传入的轮询策略 (Intent extras, 同时保存到 prefs 供 START_STICKY 重启时使用)
+    public static final String EXTRA_MIN_INTERVAL_MS = "minIntervalMs";
+    public static final String EXTRA_MAX_INTERVAL_MS = "maxIntervalMs";
+    public static final String EXTRA_BACKOFF_FACTOR = "backoffFactor";
+    public static final String EXTRA_PAUSE_WHEN_SCREEN_OFF = "pauseWhenScreenOff";
+
+    public static final long DEFAULT_MIN_INTERVAL_MS = 1000;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 15000;
+    public static final float DEFAULT_BACKOFF_FACTOR = 1.5f;
+    private static final long MIN_ALLOWED_INTERVAL_MS = 250;
+
+    // DetectionThread 的 Handler; 以下轮询状态只在该线程读写
     private Handler handler;
     private Runnable checkRunnable;
-    private boolean isRunning = false;
+    private volatile boolean isRunning = false;
+    private boolean isInitialized = false;
+    // 屏幕关闭/锁屏时暂停轮询
+    private boolean isPaused = false;
     private String lastPackageName = "";
-    private UsageStatsManager usageStatsManager;
-    private SharedPreferences prefs;
+    private AppRuleStore ruleStore;
+    private ForegroundAppDetector detector;
 
-    private android.os.PowerManager.WakeLock wakeLock;
+    private long minIntervalMs = DEFAULT_MIN_INTERVAL_MS;
+    private long maxIntervalMs = DEFAULT_MAX_INTERVAL_MS;
+    private float backoffFactor = DEFAULT_BACKOFF_FACTOR;
+    private boolean pauseWhenScreenOff = true;
+    // 当前轮询间隔: 前台应用稳定时按 backoffFactor 递增到 maxIntervalMs, 切换后回到 minIntervalMs
+    private long currentIntervalMs = DEFAULT_MIN_INTERVAL_MS;
+
+    private final BroadcastReceiver screenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+                pausePolling();
+            } else if (Intent.ACTION_USER_PRESENT.equals(action)) {
+                resumePolling();
+            } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+                // 没有锁屏时不会收到 USER_PRESENT
+                KeyguardManager keyguard = (KeyguardManager) getSystemService(Context.KEYGUARD_SERVICE);
+                if (keyguard == null || !keyguard.isKeyguardLocked()) {
+                    resumePolling();
+                }
+            }
+        }
+    };
+    // 检测线程注册 / 主线程 (onDestroy) 注销, 由 synchronized 保护
+    private boolean screenReceiverRegistered = false;
 
     @Override
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
-        usageStatsManager = (UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE);
-        prefs = getSharedPreferences("AppUsageRules", Context.MODE_PRIVATE);
-        handler = new Handler(Looper.getMainLooper());
-
-        // Acquire WakeLock to ensure service runs even when screen is off/doze
-        try {
-            android.os.PowerManager powerManager = (android.os.PowerManager) getSystemService(POWER_SERVICE);
-            if (powerManager != null) {
-                wakeLock = powerManager.newWakeLock(android.os.PowerManager.PARTIAL_WAKE_LOCK,
-                        "LumosTime:MonitorWakeLock");
-                wakeLock.setReferenceCounted(false);
-                wakeLock.acquire(); // No timeout - will release on service destroy
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error acquiring WakeLock", e);
-        }
+        ruleStore = AppRuleStore.getInstance(this);
+        detector = ForegroundAppDetector.getInstance(this);
+        handler = DetectionThread.getHandler();
 
         checkRunnable = new Runnable() {
             @Override
             public void run() {
-                if (isRunning) {
-                    checkForegroundApp();
-                    handler.postDelayed(this, CHECK_INTERVAL);
+                if (isRunning && !isPaused) {
+                    long start = SystemClock.elapsedRealtimeNanos();
+                    boolean changed = checkForegroundApp();
+                    DetectionMetrics.recordDetection(SystemClock.elapsedRealtimeNanos() - start);
+                    scheduleNext(changed);
                 }
             }
         };
@@ -78,148 +109,177 @@ public class AppMonitorService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (!isRunning) {
             isRunning = true;
-            try {
-                if (wakeLock != null && !wakeLock.isHeld()) {
-                    wakeLock.acquire();
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "WakeLock acquire failed", e);
-            }
-
-            // Initialize lastPackageName to current app to avoid triggering on service
-            // start
-            // Get current foreground app
-            long time = System.currentTimeMillis();
-            UsageEvents events = usageStatsManager.queryEvents(time - 5000, time);
-            if (events != null) {
-                UsageEvents.Event event = new UsageEvents.Event();
-                long lastTime = 0;
-                while (events.hasNextEvent()) {
-                    events.getNextEvent(event);
-                    if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND
-                            && event.getTimeStamp() > lastTime) {
-                        lastTime = event.getTimeStamp();
-                        lastPackageName = event.getPackageName();
-                    }
-                }
-            }
-            Log.i(TAG, "Service started, initial app: " + lastPackageName);
-
+            // startForeground 必须在主线程及时调用, 其余初始化交给检测线程
             startForeground(NOTIFICATION_ID, createNotification("LumosTime 正在自动记录中..."));
-            handler.post(checkRunnable);
         }
+        handler.post(() -> startPolling(intent));
         return START_STICKY;
     }
 
     @Override
     public void onDestroy() {
         isRunning = false;
-        try {
-            if (wakeLock != null && wakeLock.isHeld()) {
-                wakeLock.release();
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "WakeLock release failed", e);
-        }
         handler.removeCallbacks(checkRunnable);
+        // 在 super.onDestroy() 之前同步注销; 推迟到检测线程时, 框架可能已清理泄漏的接收器, 再注销会抛异常
+        unregisterScreenReceiver();
         stopForeground(true);
         super.onDestroy();
     }
 
-    @Override
-    public IBinder onBind(Intent intent) {
-        return null;
+    /**
+     * 运行在 DetectionThread
+     */
+    private void startPolling(Intent intent) {
+        if (!isRunning) {
+            return;
+        }
+        loadPollPolicy(intent);
+        if (!isInitialized) {
+            isInitialized = true;
+            // Initialize lastPackageName to current app to avoid triggering on service
+            // start
+            String initial = detector.poll();
+            lastPackageName = initial != null ? initial : "";
+            Log.i(TAG, "Service started, initial app: " + lastPackageName);
+        }
+        updateScreenReceiver();
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        if (pauseWhenScreenOff && powerManager != null && !powerManager.isInteractive()) {
+            pausePolling();
+        } else {
+            isPaused = false;
+            restartPolling();
+        }
     }
 
-    private void checkForegroundApp() {
-        String currentPackage = null;
-        long time = System.currentTimeMillis();
-
-        // Use queryEvents to get the most recent MOVE_TO_FOREGROUND event
-        // This is the most reliable way to detect app switches
-        long startTime = time - 3000; // Look back 3 seconds (we poll every 1 second now)
-
-        Log.d(TAG, "checkForegroundApp() called, querying events from " + startTime + " to " + time);
+    /**
+     * 读取轮询策略: Intent 中带有参数时使用并保存, 否则 (例如系统重启服务) 使用上次保存的值
+     */
+    private void loadPollPolicy(Intent intent) {
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (intent != null && intent.hasExtra(EXTRA_MIN_INTERVAL_MS)) {
+            prefs.edit()
+                    .putLong(EXTRA_MIN_INTERVAL_MS, intent.getLongExtra(EXTRA_MIN_INTERVAL_MS, DEFAULT_MIN_INTERVAL_MS))
+                    .putLong(EXTRA_MAX_INTERVAL_MS, intent.getLongExtra(EXTRA_MAX_INTERVAL_MS, DEFAULT_MAX_INTERVAL_MS))
+                    .putFloat(EXTRA_BACKOFF_FACTOR, intent.getFloatExtra(EXTRA_BACKOFF_FACTOR, DEFAULT_BACKOFF_FACTOR))
+                    .putBoolean(EXTRA_PAUSE_WHEN_SCREEN_OFF, intent.getBooleanExtra(EXTRA_PAUSE_WHEN_SCREEN_OFF, true))
+                    .apply();
+        }
+        minIntervalMs = Math.max(MIN_ALLOWED_INTERVAL_MS,
+                prefs.getLong(EXTRA_MIN_INTERVAL_MS, DEFAULT_MIN_INTERVAL_MS));
+        maxIntervalMs = Math.max(minIntervalMs, prefs.getLong(EXTRA_MAX_INTERVAL_MS, DEFAULT_MAX_INTERVAL_MS));
+        backoffFactor = Math.max(1f, prefs.getFloat(EXTRA_BACKOFF_FACTOR, DEFAULT_BACKOFF_FACTOR));
+        pauseWhenScreenOff = prefs.getBoolean(EXTRA_PAUSE_WHEN_SCREEN_OFF, true);
+        Log.d(TAG, "⏱️ Poll policy: " + minIntervalMs + "-" + maxIntervalMs + "ms x" + backoffFactor
+                + (pauseWhenScreenOff ? ", pause when screen off" : ""));
+    }
 
-        UsageEvents usageEvents = usageStatsManager.queryEvents(startTime, time);
-        if (usageEvents == null) {
-            Log.e(TAG, "usageEvents is null - PERMISSION NOT GRANTED!");
+    private synchronized void updateScreenReceiver() {
+        if (!isRunning) {
+            // 服务已销毁, 不再注册
             return;
         }
+        if (pauseWhenScreenOff && !screenReceiverRegistered) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_SCREEN_OFF);
+            filter.addAction(Intent.ACTION_SCREEN_ON);
+            filter.addAction(Intent.ACTION_USER_PRESENT);
+            // 广播在检测线程上分发, 与轮询状态同线程
+            registerReceiver(screenReceiver, filter, null, handler);
+            screenReceiverRegistered = true;
+        } else if (!pauseWhenScreenOff) {
+            unregisterScreenReceiver();
+        }
+    }
 
-        UsageEvents.Event event = new UsageEvents.Event();
-        long lastTimestamp = 0;
-        int eventCount = 0;
-        int foregroundEventCount = 0;
+    private synchronized void unregisterScreenReceiver() {
+        if (!screenReceiverRegistered) {
+            return;
+        }
+        screenReceiverRegistered = false;
+        try {
+            unregisterReceiver(screenReceiver);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Screen receiver already unregistered");
+        }
+    }
 
-        while (usageEvents.hasNextEvent()) {
-            usageEvents.getNextEvent(event);
-            eventCount++;
-            if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND) {
-                foregroundEventCount++;
-                Log.d(TAG, "Found MOVE_TO_FOREGROUND event: " + event.getPackageName() + " at " + event.getTimeStamp());
-                if (event.getTimeStamp() > lastTimestamp) {
-                    lastTimestamp = event.getTimeStamp();
-                    currentPackage = event.getPackageName();
-                }
-            }
+    private void pausePolling() {
+        if (!isPaused) {
+            isPaused = true;
+            handler.removeCallbacks(checkRunnable);
+            Log.d(TAG, "⏸️ Screen off, polling paused");
         }
+    }
 
-        Log.d(TAG, "Total events: " + eventCount + ", Foreground events: " + foregroundEventCount);
+    private void resumePolling() {
+        if (isPaused && isRunning) {
+            isPaused = false;
+            Log.d(TAG, "▶️ User present, polling resumed");
+            restartPolling();
+        }
+    }
 
-        // If no MOVE_TO_FOREGROUND event found, try queryUsageStats as fallback
-        // to get the app with most recent usage
-        if (currentPackage == null) {
-            Log.d(TAG, "No MOVE_TO_FOREGROUND events found, trying queryUsageStats fallback");
-            List<android.app.usage.UsageStats> stats = usageStatsManager.queryUsageStats(
-                    UsageStatsManager.INTERVAL_BEST, time - 3000, time);
+    /**
+     * 立即检查一次, 并从最短间隔重新开始退避
+     */
+    private void restartPolling() {
+        handler.removeCallbacks(checkRunnable);
+        currentIntervalMs = minIntervalMs;
+        handler.post(checkRunnable);
+    }
 
-            if (stats != null && !stats.isEmpty()) {
-                Log.d(TAG, "queryUsageStats returned " + stats.size() + " apps");
-                android.app.usage.UsageStats mostRecent = null;
-                for (android.app.usage.UsageStats usageStats : stats) {
-                    if (mostRecent == null || usageStats.getLastTimeUsed() > mostRecent.getLastTimeUsed()) {
-                        mostRecent = usageStats;
-                    }
-                }
-                if (mostRecent != null) {
-                    currentPackage = mostRecent.getPackageName();
-                    Log.d(TAG, "Most recent app from stats: " + currentPackage);
-                }
-            } else {
-                Log.w(TAG, "queryUsageStats returned null or empty");
-            }
+    private void scheduleNext(boolean changed) {
+        if (changed) {
+            currentIntervalMs = minIntervalMs;
+        } else {
+            currentIntervalMs = Math.min(maxIntervalMs, (long) (currentIntervalMs * backoffFactor));
         }
+        handler.postDelayed(checkRunnable, currentIntervalMs);
+    }
 
-        Log.d(TAG, "Current package: " + currentPackage + ", Last package: " + lastPackageName);
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    /**
+     * @return 前台应用是否发生了变化
+     */
+    private boolean checkForegroundApp() {
+        // 增量读取上次轮询以来的事件, 前台应用没有变化时几乎不扫描事件
+        String currentPackage = detector.poll();
 
         if (currentPackage != null && !currentPackage.equals(lastPackageName)) {
             // App Changed
             Log.i(TAG, "===== APP CHANGED: " + lastPackageName + " -> " + currentPackage + " =====");
             lastPackageName = currentPackage;
+            AppSessionTracker.getInstance(this).onForeground(currentPackage, AppSessionTracker.SOURCE_USAGE_STATS);
 
             // Check if this app is in our rules
-            String appLabel = currentPackage;
-            try {
-                PackageManager pm = getPackageManager();
-                appLabel = pm.getApplicationLabel(pm.getApplicationInfo(currentPackage, 0)).toString();
-            } catch (Exception e) {
-                Log.w(TAG, "Could not get app label for " + currentPackage);
-            }
+            String appLabel = PackageMetadataCache.getInstance(this).getLabel(currentPackage);
 
             // Send notification
-            updateNotification("检测到应用: " + appLabel);
+            AppRule rule = ruleStore.match(currentPackage);
+            if (rule != null && !rule.activityName.isEmpty()) {
+                updateNotification("检测到应用: " + appLabel + " → " + rule.activityName);
+            } else {
+                updateNotification("检测到应用: " + appLabel);
+            }
 
             // Show Toast
+            DetectionMetrics.recordSwitch();
             String finalAppLabel = appLabel;
-            handler.post(() -> {
+            DetectionThread.postToMain(() -> {
                 android.widget.Toast
                         .makeText(getApplicationContext(), "检测到切换: " + finalAppLabel, android.widget.Toast.LENGTH_SHORT)
                         .show();
             });
+            return true;
         } else if (currentPackage == null) {
             Log.w(TAG, "Could not determine current package!");
         }
+        return false;
     }
 
     private void createNotificationChannel() {
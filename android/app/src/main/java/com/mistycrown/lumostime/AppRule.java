@@ -0,0 +1,97 @@
+/**
+ * @file AppRule.java
+ * @input Rule definitions (JS / rule file)
+ * @output Immutable rule value
+ * @pos Native Model
+ * @description App -> activity association rule. The package may be an exact name, a prefix pattern such as
+ * "com.tencent.*" or a glob with '*' anywhere; rules can be limited to a time-of-day window and a weekday set,
+ * and carry a priority used when several rules match the same app.
+ */
+package com.mistycrown.lumostime;
+
+/**
+ * 应用关联规则 (不可变)
+ */
+public final class AppRule {
+    public static final char WILDCARD = '*';
+    // 不限时间段
+    public static final int ALL_DAY = -1;
+    // 周一 = bit0 ... 周日 = bit6
+    public static final int ALL_WEEKDAYS = 0x7F;
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    // 规则标识, 默认等于 packageName; 同一个应用需要多条规则 (不同时段) 时使用不同的 id
+    public final String id;
+    // 包名或通配模式
+    public final String packageName;
+    public final String activityId;
+    // 可能为空字符串
+    public final String activityName;
+    // [startMinute, endMinute) 为当天分钟数, end < start 表示跨越午夜; 二者为 ALL_DAY 时不限时间
+    public final int startMinute;
+    public final int endMinute;
+    public final int weekdays;
+    public final int priority;
+
+    public AppRule(String packageName, String activityId, String activityName) {
+        this(packageName, packageName, activityId, activityName, ALL_DAY, ALL_DAY, ALL_WEEKDAYS, 0);
+    }
+
+    public AppRule(String id, String packageName, String activityId, String activityName,
+            int startMinute, int endMinute, int weekdays, int priority) {
+        this.id = id != null && !id.isEmpty() ? id : packageName;
+        this.packageName = packageName;
+        this.activityId = activityId;
+        this.activityName = activityName != null ? activityName : "";
+        boolean allDay = startMinute < 0 || endMinute < 0 || startMinute == endMinute;
+        this.startMinute = allDay ? ALL_DAY : startMinute % MINUTES_PER_DAY;
+        this.endMinute = allDay ? ALL_DAY : endMinute % MINUTES_PER_DAY;
+        this.weekdays = weekdays & ALL_WEEKDAYS;
+        this.priority = priority;
+    }
+
+    public boolean isPattern() {
+        return packageName.indexOf(WILDCARD) >= 0;
+    }
+
+    /**
+     * 是否为只在末尾带一个 '*' 的前缀模式 (例如 "com.tencent.*")
+     */
+    public boolean isPrefixPattern() {
+        int index = packageName.indexOf(WILDCARD);
+        return index >= 0 && index == packageName.length() - 1;
+    }
+
+    public boolean isAllDay() {
+        return startMinute == ALL_DAY;
+    }
+
+    /**
+     * @param minuteOfDay 当天的分钟数 [0, 1440)
+     * @param weekdayBit  当天对应的星期位 (1 << 0 为周一)
+     */
+    public boolean appliesAt(int minuteOfDay, int weekdayBit) {
+        if ((weekdays & weekdayBit) == 0) {
+            return false;
+        }
+        if (startMinute == ALL_DAY) {
+            return true;
+        }
+        if (startMinute < endMinute) {
+            return minuteOfDay >= startMinute && minuteOfDay < endMinute;
+        }
+        // 跨越午夜, 例如 22:00 - 02:00
+        return minuteOfDay >= startMinute || minuteOfDay < endMinute;
+    }
+
+    boolean sameAs(AppRule other) {
+        return id.equals(other.id)
+                && packageName.equals(other.packageName)
+                && activityId.equals(other.activityId)
+                && activityName.equals(other.activityName)
+                && startMinute == other.startMinute
+                && endMinute == other.endMinute
+                && weekdays == other.weekdays
+                && priority == other.priority;
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * @file AppRuleMatcher.java
+ * @input AppRule set
+ * @output Best matching rule for (package, time)
+ * @pos Native Logic Layer
+ * @description Compiled lookup index over app rules: a hash table for exact package names, a character trie for
+ * prefix patterns ("com.tencent.*") and a short list for other globs. Built once per rule-set change; matching
+ * allocates nothing and costs O(package name length) plus the number of non-prefix globs.
+ */
+package com.mistycrown.lumostime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * 规则匹配索引 (不可变, 可在多个线程间共享)
+ * 多条规则同时命中时: priority 高者优先, 相同时更具体者优先 (精确 > 较长前缀 > 较短前缀/通配)
+ */
+public final class AppRuleMatcher {
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final int SPECIFICITY_EXACT = Integer.MAX_VALUE;
+    private static final AppRule[] NO_RULES = new AppRule[0];
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final Comparator<AppRule> BY_PRIORITY = new Comparator<AppRule>() {
+        @Override
+        public int compare(AppRule a, AppRule b) {
+            if (a.priority != b.priority) {
+                return a.priority > b.priority ? -1 : 1;
+            }
+            return a.id.compareTo(b.id);
+        }
+    };
+
+    public static final AppRuleMatcher EMPTY = compile(new ArrayList<AppRule>(), TimeZone.getTimeZone("UTC"));
+
+    private final Map<String, AppRule[]> exact;
+    private final Node prefixRoot;
+    private final AppRule[] globs;
+    private final int[] globSpecificity;
+    // 通配模式首个 '*' 之前 / 最后一个 '*' 之后的字面量, 用于在回溯匹配前快速排除
+    private final String[] globHead;
+    private final String[] globTail;
+    private final int ruleCount;
+    // 编译时确定的时区 (TimeZone.getDefault() 每次调用都会复制对象, 不放在匹配路径上);
+    // 系统时区变化时由 AppRuleStore 重新编译
+    private final TimeZone timeZone;
+
+    /**
+     * 前缀树节点, 子节点按字符排序后二分查找
+     */
+    private static final class Node {
+        char[] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        // 以该节点路径为前缀的规则, 按优先级降序
+        AppRule[] rules = NO_RULES;
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+    }
+
+    private static final class NodeBuilder {
+        final TreeMap<Character, NodeBuilder> children = new TreeMap<>();
+        final List<AppRule> rules = new ArrayList<>();
+
+        Node build() {
+            Node node = new Node();
+            if (!rules.isEmpty()) {
+                node.rules = sorted(rules);
+            }
+            if (!children.isEmpty()) {
+                node.keys = new char[children.size()];
+                node.children = new Node[children.size()];
+                int i = 0;
+                for (Map.Entry<Character, NodeBuilder> entry : children.entrySet()) {
+                    node.keys[i] = entry.getKey();
+                    node.children[i] = entry.getValue().build();
+                    i++;
+                }
+            }
+            return node;
+        }
+    }
+
+    private AppRuleMatcher(Map<String, AppRule[]> exact, Node prefixRoot, AppRule[] globs, int ruleCount,
+            TimeZone timeZone) {
+        this.exact = exact;
+        this.prefixRoot = prefixRoot;
+        this.globs = globs;
+        this.ruleCount = ruleCount;
+        this.timeZone = timeZone;
+        this.globSpecificity = new int[globs.length];
+        this.globHead = new String[globs.length];
+        this.globTail = new String[globs.length];
+        for (int i = 0; i < globs.length; i++) {
+            String pattern = globs[i].packageName;
+            globSpecificity[i] = literalLength(pattern);
+            globHead[i] = pattern.substring(0, pattern.indexOf(AppRule.WILDCARD));
+            globTail[i] = pattern.substring(pattern.lastIndexOf(AppRule.WILDCARD) + 1);
+        }
+    }
+
+    public static AppRuleMatcher compile(Collection<AppRule> rules) {
+        return compile(rules, TimeZone.getDefault());
+    }
+
+    public static AppRuleMatcher compile(Collection<AppRule> rules, TimeZone timeZone) {
+        Map<String, List<AppRule>> exactLists = new HashMap<>();
+        NodeBuilder root = new NodeBuilder();
+        List<AppRule> globList = new ArrayList<>();
+
+        for (AppRule rule : rules) {
+            if (!rule.isPattern()) {
+                List<AppRule> list = exactLists.get(rule.packageName);
+                if (list == null) {
+                    list = new ArrayList<>(1);
+                    exactLists.put(rule.packageName, list);
+                }
+                list.add(rule);
+            } else if (rule.isPrefixPattern()) {
+                NodeBuilder node = root;
+                String prefix = rule.packageName.substring(0, rule.packageName.length() - 1);
+                for (int i = 0; i < prefix.length(); i++) {
+                    Character c = prefix.charAt(i);
+                    NodeBuilder next = node.children.get(c);
+                    if (next == null) {
+                        next = new NodeBuilder();
+                        node.children.put(c, next);
+                    }
+                    node = next;
+                }
+                node.rules.add(rule);
+            } else {
+                globList.add(rule);
+            }
+        }
+
+        Map<String, AppRule[]> exact = new HashMap<>(exactLists.size() * 2);
+        for (Map.Entry<String, List<AppRule>> entry : exactLists.entrySet()) {
+            exact.put(entry.getKey(), sorted(entry.getValue()));
+        }
+        return new AppRuleMatcher(exact, root.build(), sorted(globList), rules.size(), timeZone);
+    }
+
+    public int size() {
+        return ruleCount;
+    }
+
+    /**
+     * 按当前时间匹配
+     */
+    public AppRule match(String packageName, long nowMillis) {
+        long local = nowMillis + timeZone.getOffset(nowMillis);
+        long days = Math.floorDiv(local, MILLIS_PER_DAY);
+        int minuteOfDay = (int) ((local - days * MILLIS_PER_DAY) / 60000L);
+        // 1970-01-01 是周四: (days + 3) % 7 == 0 表示周一
+        int weekday = (int) Math.floorMod(days + 3, 7L);
+        return match(packageName, minuteOfDay, 1 << weekday);
+    }
+
+    /**
+     * @param minuteOfDay 当天的分钟数 [0, 1440)
+     * @param weekdayBit  1 << (0 = 周一 ... 6 = 周日)
+     * @return 最佳匹配规则, 没有命中时返回 null
+     */
+    public AppRule match(String packageName, int minuteOfDay, int weekdayBit) {
+        AppRule best = null;
+        int bestPriority = Integer.MIN_VALUE;
+        int bestSpecificity = -1;
+
+        AppRule[] candidates = exact.get(packageName);
+        if (candidates != null) {
+            AppRule rule = firstApplicable(candidates, minuteOfDay, weekdayBit);
+            if (rule != null) {
+                best = rule;
+                bestPriority = rule.priority;
+                bestSpecificity = SPECIFICITY_EXACT;
+            }
+        }
+
+        Node node = prefixRoot;
+        int length = packageName.length();
+        for (int depth = 0; node != null; depth++) {
+            if (node.rules.length > 0 && node.rules[0].priority >= bestPriority) {
+                AppRule rule = firstApplicable(node.rules, minuteOfDay, weekdayBit);
+                if (rule != null && isBetter(rule.priority, depth, bestPriority, bestSpecificity)) {
+                    best = rule;
+                    bestPriority = rule.priority;
+                    bestSpecificity = depth;
+                }
+            }
+            if (depth == length) {
+                break;
+            }
+            node = node.child(packageName.charAt(depth));
+        }
+
+        for (int i = 0; i < globs.length; i++) {
+            AppRule rule = globs[i];
+            if (rule.priority < bestPriority) {
+                break; // 已按优先级降序排列
+            }
+            if (isBetter(rule.priority, globSpecificity[i], bestPriority, bestSpecificity)
+                    && packageName.startsWith(globHead[i])
+                    && packageName.endsWith(globTail[i])
+                    && rule.appliesAt(minuteOfDay, weekdayBit)
+                    && globMatches(rule.packageName, packageName)) {
+                best = rule;
+                bestPriority = rule.priority;
+                bestSpecificity = globSpecificity[i];
+            }
+        }
+        return best;
+    }
+
+    private static AppRule firstApplicable(AppRule[] rules, int minuteOfDay, int weekdayBit) {
+        for (AppRule rule : rules) {
+            if (rule.appliesAt(minuteOfDay, weekdayBit)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isBetter(int priority, int specificity, int bestPriority, int bestSpecificity) {
+        return priority > bestPriority || (priority == bestPriority && specificity > bestSpecificity);
+    }
+
+    /**
+     * '*' 匹配任意长度字符的通配匹配 (回溯实现, 不分配对象)
+     */
+    static boolean globMatches(String pattern, String text) {
+        int p = 0;
+        int t = 0;
+        int starP = -1;
+        int starT = 0;
+        while (t < text.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == AppRule.WILDCARD) {
+                starP = p++;
+                starT = t;
+            } else if (p < pattern.length() && pattern.charAt(p) == text.charAt(t)) {
+                p++;
+                t++;
+            } else if (starP >= 0) {
+                p = starP + 1;
+                t = ++starT;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == AppRule.WILDCARD) {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private static int literalLength(String pattern) {
+        int count = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) != AppRule.WILDCARD) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static AppRule[] sorted(List<AppRule> rules) {
+        AppRule[] array = rules.toArray(new AppRule[0]);
+        Arrays.sort(array, BY_PRIORITY);
+        return array;
+    }
+}
@@ -0,0 +1,336 @@
+/**
+ * @file AppRuleStore.java
+ * @input Rule edits from AppUsagePlugin, ACTION_TIMEZONE_CHANGED
+ * @output Immutable rule table + compiled AppRuleMatcher
+ * @pos Native Data Store
+ * @description Process-wide store for app association rules. Rules are loaded once from a compact binary file,
+ * compiled into an AppRuleMatcher and published as one immutable snapshot that is swapped atomically on every edit
+ * (and recompiled for the new zone when the system time zone changes).
+ * Shared by AppAccessibilityService, AppMonitorService and AppUsagePlugin so the app-switch path does no I/O.
+ */
+package com.mistycrown.lumostime;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.util.AtomicFile;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * 应用关联规则存储
+ * 读路径 (match) 只访问内存中的编译索引, 不做 I/O 也不分配对象;
+ * 写路径 (put/remove/applyBatch) 复制整张表并重新编译, 先落盘再原子替换快照。
+ */
+public class AppRuleStore {
+    private static final String TAG = "AppRuleStore";
+    private static final String FILE_NAME = "app_rules.bin";
+    // 旧版本存储在 SharedPreferences 中: packageName -> activityId, packageName_name -> activityName
+    private static final String LEGACY_PREFS_NAME = "AppUsageRules";
+    private static final String LEGACY_NAME_SUFFIX = "_name";
+    private static final int FILE_MAGIC = 0x4C52554C; // "LRUL"
+    // 1: packageName/activityId/activityName; 2: 增加 id/时间段/星期/优先级
+    private static final int FILE_FORMAT_V1 = 1;
+    private static final int FILE_FORMAT = 2;
+
+    // 批量修改中每一项的处理结果
+    public static final String STATUS_ADDED = "added";
+    public static final String STATUS_UPDATED = "updated";
+    public static final String STATUS_UNCHANGED = "unchanged";
+    public static final String STATUS_REMOVED = "removed";
+    public static final String STATUS_NOT_FOUND = "notFound";
+
+    private static volatile AppRuleStore instance = null;
+
+    /**
+     * 规则表 + 编译后的匹配索引 + 版本, 作为一个整体发布
+     */
+    private static final class Snapshot {
+        // rule id -> rule
+        final Map<String, AppRule> rules;
+        final AppRuleMatcher matcher;
+        final long version;
+
+        Snapshot(Map<String, AppRule> rules, long version) {
+            this(rules, version, TimeZone.getDefault());
+        }
+
+        Snapshot(Map<String, AppRule> rules, long version, TimeZone timeZone) {
+            this.rules = Collections.unmodifiableMap(rules);
+            this.matcher = rules.isEmpty() ? AppRuleMatcher.EMPTY : AppRuleMatcher.compile(rules.values(), timeZone);
+            this.version = version;
+        }
+    }
+
+    /**
+     * 批量修改的结果: 每一项的状态 (按处理顺序) 以及提交后的规则集版本
+     */
+    public static final class BatchResult {
+        public final List<String> ruleIds = new ArrayList<>();
+        public final List<String> statuses = new ArrayList<>();
+        public long version;
+        public boolean changed;
+
+        void add(String ruleId, String status) {
+            ruleIds.add(ruleId);
+            statuses.add(status);
+        }
+    }
+
+    private final AtomicFile file;
+    private volatile Snapshot current = new Snapshot(new HashMap<String, AppRule>(), 0);
+
+    // 匹配索引在编译时固定时区, 系统时区变化后需要重新编译
+    private final BroadcastReceiver timeZoneReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String id = intent.getStringExtra(Intent.EXTRA_TIMEZONE);
+            onTimeZoneChanged(id != null ? TimeZone.getTimeZone(id) : TimeZone.getDefault());
+        }
+    };
+
+    public static AppRuleStore getInstance(Context context) {
+        AppRuleStore store = instance;
+        if (store == null) {
+            synchronized (AppRuleStore.class) {
+                store = instance;
+                if (store == null) {
+                    store = new AppRuleStore(context.getApplicationContext());
+                    instance = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    private AppRuleStore(Context context) {
+        file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        if (!load()) {
+            migrateLegacyPrefs(context);
+        }
+        context.registerReceiver(timeZoneReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED), null,
+                DetectionThread.getHandler());
+        Log.d(TAG, "Loaded " + current.rules.size() + " rules, version=" + current.version);
+    }
+
+    /**
+     * 按当前时间查找某个应用命中的规则, 未关联时返回 null
+     */
+    public AppRule match(String packageName) {
+        return current.matcher.match(packageName, System.currentTimeMillis());
+    }
+
+    /**
+     * 当前规则表的只读快照 (rule id -> rule)
+     */
+    public Map<String, AppRule> snapshot() {
+        return current.rules;
+    }
+
+    public long getVersion() {
+        return current.version;
+    }
+
+    public synchronized void put(AppRule rule) throws IOException {
+        Map<String, AppRule> next = new HashMap<>(current.rules);
+        next.put(rule.id, rule);
+        commit(next);
+    }
+
+    public synchronized boolean remove(String ruleId) throws IOException {
+        if (!current.rules.containsKey(ruleId)) {
+            return false;
+        }
+        Map<String, AppRule> next = new HashMap<>(current.rules);
+        next.remove(ruleId);
+        commit(next);
+        return true;
+    }
+
+    /**
+     * 批量修改: 按顺序应用到待提交的规则集上并计算每一项的状态, 有变化时只落盘一次
+     * (同一个 id 重复出现时, 后一项与前一项的结果比较)
+     *
+     * @param upserts    新增或更新的规则, 可为 null
+     * @param removals   要删除的规则 id, 可为 null
+     * @param replaceAll 为 true 时, 不在 upserts 中的现有规则全部删除
+     */
+    public synchronized BatchResult applyBatch(List<AppRule> upserts, List<String> removals, boolean replaceAll)
+            throws IOException {
+        BatchResult result = new BatchResult();
+        Map<String, AppRule> rules = current.rules;
+        Map<String, AppRule> next = new HashMap<>(rules);
+        // replaceAll 时本批出现过的 id, 其余现有规则最后删除
+        Set<String> kept = replaceAll ? new HashSet<String>() : null;
+        boolean changed = false;
+
+        if (upserts != null) {
+            for (AppRule rule : upserts) {
+                AppRule existing = next.get(rule.id);
+                String status;
+                if (existing == null) {
+                    status = STATUS_ADDED;
+                    changed = true;
+                } else if (existing.sameAs(rule)) {
+                    status = STATUS_UNCHANGED;
+                } else {
+                    status = STATUS_UPDATED;
+                    changed = true;
+                }
+                next.put(rule.id, rule);
+                if (kept != null) {
+                    kept.add(rule.id);
+                }
+                result.add(rule.id, status);
+            }
+        }
+
+        if (removals != null) {
+            for (String ruleId : removals) {
+                if (next.remove(ruleId) != null) {
+                    result.add(ruleId, STATUS_REMOVED);
+                    changed = true;
+                } else {
+                    result.add(ruleId, STATUS_NOT_FOUND);
+                }
+            }
+        }
+
+        if (replaceAll) {
+            for (String ruleId : rules.keySet()) {
+                if (!kept.contains(ruleId) && next.remove(ruleId) != null) {
+                    result.add(ruleId, STATUS_REMOVED);
+                    changed = true;
+                }
+            }
+        }
+
+        if (changed) {
+            commit(next);
+        }
+        result.changed = changed;
+        result.version = current.version;
+        return result;
+    }
+
+    /**
+     * 时区变化: 规则和版本不变, 只按新时区重新编译匹配索引
+     */
+    synchronized void onTimeZoneChanged(TimeZone timeZone) {
+        Snapshot snapshot = current;
+        current = new Snapshot(new HashMap<>(snapshot.rules), snapshot.version, timeZone);
+        Log.d(TAG, "🌐 Time zone changed to " + timeZone.getID() + ", rules recompiled");
+    }
+
+    private void commit(Map<String, AppRule> next) throws IOException {
+        long nextVersion = current.version + 1;
+        write(next, nextVersion);
+        current = new Snapshot(next, nextVersion);
+    }
+
+    private boolean load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(file.openRead()))) {
+            if (in.readInt() != FILE_MAGIC) {
+                Log.w(TAG, "Unknown rule file, ignoring");
+                return false;
+            }
+            int format = in.readInt();
+            if (format != FILE_FORMAT && format != FILE_FORMAT_V1) {
+                Log.w(TAG, "Unsupported rule file format: " + format);
+                return false;
+            }
+            long fileVersion = in.readLong();
+            int count = in.readInt();
+            Map<String, AppRule> loaded = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                AppRule rule;
+                if (format == FILE_FORMAT_V1) {
+                    rule = new AppRule(in.readUTF(), in.readUTF(), in.readUTF());
+                } else {
+                    rule = new AppRule(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(),
+                            in.readShort(), in.readShort(), in.readByte(), in.readInt());
+                }
+                loaded.put(rule.id, rule);
+            }
+            current = new Snapshot(loaded, fileVersion);
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (IOException e) {
+            Log.e(TAG, "Read rule file failed", e);
+            return false;
+        }
+    }
+
+    private void write(Map<String, AppRule> data, long fileVersion) throws IOException {
+        FileOutputStream stream = file.startWrite();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_FORMAT);
+            out.writeLong(fileVersion);
+            out.writeInt(data.size());
+            for (AppRule rule : data.values()) {
+                out.writeUTF(rule.id);
+                out.writeUTF(rule.packageName);
+                out.writeUTF(rule.activityId);
+                out.writeUTF(rule.activityName);
+                out.writeShort(rule.startMinute);
+                out.writeShort(rule.endMinute);
+                out.writeByte(rule.weekdays);
+                out.writeInt(rule.priority);
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            file.failWrite(stream);
+            throw e;
+        }
+    }
+
+    /**
+     * 从旧的 SharedPreferences 迁移规则, 成功写入新文件后清空旧数据
+     */
+    private void migrateLegacyPrefs(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+        Map<String, ?> all = prefs.getAll();
+        if (all.isEmpty()) {
+            return;
+        }
+        Map<String, AppRule> migrated = new HashMap<>();
+        for (Map.Entry<String, ?> entry : all.entrySet()) {
+            String key = entry.getKey();
+            if (key.endsWith(LEGACY_NAME_SUFFIX) || !(entry.getValue() instanceof String)) {
+                continue;
+            }
+            String name = prefs.getString(key + LEGACY_NAME_SUFFIX, "");
+            migrated.put(key, new AppRule(key, (String) entry.getValue(), name));
+        }
+        try {
+            commit(migrated);
+            prefs.edit().clear().apply();
+            Log.i(TAG, "Migrated " + migrated.size() + " rules from SharedPreferences");
+        } catch (IOException e) {
+            // 写入失败时仍使用内存中的规则, 下次启动再迁移
+            current = new Snapshot(migrated, 0);
+            Log.e(TAG, "Migrate rules failed", e);
+        }
+    }
+}
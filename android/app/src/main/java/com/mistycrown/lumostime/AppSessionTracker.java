@@ -0,0 +1,331 @@
+/**
+ * @file AppSessionTracker.java
+ * @input Foreground switches from AppAccessibilityService / AppMonitorService, screen on/off broadcasts
+ * @output Open session + per-app dwell totals for the current day; transitions appended to UsageJournal
+ * @pos Native Logic Layer
+ * @description Native app-session state machine. Opens a session when an app comes to the front and closes it on
+ * the next switch, a return to the launcher or screen-off; a split-second bounce into another app resumes the
+ * previous session instead of starting a new one. Totals live in primitive arrays indexed by an interned package id,
+ * so per-app queries are a hash lookup plus an array read.
+ */
+package com.mistycrown.lumostime;
+
+import android.app.KeyguardManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TimeZone;
+
+/**
+ * 应用会话状态机
+ * 状态变更都在 DetectionThread 上发生, 查询可在任意线程 (方法均为 synchronized, 无竞争时开销很小)
+ */
+public class AppSessionTracker {
+    private static final String TAG = "AppSessionTracker";
+    // 短于该时长就离开的会话视为 "误入", 不计入会话次数
+    public static final long BOUNCE_MS = 1500;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NONE = -1;
+
+    // 前台应用来源: 无障碍服务 (实时, 已合并防抖) 优先; UsageStats 轮询只在无障碍服务未运行时使用
+    public static final int SOURCE_ACCESSIBILITY = 1;
+    public static final int SOURCE_USAGE_STATS = 2;
+
+    private static volatile AppSessionTracker instance = null;
+
+    /**
+     * 单个应用的当日累计 (快照)
+     */
+    public static final class Totals {
+        public final String packageName;
+        public final long totalMs;
+        public final int sessions;
+        public final boolean active;
+
+        Totals(String packageName, long totalMs, int sessions, boolean active) {
+            this.packageName = packageName;
+            this.totalMs = totalMs;
+            this.sessions = sessions;
+            this.active = active;
+        }
+    }
+
+    private final Context context;
+    // 状态变更同时写入磁盘日志, WebView 不在时也不会丢失
+    private final UsageJournal journal;
+
+    // 包名驻留: id -> 数组下标
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private String[] packages = new String[INITIAL_CAPACITY];
+    private long[] totalMs = new long[INITIAL_CAPACITY];
+    private int[] sessionCounts = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // 当前打开的会话 (elapsedRealtime)
+    private int currentId = NONE;
+    private long currentStart = 0;
+    // 当前会话是否计入了会话次数 (短暂跳出后恢复的会话不计)
+    private boolean currentCounted = false;
+    // 最近一次关闭的会话, 用于识别 A -> B -> A 的短暂跳出
+    private int previousId = NONE;
+    private long previousEnd = 0;
+    // 熄屏时的前台应用, 亮屏解锁后恢复
+    private int suspendedId = NONE;
+    private boolean screenOff = false;
+    // 累计所属的本地日期 (自 epoch 起的天数)
+    private long day;
+    // 无障碍服务是否在运行; 运行时忽略轮询来源, 避免两路交错产生重复的会话和日志记录
+    private volatile boolean accessibilityActive = false;
+
+    private final BroadcastReceiver screenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+                onScreenOff();
+            } else if (Intent.ACTION_USER_PRESENT.equals(action)) {
+                onScreenOn();
+            } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+                // 没有锁屏时不会收到 USER_PRESENT
+                KeyguardManager keyguard = (KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE);
+                if (keyguard == null || !keyguard.isKeyguardLocked()) {
+                    onScreenOn();
+                }
+            }
+        }
+    };
+
+    public static AppSessionTracker getInstance(Context context) {
+        AppSessionTracker tracker = instance;
+        if (tracker == null) {
+            synchronized (AppSessionTracker.class) {
+                tracker = instance;
+                if (tracker == null) {
+                    tracker = new AppSessionTracker(context.getApplicationContext());
+                    instance = tracker;
+                }
+            }
+        }
+        return tracker;
+    }
+
+    private AppSessionTracker(Context context) {
+        this.context = context;
+        this.journal = UsageJournal.getInstance(context);
+        this.day = localDay(System.currentTimeMillis());
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_USER_PRESENT);
+        // 与检测共用一个线程, 状态变更天然串行
+        context.registerReceiver(screenReceiver, filter, null, DetectionThread.getHandler());
+    }
+
+    /**
+     * 无障碍服务连接 / 断开时调用
+     */
+    public void setAccessibilityActive(boolean active) {
+        accessibilityActive = active;
+        Log.d(TAG, "🔀 Session source: " + (active ? "accessibility" : "usage stats"));
+    }
+
+    /**
+     * 前台应用切换 (已去重/防抖), 桌面应用表示结束使用
+     * 无障碍服务运行时, 来自 UsageStats 轮询的切换被忽略
+     */
+    public synchronized void onForeground(String packageName, int source) {
+        if (source == SOURCE_USAGE_STATS && accessibilityActive) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        rollDay(now);
+        if (screenOff) {
+            // 熄屏期间的窗口事件 (锁屏界面等) 只更新恢复目标
+            suspendedId = isHome(packageName) ? NONE : intern(packageName);
+            return;
+        }
+        if (isHome(packageName)) {
+            if (currentId != NONE) {
+                journal.append(UsageJournal.TYPE_HOME, packageName, System.currentTimeMillis());
+            }
+            closeSession(now);
+            return;
+        }
+        int id = intern(packageName);
+        if (id == currentId) {
+            return;
+        }
+        journal.append(UsageJournal.TYPE_FOREGROUND, packageName, System.currentTimeMillis());
+        int bouncedFrom = previousId;
+        long bouncedAt = previousEnd;
+        boolean wasBounce = currentId != NONE && now - currentStart < BOUNCE_MS;
+        closeSession(now);
+        // A -> B (短暂) -> A: 继续 A 的会话, 不算新会话
+        boolean resume = wasBounce && id == bouncedFrom && now - bouncedAt < BOUNCE_MS * 2;
+        openSession(id, now, !resume);
+    }
+
+    /**
+     * 当前打开的会话所属应用, 没有时返回 null
+     */
+    public synchronized String getCurrentPackage() {
+        return currentId == NONE ? null : packages[currentId];
+    }
+
+    /**
+     * 当前会话已持续的时长
+     */
+    public synchronized long getCurrentDurationMs() {
+        return currentId == NONE ? 0 : SystemClock.elapsedRealtime() - currentStart;
+    }
+
+    /**
+     * 单个应用当日累计 (含正在进行的会话), O(1)
+     */
+    public synchronized Totals getTotals(String packageName) {
+        rollDay(SystemClock.elapsedRealtime());
+        Integer id = ids.get(packageName);
+        if (id == null) {
+            return new Totals(packageName, 0, 0, false);
+        }
+        return totalsOf(id);
+    }
+
+    /**
+     * 所有有记录的应用, 按累计时长降序
+     */
+    public synchronized Totals[] getAllTotals() {
+        rollDay(SystemClock.elapsedRealtime());
+        Totals[] result = new Totals[size];
+        int count = 0;
+        for (int id = 0; id < size; id++) {
+            if (totalMs[id] > 0 || id == currentId) {
+                result[count++] = totalsOf(id);
+            }
+        }
+        Totals[] trimmed = Arrays.copyOf(result, count);
+        Arrays.sort(trimmed, (a, b) -> Long.compare(b.totalMs, a.totalMs));
+        return trimmed;
+    }
+
+    // ==================== 状态机 ====================
+
+    private synchronized void onScreenOff() {
+        long now = SystemClock.elapsedRealtime();
+        rollDay(now);
+        screenOff = true;
+        suspendedId = currentId;
+        closeSession(now);
+        journal.append(UsageJournal.TYPE_SCREEN_OFF, null, System.currentTimeMillis());
+        // 熄屏后进程更可能被回收, 立即写盘
+        journal.flush();
+        Log.d(TAG, "💤 Screen off, session closed");
+    }
+
+    private synchronized void onScreenOn() {
+        if (!screenOff) {
+            return;
+        }
+        screenOff = false;
+        long now = SystemClock.elapsedRealtime();
+        rollDay(now);
+        journal.append(UsageJournal.TYPE_SCREEN_ON, null, System.currentTimeMillis());
+        // 解锁回到原应用时不会再有窗口切换事件, 直接恢复
+        if (suspendedId != NONE) {
+            journal.append(UsageJournal.TYPE_FOREGROUND, packages[suspendedId], System.currentTimeMillis());
+            openSession(suspendedId, now, true);
+            suspendedId = NONE;
+        }
+    }
+
+    private void openSession(int id, long now, boolean countSession) {
+        currentId = id;
+        currentStart = now;
+        currentCounted = countSession;
+        if (countSession) {
+            sessionCounts[id]++;
+        }
+    }
+
+    private void closeSession(long now) {
+        if (currentId == NONE) {
+            return;
+        }
+        long duration = now - currentStart;
+        totalMs[currentId] += duration;
+        if (duration < BOUNCE_MS && currentCounted) {
+            // 误入的短暂会话只计时长, 不算一次使用
+            sessionCounts[currentId]--;
+        }
+        previousId = currentId;
+        previousEnd = now;
+        currentId = NONE;
+    }
+
+    /**
+     * 跨过本地午夜时清空累计; 进行中的会话在午夜结算, 清空后从午夜重新计时
+     * (午夜之后到首次调用之间的时长属于今天, 不能丢失)
+     */
+    private void rollDay(long now) {
+        long wallNow = System.currentTimeMillis();
+        long today = localDay(wallNow);
+        if (today == day) {
+            return;
+        }
+        // 今天零点换算到 elapsedRealtime, 不早于当前会话的开始
+        long midnightWall = UsageRollupIndex.dayStart(UsageRollupIndex.dayKey(wallNow));
+        long midnight = Math.min(now, now - (wallNow - midnightWall));
+        int openId = currentId;
+        if (openId != NONE) {
+            midnight = Math.max(midnight, currentStart);
+        }
+        closeSession(midnight);
+        Arrays.fill(totalMs, 0, size, 0);
+        Arrays.fill(sessionCounts, 0, size, 0);
+        previousId = NONE;
+        day = today;
+        if (openId != NONE) {
+            openSession(openId, midnight, true);
+        }
+        Log.d(TAG, "📅 New day, totals reset");
+    }
+
+    private Totals totalsOf(int id) {
+        long total = totalMs[id];
+        boolean active = id == currentId;
+        if (active) {
+            total += SystemClock.elapsedRealtime() - currentStart;
+        }
+        return new Totals(packages[id], total, sessionCounts[id], active);
+    }
+
+    private int intern(String packageName) {
+        Integer id = ids.get(packageName);
+        if (id != null) {
+            return id;
+        }
+        if (size == packages.length) {
+            int capacity = size * 2;
+            packages = Arrays.copyOf(packages, capacity);
+            totalMs = Arrays.copyOf(totalMs, capacity);
+            sessionCounts = Arrays.copyOf(sessionCounts, capacity);
+        }
+        packages[size] = packageName;
+        ids.put(packageName, size);
+        return size++;
+    }
+
+    private boolean isHome(String packageName) {
+        return PackageMetadataCache.getInstance(context).isHomeApp(packageName);
+    }
+
+    private static long localDay(long wallMillis) {
+        return (wallMillis + TimeZone.getDefault().getOffset(wallMillis)) / DAY_MS;
+    }
+}
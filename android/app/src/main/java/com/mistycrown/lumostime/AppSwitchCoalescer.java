@@ -0,0 +1,186 @@
+/**
+ * @file AppSwitchCoalescer.java
+ * @input Filtered window-state packages from AppAccessibilityService
+ * @output Stable foreground switches
+ * @pos Native Logic Layer
+ * @description Debounce stage between raw TYPE_WINDOW_STATE_CHANGED events and app-switch dispatch. A candidate
+ * package is delivered only after no other candidate arrived for the settle window and it has stayed in front for
+ * the minimum dwell time, so dialogs, share sheets and quick bounces do not churn the island icon or prompts.
+ */
+package com.mistycrown.lumostime;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 应用切换合并/防抖
+ * offer() 与回调都在构造时传入的 Handler 线程 (DetectionThread) 上执行; release() 可在任意线程调用
+ */
+public class AppSwitchCoalescer {
+    private static final String TAG = "AppSwitchCoalescer";
+    private static final String PREFS_NAME = "AppAccessibilityPrefs";
+    private static final String KEY_SETTLE_MS = "settleMs";
+    private static final String KEY_MIN_DWELL_MS = "minDwellMs";
+
+    public static final long DEFAULT_SETTLE_MS = 250;
+    public static final long DEFAULT_MIN_DWELL_MS = 400;
+
+    // 配置可由插件随时修改, 下一个事件生效
+    private static volatile long settleMs = DEFAULT_SETTLE_MS;
+    private static volatile long minDwellMs = DEFAULT_MIN_DWELL_MS;
+    private static volatile boolean settingsLoaded = false;
+
+    private static final AtomicLong windowEvents = new AtomicLong();
+    private static final AtomicLong filteredEvents = new AtomicLong();
+    private static final AtomicLong droppedSwitches = new AtomicLong();
+    private static final AtomicLong deliveredSwitches = new AtomicLong();
+
+    public interface Sink {
+        void onStableSwitch(String packageName);
+    }
+
+    private final Handler handler;
+    private final Sink sink;
+    // 最近一次交付出去的前台应用
+    private String deliveredPackage = "";
+    // 等待稳定的候选应用
+    private String pendingPackage = null;
+    private long pendingSince = 0;
+    private long lastEventAt = 0;
+    // 所属服务已销毁, 不再接收和交付
+    private volatile boolean released = false;
+
+    private final Runnable settleRunnable = this::onSettle;
+
+    public AppSwitchCoalescer(Context context, Handler handler, Sink sink) {
+        this.handler = handler;
+        this.sink = sink;
+        loadSettings(context);
+    }
+
+    /**
+     * 记录一个原始窗口事件 (包括被过滤掉的)
+     */
+    public static void recordWindowEvent(boolean filtered) {
+        windowEvents.incrementAndGet();
+        if (filtered) {
+            filteredEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * 收到一个通过过滤的候选应用
+     */
+    public void offer(String packageName) {
+        if (released) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (packageName.equals(pendingPackage)) {
+            // 同一应用的后续窗口事件只推迟稳定时间
+            lastEventAt = now;
+            schedule();
+            return;
+        }
+        if (pendingPackage != null) {
+            // 候选还没稳定就被新的窗口取代
+            droppedSwitches.incrementAndGet();
+        }
+        if (packageName.equals(deliveredPackage)) {
+            // 短暂离开后又回到原应用, 不需要交付
+            pendingPackage = null;
+            handler.removeCallbacks(settleRunnable);
+            return;
+        }
+        pendingPackage = packageName;
+        pendingSince = now;
+        lastEventAt = now;
+        schedule();
+    }
+
+    /**
+     * 所属服务销毁时调用: 取消等待中的交付, 之后的候选全部忽略
+     */
+    public void release() {
+        released = true;
+        handler.removeCallbacks(settleRunnable);
+    }
+
+    public String getDeliveredPackage() {
+        return deliveredPackage;
+    }
+
+    private void schedule() {
+        long deliverAt = Math.max(lastEventAt + settleMs, pendingSince + minDwellMs);
+        handler.removeCallbacks(settleRunnable);
+        handler.postAtTime(settleRunnable, deliverAt);
+    }
+
+    private void onSettle() {
+        String packageName = pendingPackage;
+        if (packageName == null || released) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (now < lastEventAt + settleMs || now < pendingSince + minDwellMs) {
+            // 配置在等待期间被调大
+            schedule();
+            return;
+        }
+        pendingPackage = null;
+        deliveredPackage = packageName;
+        deliveredSwitches.incrementAndGet();
+        sink.onStableSwitch(packageName);
+    }
+
+    // ==================== 配置与统计 ====================
+
+    private static void loadSettings(Context context) {
+        if (settingsLoaded) {
+            return;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        settleMs = prefs.getLong(KEY_SETTLE_MS, DEFAULT_SETTLE_MS);
+        minDwellMs = prefs.getLong(KEY_MIN_DWELL_MS, DEFAULT_MIN_DWELL_MS);
+        settingsLoaded = true;
+    }
+
+    public static void configure(Context context, long settle, long minDwell) {
+        settleMs = Math.max(0, settle);
+        minDwellMs = Math.max(0, minDwell);
+        settingsLoaded = true;
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putLong(KEY_SETTLE_MS, settleMs)
+                .putLong(KEY_MIN_DWELL_MS, minDwellMs)
+                .apply();
+        Log.d(TAG, "⚙️ Coalescing: settle=" + settleMs + "ms, minDwell=" + minDwellMs + "ms");
+    }
+
+    public static long getSettleMs() {
+        return settleMs;
+    }
+
+    public static long getMinDwellMs() {
+        return minDwellMs;
+    }
+
+    public static long getWindowEvents() {
+        return windowEvents.get();
+    }
+
+    public static long getFilteredEvents() {
+        return filteredEvents.get();
+    }
+
+    public static long getDroppedSwitches() {
+        return droppedSwitches.get();
+    }
+
+    public static long getDeliveredSwitches() {
+        return deliveredSwitches.get();
+    }
+}
@@ -12,6 +12,7 @@ import android.app.usage.UsageStats;
 import android.app.usage.UsageStatsManager;
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.Log;
 import com.getcapacitor.JSObject;
@@ -20,16 +21,15 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
-import android.util.Base64;
 import com.getcapacitor.JSArray;
-import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.json.JSONException;
 import org.json.JSONObject;
 import android.text.TextUtils;
@@ -40,14 +40,43 @@ import android.view.accessibility.AccessibilityManager;
 public class AppUsagePlugin extends Plugin {
     private static final String TAG = "AppUsagePlugin";
 
-    // Real-time package name from AccessibilityService
-    private static String currentRealtimePackage = null;
-    private static AppUsagePlugin instance = null;
+    private static volatile AppUsagePlugin instance = null;
+    // 订阅前台应用切换, 在检测线程上匹配规则
+    private AppEventBus.Subscription<AppEvents.ForegroundApp> foregroundSubscription;
+    // 推送给 JS 的 foregroundAppChanged 事件 (节流 + 序号)
+    private ForegroundAppStream foregroundStream;
+    private AppRuleStore ruleStore;
+
+    private static final String EVENT_FOREGROUND_APP_CHANGED = "foregroundAppChanged";
+    private static final String EVENT_BACKFILL_PROGRESS = "usageBackfillProgress";
+    private static final int DEFAULT_APP_CHUNK_SIZE = 20;
+    private static final int DEFAULT_JOURNAL_LIMIT = 5000;
+    private static final int DEFAULT_ROLLUP_DAYS = 7;
+    private static final int DEFAULT_VERIFY_DAYS = 30;
+    private static final String ICON_MODE_URL = "url";
+    // 每次流式列表请求/取消都会递增, 旧的流发现编号不一致即停止
+    private final AtomicInteger appStreamGeneration = new AtomicInteger();
 
     @Override
     public void load() {
         super.load();
+        ruleStore = AppRuleStore.getInstance(getContext());
         instance = this;
+        // 粘性主题会重放当前应用, 只对加载之后发生的切换弹出提醒
+        long loadedAt = SystemClock.elapsedRealtime();
+        foregroundStream = new ForegroundAppStream(DetectionThread.getHandler(), this::notifyForegroundChanged);
+        foregroundSubscription = AppEventBus.subscribe(AppEvents.FOREGROUND_APP, AppEventBus.DETECTION, 4, event -> {
+            foregroundStream.offer(event);
+            if (event.timestamp >= loadedAt) {
+                checkAndShowPrompt(event.packageName, event.appLabel);
+            }
+        });
+        UsageBackfillJob backfill = UsageBackfillJob.getInstance(getContext());
+        backfill.setListener(progress -> notifyListeners(EVENT_BACKFILL_PROGRESS, toJson(progress)));
+        // 上次导入被中断 (进程被杀) 时从断点继续
+        if (!backfill.isDone() && hasUsageStatsPermission()) {
+            backfill.start();
+        }
         Log.d(TAG, "✅ AppUsagePlugin loaded, instance saved");
     }
 
@@ -55,52 +84,59 @@ public class AppUsagePlugin extends Plugin {
     protected void handleOnDestroy() {
         super.handleOnDestroy();
         instance = null;
-        Log.d(TAG, "🔴 AppUsagePlugin destroyed, instance cleared");
-    }
-
-    public static void updateCurrentPackage(String packageName) {
-        currentRealtimePackage = packageName;
-    }
-
-    /**
-     * 静态方法: 触发应用检测事件到React Native
-     * 供AppAccessibilityService调用
-     */
-    public static void triggerAppDetected(String packageName, String appLabel) {
-        if (instance != null) {
-            // Log.d(TAG, "📤 触发应用检测事件: " + packageName);
-            // 在Java层检查关联并显示提醒 (无需发JS事件)
-            instance.checkAndShowPrompt(packageName, appLabel);
-        } else {
-            Log.w(TAG, "⚠️ 无法触发应用检测: Plugin instance为null");
+        UsageBackfillJob.getInstance(getContext()).setListener(null);
+        if (foregroundSubscription != null) {
+            foregroundSubscription.unsubscribe();
+            foregroundSubscription = null;
         }
+        appStreamGeneration.incrementAndGet();
+        Log.d(TAG, "🔴 AppUsagePlugin destroyed, instance cleared");
     }
 
     private void checkAndShowPrompt(String packageName, String appLabel) {
         try {
-            // 读取应用关联规则
-            android.content.SharedPreferences prefs = getContext().getSharedPreferences("AppUsageRules",
-                    Context.MODE_PRIVATE);
-            String activityId = prefs.getString(packageName, null);
-            String activityName = prefs.getString(packageName + "_name", null);
+            // 匹配应用关联规则 (内存中的编译索引, 支持通配/时间段/优先级, 无I/O)
+            AppRule rule = ruleStore.match(packageName);
 
-            if (activityId != null) {
+            if (rule != null) {
                 // 优先显示标签名称,如果没有则显示应用名称
-                String displayName = (activityName != null && !activityName.isEmpty()) ? activityName : appLabel;
+                String displayName = !rule.activityName.isEmpty() ? rule.activityName : appLabel;
                 // Log.d(TAG, "✅ 检测到关联: " + appLabel + " → " + displayName);
                 // 显示提醒(持久显示直到点击),显示标签名称, 传递 appLabel (真实应用名) 用于备注, 传递 activityId 用于JS定位
-                FloatingWindowService.showPrompt(packageName, displayName, appLabel, activityId);
-            } else {
-                Log.d(TAG, "ℹ️ 应用未关联: " + appLabel);
+                // 规则匹配在检测线程完成, 悬浮窗在主线程订阅提醒事件
+                AppEventBus.publish(AppEvents.RULE_PROMPT,
+                        new AppEvents.RulePrompt(packageName, displayName, appLabel, rule.activityId));
             }
+            // else: 应用未关联 (热路径, 不打日志)
         } catch (Exception e) {
             Log.e(TAG, "检查关联失败", e);
         }
     }
 
+    /**
+     * 推送前台应用变化, 运行在检测线程
+     */
+    private void notifyForegroundChanged(AppEvents.ForegroundApp app, long sequence, int skipped) {
+        if (!hasListeners(EVENT_FOREGROUND_APP_CHANGED)) {
+            return;
+        }
+        JSObject data = new JSObject();
+        data.put("packageName", app.packageName);
+        data.put("appLabel", app.appLabel);
+        data.put("sequence", sequence);
+        data.put("skipped", skipped);
+        // 事件时间为 elapsedRealtime, 换算成墙上时间
+        data.put("timestamp", System.currentTimeMillis() - (SystemClock.elapsedRealtime() - app.timestamp));
+        notifyListeners(EVENT_FOREGROUND_APP_CHANGED, data);
+    }
+
     @PluginMethod
     public void checkPermissions(PluginCall call) {
         boolean granted = hasUsageStatsPermission();
+        if (granted) {
+            // 首次获得权限: 导入系统仍保留的历史记录 (已完成或正在运行时不会重复开始)
+            UsageBackfillJob.getInstance(getContext()).start();
+        }
         JSObject ret = new JSObject();
         ret.put("granted", granted);
         call.resolve(ret);
@@ -137,9 +173,14 @@ public class AppUsagePlugin extends Plugin {
     @PluginMethod
     public void getRunningApp(PluginCall call) {
         // Prioritize real-time data from AccessibilityService if available
-        if (currentRealtimePackage != null) {
+        // 返回推送流最近一次推送的应用及其序号 (同一快照), 与 foregroundAppChanged 事件对齐,
+        // 订阅后可丢弃序号不大于此值的事件; 节流中尚未推送的切换会由之后的事件补上
+        ForegroundAppStream.Emission emission = foregroundStream != null ? foregroundStream.getLastEmission() : null;
+        AppEvents.ForegroundApp current = emission != null ? emission.app : AppEvents.FOREGROUND_APP.getLast();
+        if (current != null) {
             JSObject ret = new JSObject();
-            ret.put("packageName", currentRealtimePackage);
+            ret.put("packageName", current.packageName);
+            ret.put("sequence", emission != null ? emission.sequence : 0);
             call.resolve(ret);
             return;
         }
@@ -156,55 +197,407 @@ public class AppUsagePlugin extends Plugin {
     }
 
     private String getTopPackageName() {
-        UsageStatsManager usageStatsManager = (UsageStatsManager) getContext()
-                .getSystemService(Context.USAGE_STATS_SERVICE);
-        long endTime = System.currentTimeMillis();
-        long startTime = endTime - 60000; // Look back 60 seconds to ensure we capture the launch
-
-        android.app.usage.UsageEvents.Event event = new android.app.usage.UsageEvents.Event();
-        android.app.usage.UsageEvents usageEvents = usageStatsManager.queryEvents(startTime, endTime);
-        String packageName = null;
-        long lastTimestamp = 0;
-
-        while (usageEvents.hasNextEvent()) {
-            usageEvents.getNextEvent(event);
-            if (event.getEventType() == android.app.usage.UsageEvents.Event.MOVE_TO_FOREGROUND) {
-                if (event.getTimeStamp() > lastTimestamp) {
-                    lastTimestamp = event.getTimeStamp();
-                    packageName = event.getPackageName();
+        // 与 AppMonitorService 共用增量游标, 只读取上次查询之后的新事件
+        return ForegroundAppDetector.getInstance(getContext()).poll();
+    }
+
+    /**
+     * 前台检测统计: 每次轮询扫描的事件数 / 兜底查询次数等
+     */
+    @PluginMethod
+    public void getDetectorStats(PluginCall call) {
+        ForegroundAppDetector.Stats stats = ForegroundAppDetector.getInstance(getContext()).getStats();
+        JSObject ret = new JSObject();
+        ret.put("polls", stats.polls);
+        ret.put("lastEventsScanned", stats.lastEventsScanned);
+        ret.put("maxEventsScanned", stats.maxEventsScanned);
+        ret.put("totalEventsScanned", stats.totalEventsScanned);
+        ret.put("avgEventsScanned", stats.polls > 0 ? (double) stats.totalEventsScanned / stats.polls : 0);
+        ret.put("bootstrapQueries", stats.bootstrapQueries);
+        ret.put("fallbackQueries", stats.fallbackQueries);
+        ret.put("cursorMillis", stats.cursorMillis);
+        ret.put("foregroundPackage", stats.foregroundPackage != null ? stats.foregroundPackage : "");
+        call.resolve(ret);
+    }
+
+    /**
+     * 原生会话统计: 指定 packageName 时返回单个应用 (O(1)), 否则返回当日所有应用及当前会话
+     */
+    @PluginMethod
+    public void getSessionTotals(PluginCall call) {
+        AppSessionTracker tracker = AppSessionTracker.getInstance(getContext());
+        String packageName = call.getString("packageName");
+        if (packageName != null) {
+            call.resolve(toJson(tracker.getTotals(packageName)));
+            return;
+        }
+        JSArray apps = new JSArray();
+        for (AppSessionTracker.Totals totals : tracker.getAllTotals()) {
+            apps.put(toJson(totals));
+        }
+        String current = tracker.getCurrentPackage();
+        JSObject ret = new JSObject();
+        ret.put("apps", apps);
+        ret.put("currentPackage", current != null ? current : "");
+        ret.put("currentDurationMs", tracker.getCurrentDurationMs());
+        call.resolve(ret);
+    }
+
+    /**
+     * 读取磁盘日志 [from, to) 内的记录, 默认最近 24 小时
+     */
+    @PluginMethod
+    public void queryJournal(PluginCall call) {
+        long now = System.currentTimeMillis();
+        long to = call.getLong("to", now);
+        long from = call.getLong("from", to - 24L * 60 * 60 * 1000);
+        int limit = call.getInt("limit", DEFAULT_JOURNAL_LIMIT);
+        new Thread(() -> {
+            UsageJournal journal = UsageJournal.getInstance(getContext());
+            JSArray records = new JSArray();
+            int[] count = new int[1];
+            journal.scan(from, to, (timestamp, packageId, type) -> {
+                if (count[0]++ >= limit) {
+                    return;
                 }
+                JSObject record = new JSObject();
+                record.put("timestamp", timestamp);
+                record.put("type", journalTypeName(type));
+                String packageName = journal.getPackageName(packageId);
+                if (packageName != null) {
+                    record.put("packageName", packageName);
+                }
+                records.put(record);
+            });
+            JSObject ret = new JSObject();
+            ret.put("records", records);
+            ret.put("total", count[0]);
+            ret.put("truncated", count[0] > limit);
+            call.resolve(ret);
+        }).start();
+    }
+
+    /**
+     * 按应用 + 时间段汇总前台时长, 数据源默认为磁盘日志 (source: 'system' 使用 UsageStatsManager)
+     * 返回平行数组: durationsMs[i * bucketCount + b] 为 packages[i] 在 bucketStarts[b] 开始的时间段内的时长
+     */
+    @PluginMethod
+    public void queryUsageSummary(PluginCall call) {
+        Long start = call.getLong("start");
+        long end = call.getLong("end", System.currentTimeMillis());
+        String granularity = call.getString("granularity", UsageSummary.GRANULARITY_DAY);
+        String source = call.getString("source", UsageSummary.SOURCE_JOURNAL);
+        if (start == null || start >= end) {
+            call.reject("start must be before end");
+            return;
+        }
+        if (!UsageSummary.GRANULARITY_HOUR.equals(granularity) && !UsageSummary.GRANULARITY_DAY.equals(granularity)
+                && !UsageSummary.GRANULARITY_WEEK.equals(granularity)) {
+            call.reject("granularity must be hour, day or week");
+            return;
+        }
+        if (UsageSummary.SOURCE_SYSTEM.equals(source) && !hasUsageStatsPermission()) {
+            call.reject("Permission denied");
+            return;
+        }
+        long rangeStart = start;
+        new Thread(() -> {
+            try {
+                long began = SystemClock.elapsedRealtime();
+                UsageSummary summary = UsageSummary.compute(getContext(), rangeStart, end, granularity, source);
+                PackageMetadataCache metadata = PackageMetadataCache.getInstance(getContext());
+                JSArray packages = new JSArray();
+                JSArray labels = new JSArray();
+                for (String packageName : summary.packages) {
+                    packages.put(packageName);
+                    labels.put(metadata.getLabel(packageName));
+                }
+                JSObject ret = new JSObject();
+                ret.put("bucketStarts", toJsonArray(summary.bucketStarts));
+                ret.put("bucketCount", summary.getBucketCount());
+                ret.put("packages", packages);
+                ret.put("labels", labels);
+                ret.put("totalMs", toJsonArray(summary.totalMs));
+                ret.put("durationsMs", toJsonArray(summary.durationsMs));
+                ret.put("days", summary.days);
+                ret.put("computeMs", SystemClock.elapsedRealtime() - began);
+                call.resolve(ret);
+            } catch (Exception e) {
+                Log.e(TAG, "Usage summary failed", e);
+                call.reject("Usage summary failed: " + e.getMessage());
             }
+        }).start();
+    }
+
+    /**
+     * 按天汇总的使用时长: 已结束的日期读取封存的每日汇总, 今天读取实时部分
+     * 参数 start/end (毫秒) 所在的本地日期, 或 days (截至今天, 默认 7 天)
+     */
+    @PluginMethod
+    public void queryUsageRollup(PluginCall call) {
+        long now = System.currentTimeMillis();
+        int days = call.getInt("days", DEFAULT_ROLLUP_DAYS);
+        long end = call.getLong("end", now);
+        long start = call.getLong("start", end - (Math.max(1, days) - 1) * 24L * 60 * 60 * 1000);
+        if (start > end) {
+            call.reject("start must not be after end");
+            return;
+        }
+        new Thread(() -> {
+            try {
+                long began = SystemClock.elapsedRealtime();
+                UsageRollupIndex.Result result = UsageRollupIndex.getInstance(getContext())
+                        .query(UsageRollupIndex.dayKey(start), UsageRollupIndex.dayKey(end));
+                JSArray dayKeys = new JSArray();
+                for (int day : result.days) {
+                    dayKeys.put(day);
+                }
+                JSArray packages = new JSArray();
+                JSArray switches = new JSArray();
+                for (int i = 0; i < result.packages.length; i++) {
+                    packages.put(result.packages[i]);
+                    switches.put(result.switches[i]);
+                }
+                JSObject ret = new JSObject();
+                ret.put("days", dayKeys);
+                ret.put("packages", packages);
+                ret.put("totalMs", toJsonArray(result.totalMs));
+                ret.put("switches", switches);
+                ret.put("dailyMs", toJsonArray(result.dailyMs));
+                ret.put("sealedDays", result.sealedDays);
+                ret.put("computeMs", SystemClock.elapsedRealtime() - began);
+                call.resolve(ret);
+            } catch (Exception e) {
+                Log.e(TAG, "Usage rollup query failed", e);
+                call.reject("Usage rollup query failed: " + e.getMessage());
+            }
+        }).start();
+    }
+
+    /**
+     * 丢弃每日汇总并从日志重新计算
+     */
+    @PluginMethod
+    public void rebuildUsageRollup(PluginCall call) {
+        new Thread(() -> {
+            long began = SystemClock.elapsedRealtime();
+            int sealedDays = UsageRollupIndex.getInstance(getContext()).rebuild();
+            JSObject ret = new JSObject();
+            ret.put("sealedDays", sealedDays);
+            ret.put("computeMs", SystemClock.elapsedRealtime() - began);
+            call.resolve(ret);
+        }).start();
+    }
+
+    /**
+     * 用原始日志校验最近 days 天 (默认 30) 的每日汇总
+     */
+    @PluginMethod
+    public void verifyUsageRollup(PluginCall call) {
+        int days = call.getInt("days", DEFAULT_VERIFY_DAYS);
+        long now = System.currentTimeMillis();
+        new Thread(() -> {
+            List<UsageRollupIndex.Mismatch> mismatches = UsageRollupIndex.getInstance(getContext()).verify(
+                    UsageRollupIndex.dayKey(now - Math.max(1, days) * 24L * 60 * 60 * 1000),
+                    UsageRollupIndex.dayKey(now));
+            JSArray items = new JSArray();
+            for (UsageRollupIndex.Mismatch mismatch : mismatches) {
+                JSObject item = new JSObject();
+                item.put("day", mismatch.day);
+                item.put("packageName", mismatch.packageName);
+                item.put("indexedMs", mismatch.indexedMs);
+                item.put("rawMs", mismatch.rawMs);
+                item.put("indexedSwitches", mismatch.indexedSwitches);
+                item.put("rawSwitches", mismatch.rawSwitches);
+                items.put(item);
+            }
+            JSObject ret = new JSObject();
+            ret.put("consistent", mismatches.isEmpty());
+            ret.put("mismatches", items);
+            call.resolve(ret);
+        }).start();
+    }
+
+    /**
+     * 开始 (或继续) 导入系统保留的历史使用记录, 进度通过 usageBackfillProgress 事件推送
+     */
+    @PluginMethod
+    public void startUsageBackfill(PluginCall call) {
+        if (!hasUsageStatsPermission()) {
+            call.reject("Permission denied");
+            return;
+        }
+        UsageBackfillJob backfill = UsageBackfillJob.getInstance(getContext());
+        boolean started = backfill.start();
+        JSObject ret = toJson(backfill.getProgress());
+        ret.put("started", started);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void getUsageBackfillStatus(PluginCall call) {
+        call.resolve(toJson(UsageBackfillJob.getInstance(getContext()).getProgress()));
+    }
+
+    private static JSObject toJson(UsageBackfillJob.Progress progress) {
+        JSObject data = new JSObject();
+        data.put("state", progress.state);
+        data.put("totalDays", progress.totalDays);
+        data.put("completedDays", progress.completedDays);
+        data.put("importedEvents", progress.importedEvents);
+        data.put("resumedDays", progress.resumedDays);
+        data.put("windowStart", progress.windowStart);
+        data.put("cutoff", progress.cutoff);
+        return data;
+    }
+
+    private static JSArray toJsonArray(long[] values) {
+        JSArray array = new JSArray();
+        for (long value : values) {
+            array.put(value);
+        }
+        return array;
+    }
+
+    @PluginMethod
+    public void getJournalStats(PluginCall call) {
+        UsageJournal journal = UsageJournal.getInstance(getContext());
+        JSObject ret = new JSObject();
+        ret.put("appended", journal.getAppended());
+        ret.put("flushes", journal.getFlushes());
+        ret.put("packages", journal.getPackageCount());
+        ret.put("files", journal.getFileCount());
+        ret.put("bytesOnDisk", journal.getBytesOnDisk());
+        call.resolve(ret);
+    }
+
+    private static String journalTypeName(int type) {
+        switch (type) {
+            case UsageJournal.TYPE_FOREGROUND:
+                return "foreground";
+            case UsageJournal.TYPE_HOME:
+                return "home";
+            case UsageJournal.TYPE_SCREEN_OFF:
+                return "screenOff";
+            case UsageJournal.TYPE_SCREEN_ON:
+                return "screenOn";
+            default:
+                return "unknown";
+        }
+    }
+
+    private static JSObject toJson(AppSessionTracker.Totals totals) {
+        JSObject item = new JSObject();
+        item.put("packageName", totals.packageName);
+        item.put("totalMs", totals.totalMs);
+        item.put("sessions", totals.sessions);
+        item.put("active", totals.active);
+        return item;
+    }
+
+    /**
+     * 前台检测的线程耗时: 检测线程上的工作 (迁移前都在主线程) 与仍在主线程执行的界面更新
+     */
+    @PluginMethod
+    public void getDetectionMetrics(PluginCall call) {
+        long switches = DetectionMetrics.getSwitches();
+        long detectionNanos = DetectionMetrics.getDetectionNanos();
+        long mainThreadNanos = DetectionMetrics.getMainThreadNanos();
+        JSObject ret = new JSObject();
+        ret.put("switches", switches);
+        ret.put("detectionTasks", DetectionMetrics.getDetectionTasks());
+        ret.put("detectionMs", detectionNanos / 1e6);
+        ret.put("detectionMaxMs", DetectionMetrics.getDetectionMaxNanos() / 1e6);
+        ret.put("mainThreadTasks", DetectionMetrics.getMainThreadTasks());
+        ret.put("mainThreadMs", mainThreadNanos / 1e6);
+        ret.put("mainThreadMaxMs", DetectionMetrics.getMainThreadMaxNanos() / 1e6);
+        ret.put("mainThreadSavedMsPerSwitch", switches > 0 ? detectionNanos / 1e6 / switches : 0);
+        ret.put("mainThreadMsPerSwitch", switches > 0 ? mainThreadNanos / 1e6 / switches : 0);
+        PackageMetadataCache metadata = PackageMetadataCache.getInstance(getContext());
+        ret.put("metadataCacheHits", metadata.getHits());
+        ret.put("metadataCacheMisses", metadata.getMisses());
+        LaunchablePackageSet launchables = LaunchablePackageSet.getInstance(getContext());
+        ret.put("launchableLookups", launchables.getLookups());
+        ret.put("launchableIpcAvoided", launchables.getIpcAvoided());
+        ret.put("launchableIpcSpent", launchables.getIpcSpent());
+        ret.put("launchableFullBuilds", launchables.getFullBuilds());
+        ret.put("launchableIncrementalUpdates", launchables.getIncrementalUpdates());
+        ret.put("windowEvents", AppSwitchCoalescer.getWindowEvents());
+        ret.put("windowEventsFiltered", AppSwitchCoalescer.getFilteredEvents());
+        ret.put("switchesDropped", AppSwitchCoalescer.getDroppedSwitches());
+        ret.put("switchesDelivered", AppSwitchCoalescer.getDeliveredSwitches());
+        if (call.getBoolean("reset", false)) {
+            DetectionMetrics.reset();
+        }
+        call.resolve(ret);
+    }
+
+    /**
+     * 配置无障碍窗口事件的合并: settleMs 内没有新的候选应用, 且候选已停留 minDwellMs 才算一次切换
+     */
+    @PluginMethod
+    public void setSwitchDebounce(PluginCall call) {
+        long settleMs = call.getLong("settleMs", AppSwitchCoalescer.getSettleMs());
+        long minDwellMs = call.getLong("minDwellMs", AppSwitchCoalescer.getMinDwellMs());
+        AppSwitchCoalescer.configure(getContext(), settleMs, minDwellMs);
+        JSObject ret = new JSObject();
+        ret.put("settleMs", AppSwitchCoalescer.getSettleMs());
+        ret.put("minDwellMs", AppSwitchCoalescer.getMinDwellMs());
+        call.resolve(ret);
+    }
+
+    /**
+     * foregroundAppChanged 推送的最小间隔, 节流期间只保留最新的应用
+     */
+    @PluginMethod
+    public void setForegroundStreamOptions(PluginCall call) {
+        if (foregroundStream == null) {
+            call.reject("Plugin not loaded");
+            return;
         }
-        return packageName;
+        long minIntervalMs = call.getLong("minIntervalMs", foregroundStream.getMinIntervalMs());
+        foregroundStream.setMinIntervalMs(minIntervalMs);
+        JSObject ret = new JSObject();
+        ret.put("minIntervalMs", foregroundStream.getMinIntervalMs());
+        ret.put("sequence", foregroundStream.getSequence());
+        ret.put("emitted", foregroundStream.getEmitted());
+        ret.put("throttled", foregroundStream.getThrottled());
+        call.resolve(ret);
     }
 
     @PluginMethod
     public void getInstalledApps(PluginCall call) {
+        if (call.getBoolean("stream", false)) {
+            streamInstalledApps(call);
+            return;
+        }
+        final boolean iconUrls = ICON_MODE_URL.equals(call.getString("iconMode"));
         new Thread(() -> {
             try {
                 PackageManager pm = getContext().getPackageManager();
-                List<ApplicationInfo> apps = pm.getInstalledApplications(PackageManager.GET_META_DATA);
+                AppIconCache iconCache = AppIconCache.getInstance(getContext());
+                PackageMetadataCache metadata = PackageMetadataCache.getInstance(getContext());
+                // PackageInfo 同时带有 versionCode/lastUpdateTime, 用于图标缓存的版本校验
+                List<PackageInfo> packages = pm.getInstalledPackages(0);
+                Set<String> installed = new HashSet<>();
                 JSArray ret = new JSArray();
 
-                for (ApplicationInfo app : apps) {
-                    if ((app.flags & ApplicationInfo.FLAG_SYSTEM) == 0
-                            || (app.flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0) {
+                for (PackageInfo info : packages) {
+                    ApplicationInfo app = info.applicationInfo;
+                    if (app == null) {
+                        continue;
+                    }
+                    installed.add(info.packageName);
+                    if (isListedApp(app)) {
                         JSObject obj = new JSObject();
                         obj.put("packageName", app.packageName);
-                        obj.put("label", pm.getApplicationLabel(app).toString());
-                        // Icon conversion is heavy, do it carefully or pagination?
-                        // For now, let's try sending all, but maybe resize?
-                        // Or maybe just names first for speed?
-                        // User requirement: "显示图标". So we must send it.
-                        try {
-                            Drawable icon = pm.getApplicationIcon(app);
-                            obj.put("icon", drawableToBase64(icon));
-                        } catch (Exception e) {
-                            obj.put("icon", "");
-                        }
+                        obj.put("label", metadata.getLabel(pm, app));
+                        // 图标走缓存: 只有新安装/已更新的应用才会重新渲染和编码
+                        obj.put("icon", iconFor(pm, iconCache, info, iconUrls));
                         ret.put(obj);
                     }
                 }
+                iconCache.retainOnly(installed);
                 call.resolve(new JSObject().put("apps", ret));
             } catch (Exception e) {
                 call.reject("Failed to get apps", e);
@@ -212,79 +605,377 @@ public class AppUsagePlugin extends Plugin {
         }).start();
     }
 
+    /**
+     * 流式获取应用列表:
+     * 第一轮按 chunkSize 分批发送 packageName/label (事件 installedAppsChunk, phase=labels),
+     * 第二轮再分批补发图标 (phase=icons)。全部完成 (或被取消) 后 resolve 耗时统计。
+     * iconMode=url 时图标 URL 随第一轮一起发送, 不再需要第二轮。
+     */
+    private void streamInstalledApps(PluginCall call) {
+        final int chunkSize = Math.max(1, call.getInt("chunkSize", DEFAULT_APP_CHUNK_SIZE));
+        final boolean iconUrls = ICON_MODE_URL.equals(call.getString("iconMode"));
+        final int streamId = appStreamGeneration.incrementAndGet();
+
+        new Thread(() -> {
+            try {
+                long start = SystemClock.elapsedRealtime();
+                long firstChunkMs = -1;
+                PackageManager pm = getContext().getPackageManager();
+                PackageMetadataCache metadata = PackageMetadataCache.getInstance(getContext());
+                List<PackageInfo> packages = pm.getInstalledPackages(0);
+                Set<String> installed = new HashSet<>();
+                List<PackageInfo> listed = new ArrayList<>();
+                boolean cancelled = false;
+
+                // Pass 1: labels
+                JSArray chunk = new JSArray();
+                for (PackageInfo info : packages) {
+                    ApplicationInfo app = info.applicationInfo;
+                    if (app == null) {
+                        continue;
+                    }
+                    installed.add(info.packageName);
+                    if (!isListedApp(app)) {
+                        continue;
+                    }
+                    listed.add(info);
+                    JSObject obj = new JSObject();
+                    obj.put("packageName", app.packageName);
+                    obj.put("label", metadata.getLabel(pm, app));
+                    if (iconUrls) {
+                        obj.put("icon", iconFor(pm, null, info, true));
+                    }
+                    chunk.put(obj);
+                    if (chunk.length() >= chunkSize) {
+                        if (!isAppStreamActive(streamId)) {
+                            cancelled = true;
+                            break;
+                        }
+                        emitAppChunk(streamId, "labels", chunk);
+                        if (firstChunkMs < 0) {
+                            firstChunkMs = SystemClock.elapsedRealtime() - start;
+                        }
+                        chunk = new JSArray();
+                    }
+                }
+                if (!cancelled && chunk.length() > 0 && isAppStreamActive(streamId)) {
+                    emitAppChunk(streamId, "labels", chunk);
+                    if (firstChunkMs < 0) {
+                        firstChunkMs = SystemClock.elapsedRealtime() - start;
+                    }
+                }
+                long labelsMs = SystemClock.elapsedRealtime() - start;
+
+                // Pass 2: icons
+                int iconsSent = 0;
+                if (!cancelled && !iconUrls) {
+                    AppIconCache iconCache = AppIconCache.getInstance(getContext());
+                    chunk = new JSArray();
+                    for (PackageInfo info : listed) {
+                        if (!isAppStreamActive(streamId)) {
+                            cancelled = true;
+                            break;
+                        }
+                        JSObject obj = new JSObject();
+                        obj.put("packageName", info.packageName);
+                        obj.put("icon", iconCache.getIconDataUrl(pm, info));
+                        chunk.put(obj);
+                        if (chunk.length() >= chunkSize) {
+                            emitAppChunk(streamId, "icons", chunk);
+                            iconsSent += chunk.length();
+                            chunk = new JSArray();
+                        }
+                    }
+                    if (!cancelled && chunk.length() > 0) {
+                        emitAppChunk(streamId, "icons", chunk);
+                        iconsSent += chunk.length();
+                    }
+                    if (!cancelled) {
+                        iconCache.retainOnly(installed);
+                    }
+                }
+                long totalMs = SystemClock.elapsedRealtime() - start;
+
+                JSObject timing = new JSObject();
+                timing.put("firstChunkMs", firstChunkMs);
+                timing.put("labelsMs", labelsMs);
+                timing.put("iconsMs", totalMs - labelsMs);
+                timing.put("totalMs", totalMs);
+
+                JSObject ret = new JSObject();
+                ret.put("streamId", streamId);
+                ret.put("total", listed.size());
+                ret.put("iconsSent", iconsSent);
+                ret.put("cancelled", cancelled);
+                ret.put("timing", timing);
+                Log.d(TAG, "📦 App stream " + streamId + " finished: " + listed.size() + " apps, first chunk "
+                        + firstChunkMs + "ms, total " + totalMs + "ms" + (cancelled ? " (cancelled)" : ""));
+                call.resolve(ret);
+            } catch (Exception e) {
+                call.reject("Failed to get apps", e);
+            }
+        }).start();
+    }
+
+    /**
+     * 取消正在进行的流式应用列表 (离开设置页时调用)
+     */
+    @PluginMethod
+    public void cancelInstalledApps(PluginCall call) {
+        appStreamGeneration.incrementAndGet();
+        call.resolve();
+    }
+
+    private boolean isAppStreamActive(int streamId) {
+        return appStreamGeneration.get() == streamId;
+    }
+
+    private void emitAppChunk(int streamId, String phase, JSArray apps) {
+        JSObject data = new JSObject();
+        data.put("streamId", streamId);
+        data.put("phase", phase);
+        data.put("apps", apps);
+        notifyListeners("installedAppsChunk", data);
+    }
+
+    /**
+     * 增量获取应用列表: 只返回 sinceToken 之后新增/更新/卸载的应用
+     * sinceToken 为空或已失效时 reset=true, added 为完整清单
+     */
+    @PluginMethod
+    public void getInstalledAppsDelta(PluginCall call) {
+        final String sinceToken = call.getString("sinceToken");
+        final boolean includeIcons = call.getBoolean("includeIcons", true);
+        final boolean iconUrls = ICON_MODE_URL.equals(call.getString("iconMode"));
+        new Thread(() -> {
+            try {
+                PackageManager pm = getContext().getPackageManager();
+                AppIconCache iconCache = AppIconCache.getInstance(getContext());
+                InstalledAppInventory.Delta delta = InstalledAppInventory.getInstance(getContext())
+                        .getDelta(sinceToken);
+
+                JSObject ret = new JSObject();
+                ret.put("token", delta.token);
+                ret.put("reset", delta.reset);
+                ret.put("added", toAppArray(pm, iconCache, delta.added, includeIcons, iconUrls));
+                ret.put("updated", toAppArray(pm, iconCache, delta.updated, includeIcons, iconUrls));
+                ret.put("removed", new JSArray(delta.removed));
+                call.resolve(ret);
+            } catch (Exception e) {
+                call.reject("Failed to get app delta", e);
+            }
+        }).start();
+    }
+
+    private JSArray toAppArray(PackageManager pm, AppIconCache iconCache,
+            List<InstalledAppInventory.AppEntry> entries, boolean includeIcons, boolean iconUrls) {
+        JSArray array = new JSArray();
+        for (InstalledAppInventory.AppEntry entry : entries) {
+            JSObject obj = new JSObject();
+            obj.put("packageName", entry.packageName);
+            obj.put("label", entry.label);
+            if (includeIcons) {
+                obj.put("icon", iconFor(pm, iconCache, entry.info, iconUrls));
+            }
+            array.put(obj);
+        }
+        return array;
+    }
+
+    /**
+     * iconMode=url 时返回由 AppIconWebViewClient 提供的图标地址 (WebView 按需加载),
+     * 否则返回 base64 data URL
+     */
+    private String iconFor(PackageManager pm, AppIconCache iconCache, PackageInfo info, boolean iconUrl) {
+        if (iconUrl) {
+            return AppIconWebViewClient.buildIconUrl(getBridge().getLocalUrl(), info);
+        }
+        return iconCache.getIconDataUrl(pm, info);
+    }
+
+    private static boolean isListedApp(ApplicationInfo app) {
+        return InstalledAppInventory.isListedApp(app);
+    }
+
     @PluginMethod
     public void saveAppRule(PluginCall call) {
         String packageName = call.getString("packageName");
         String activityId = call.getString("activityId");
-        String activityName = call.getString("activityName");
         if (packageName == null || activityId == null) {
             call.reject("Missing packageName or activityId");
             return;
         }
 
-        android.content.SharedPreferences prefs = getContext().getSharedPreferences("AppUsageRules",
-                Context.MODE_PRIVATE);
-        prefs.edit().putString(packageName, activityId)
-                .putString(packageName + "_name", activityName != null ? activityName : "")
-                .apply();
+        try {
+            ruleStore.put(parseRule(call.getData(), packageName, activityId));
+        } catch (Exception e) {
+            call.reject("Failed to save rule", e);
+            return;
+        }
         call.resolve();
+        // 预热在保存结果返回之后, 不影响本次调用的结果
+        IslandIconCache.getInstance(getContext()).warmRulePackages();
     }
 
     @PluginMethod
     public void removeAppRule(PluginCall call) {
-        String packageName = call.getString("packageName");
-        if (packageName == null) {
+        // 未指定 id 的规则以 packageName 作为 id
+        String ruleId = call.getString("id", call.getString("packageName"));
+        if (ruleId == null) {
             call.reject("Missing packageName");
             return;
         }
 
-        android.content.SharedPreferences prefs = getContext().getSharedPreferences("AppUsageRules",
-                Context.MODE_PRIVATE);
-        prefs.edit().remove(packageName).apply();
-        call.resolve();
+        try {
+            ruleStore.remove(ruleId);
+            call.resolve();
+        } catch (Exception e) {
+            call.reject("Failed to remove rule", e);
+        }
     }
 
+    /**
+     * 批量保存规则: rules = [{ packageName, activityId, activityName?, id?, startMinute?, endMinute?, weekdays?, priority? }]
+     * 与当前规则集比较后只提交一次, 返回每一项的状态和新的规则集版本
+     */
     @PluginMethod
-    public void getAppRules(PluginCall call) {
-        android.content.SharedPreferences prefs = getContext().getSharedPreferences("AppUsageRules",
-                Context.MODE_PRIVATE);
-        Map<String, ?> all = prefs.getAll();
-        JSObject rules = new JSObject();
-        for (Map.Entry<String, ?> entry : all.entrySet()) {
-            if (entry.getValue() instanceof String) {
-                rules.put(entry.getKey(), entry.getValue());
+    public void saveAppRules(PluginCall call) {
+        applyRuleBatch(call, false);
+    }
+
+    /**
+     * 用 rules 整体替换当前规则集 (用于恢复备份)
+     */
+    @PluginMethod
+    public void replaceAllRules(PluginCall call) {
+        applyRuleBatch(call, true);
+    }
+
+    /**
+     * 批量删除规则: packageNames = [...] (规则 id, 未指定 id 的规则即为包名)
+     */
+    @PluginMethod
+    public void removeAppRules(PluginCall call) {
+        JSArray packageNames = call.getArray("packageNames");
+        if (packageNames == null) {
+            call.reject("Missing packageNames");
+            return;
+        }
+        List<String> removals = new ArrayList<>();
+        JSArray invalid = new JSArray();
+        for (int i = 0; i < packageNames.length(); i++) {
+            String packageName = stringValue(packageNames.opt(i));
+            if (packageName.isEmpty()) {
+                invalid.put(i);
+            } else {
+                removals.add(packageName);
             }
         }
-        call.resolve(new JSObject().put("rules", rules));
+        try {
+            call.resolve(toBatchResponse(ruleStore.applyBatch(null, removals, false), invalid));
+        } catch (Exception e) {
+            call.reject("Failed to remove rules", e);
+        }
     }
 
-    private String drawableToBase64(Drawable drawable) {
-        Bitmap bitmap;
-        if (drawable instanceof BitmapDrawable) {
-            bitmap = ((BitmapDrawable) drawable).getBitmap();
-        } else {
-            int width = drawable.getIntrinsicWidth();
-            int height = drawable.getIntrinsicHeight();
-            // Handle some drawables having 0 intrinsic size
-            if (width <= 0)
-                width = 96;
-            if (height <= 0)
-                height = 96;
-
-            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-            drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-            drawable.draw(canvas);
-        }
-
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        // Compress to PNG, quality 100 (PNG ignores quality)
-        // Resize if too big? Icons are usually small (48-96dp).
-        // Let's resize to standard 48x48 to save memory if needed?
-        // No, keep original for quality, usually they are < 20kb.
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream);
-        byte[] byteArray = byteArrayOutputStream.toByteArray();
-        return "data:image/png;base64," + Base64.encodeToString(byteArray, Base64.NO_WRAP);
+    private void applyRuleBatch(PluginCall call, boolean replaceAll) {
+        JSArray items = call.getArray("rules");
+        if (items == null) {
+            call.reject("Missing rules");
+            return;
+        }
+        List<AppRule> upserts = new ArrayList<>();
+        // 缺少 packageName/activityId 的条目不参与提交, 以下标返回
+        JSArray invalid = new JSArray();
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.optJSONObject(i);
+            String packageName = item != null ? stringValue(item.opt("packageName")) : "";
+            String activityId = item != null ? stringValue(item.opt("activityId")) : "";
+            if (packageName.isEmpty() || activityId.isEmpty()) {
+                invalid.put(i);
+                continue;
+            }
+            upserts.add(parseRule(item, packageName, activityId));
+        }
+        AppRuleStore.BatchResult result;
+        try {
+            result = ruleStore.applyBatch(upserts, null, replaceAll);
+        } catch (Exception e) {
+            call.reject("Failed to save rules", e);
+            return;
+        }
+        call.resolve(toBatchResponse(result, invalid));
+        IslandIconCache.getInstance(getContext()).warmRulePackages();
+    }
+
+    /**
+     * 从 JS 对象解析规则, 未提供的时间段/星期/优先级使用默认值 (全天/每天/0)
+     */
+    private static AppRule parseRule(JSONObject item, String packageName, String activityId) {
+        return new AppRule(
+                stringValue(item.opt("id")),
+                packageName,
+                activityId,
+                stringValue(item.opt("activityName")),
+                item.optInt("startMinute", AppRule.ALL_DAY),
+                item.optInt("endMinute", AppRule.ALL_DAY),
+                item.optInt("weekdays", AppRule.ALL_WEEKDAYS),
+                item.optInt("priority", 0));
+    }
+
+    /**
+     * 字符串值; 缺失 / JSON null / 其他类型返回 "" (optString 会把 JSON null 转成 "null")
+     */
+    private static String stringValue(Object value) {
+        return value instanceof String ? (String) value : "";
+    }
+
+    private JSObject toBatchResponse(AppRuleStore.BatchResult result, JSArray invalid) {
+        JSArray results = new JSArray();
+        for (int i = 0; i < result.ruleIds.size(); i++) {
+            JSObject item = new JSObject();
+            item.put("id", result.ruleIds.get(i));
+            // 兼容旧调用方: 未指定 id 的规则 id 即包名
+            item.put("packageName", result.ruleIds.get(i));
+            item.put("status", result.statuses.get(i));
+            results.put(item);
+        }
+        JSObject ret = new JSObject();
+        ret.put("version", result.version);
+        ret.put("changed", result.changed);
+        ret.put("results", results);
+        ret.put("invalid", invalid);
+        return ret;
+    }
+
+    @PluginMethod
+    public void getAppRules(PluginCall call) {
+        JSObject rules = new JSObject();
+        JSObject names = new JSObject();
+        JSArray details = new JSArray();
+        for (AppRule rule : ruleStore.snapshot().values()) {
+            // rules/names 为旧格式 (以 id 为键), details 包含完整的规则定义
+            rules.put(rule.id, rule.activityId);
+            if (!rule.activityName.isEmpty()) {
+                names.put(rule.id, rule.activityName);
+            }
+            JSObject detail = new JSObject();
+            detail.put("id", rule.id);
+            detail.put("packageName", rule.packageName);
+            detail.put("activityId", rule.activityId);
+            detail.put("activityName", rule.activityName);
+            detail.put("startMinute", rule.startMinute);
+            detail.put("endMinute", rule.endMinute);
+            detail.put("weekdays", rule.weekdays);
+            detail.put("priority", rule.priority);
+            details.put(detail);
+        }
+        JSObject ret = new JSObject();
+        ret.put("rules", rules);
+        ret.put("names", names);
+        ret.put("details", details);
+        ret.put("version", ruleStore.getVersion());
+        call.resolve(ret);
     }
 
     @PluginMethod
@@ -296,6 +987,18 @@ public class AppUsagePlugin extends Plugin {
 
         try {
             Intent serviceIntent = new Intent(getContext(), AppMonitorService.class);
+            // 轮询策略: 未传入的字段使用默认值 (先拆箱, 避免走 putExtra(String, Serializable))
+            long minIntervalMs = call.getLong(AppMonitorService.EXTRA_MIN_INTERVAL_MS,
+                    AppMonitorService.DEFAULT_MIN_INTERVAL_MS);
+            long maxIntervalMs = call.getLong(AppMonitorService.EXTRA_MAX_INTERVAL_MS,
+                    AppMonitorService.DEFAULT_MAX_INTERVAL_MS);
+            float backoffFactor = call.getFloat(AppMonitorService.EXTRA_BACKOFF_FACTOR,
+                    AppMonitorService.DEFAULT_BACKOFF_FACTOR);
+            boolean pauseWhenScreenOff = call.getBoolean(AppMonitorService.EXTRA_PAUSE_WHEN_SCREEN_OFF, true);
+            serviceIntent.putExtra(AppMonitorService.EXTRA_MIN_INTERVAL_MS, minIntervalMs);
+            serviceIntent.putExtra(AppMonitorService.EXTRA_MAX_INTERVAL_MS, maxIntervalMs);
+            serviceIntent.putExtra(AppMonitorService.EXTRA_BACKOFF_FACTOR, backoffFactor);
+            serviceIntent.putExtra(AppMonitorService.EXTRA_PAUSE_WHEN_SCREEN_OFF, pauseWhenScreenOff);
             if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
                 getContext().startForegroundService(serviceIntent);
             } else {
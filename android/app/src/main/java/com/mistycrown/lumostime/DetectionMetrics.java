@@ -0,0 +1,90 @@
+/**
+ * @file DetectionMetrics.java
+ * @input Timings from DetectionThread
+ * @output Jank metrics for AppUsagePlugin.getDetectionMetrics
+ * @pos Native Metrics
+ * @description Counters for how much foreground-detection work now runs off the main thread versus what is still
+ * posted back to it, so the main-thread time saved per app switch can be verified on device.
+ */
+package com.mistycrown.lumostime;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 前台检测耗时统计 (纳秒)
+ * detection: 在检测线程上执行的工作, 迁移前这部分全部占用主线程
+ * mainThread: 仍需在主线程执行的界面更新
+ */
+public final class DetectionMetrics {
+    private static final AtomicLong switches = new AtomicLong();
+    private static final AtomicLong detectionTasks = new AtomicLong();
+    private static final AtomicLong detectionNanos = new AtomicLong();
+    private static final AtomicLong detectionMaxNanos = new AtomicLong();
+    private static final AtomicLong mainThreadTasks = new AtomicLong();
+    private static final AtomicLong mainThreadNanos = new AtomicLong();
+    private static final AtomicLong mainThreadMaxNanos = new AtomicLong();
+
+    private DetectionMetrics() {
+    }
+
+    public static void recordSwitch() {
+        switches.incrementAndGet();
+    }
+
+    static void recordDetection(long nanos) {
+        detectionTasks.incrementAndGet();
+        detectionNanos.addAndGet(nanos);
+        updateMax(detectionMaxNanos, nanos);
+    }
+
+    static void recordMainThread(long nanos) {
+        mainThreadTasks.incrementAndGet();
+        mainThreadNanos.addAndGet(nanos);
+        updateMax(mainThreadMaxNanos, nanos);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public static long getSwitches() {
+        return switches.get();
+    }
+
+    public static long getDetectionTasks() {
+        return detectionTasks.get();
+    }
+
+    public static long getDetectionNanos() {
+        return detectionNanos.get();
+    }
+
+    public static long getDetectionMaxNanos() {
+        return detectionMaxNanos.get();
+    }
+
+    public static long getMainThreadTasks() {
+        return mainThreadTasks.get();
+    }
+
+    public static long getMainThreadNanos() {
+        return mainThreadNanos.get();
+    }
+
+    public static long getMainThreadMaxNanos() {
+        return mainThreadMaxNanos.get();
+    }
+
+    public static void reset() {
+        switches.set(0);
+        detectionTasks.set(0);
+        detectionNanos.set(0);
+        detectionMaxNanos.set(0);
+        mainThreadTasks.set(0);
+        mainThreadNanos.set(0);
+        mainThreadMaxNanos.set(0);
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * @file DetectionThread.java
+ * @input Work from AppAccessibilityService / AppMonitorService / AppUsagePlugin
+ * @output Serialized execution on a background Looper; UI work posted back to main
+ * @pos Native Threading
+ * @description Single background HandlerThread that owns all foreground-detection state (last package, poll cursor,
+ * scheduler). Binder IPC such as queryEvents, getApplicationLabel and resolveActivity runs here instead of on the
+ * main thread, which is shared with the floating island and the WebView.
+ */
+package com.mistycrown.lumostime;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * 前台检测线程
+ * 检测相关的状态只在该线程上读写, 因此不需要加锁; 只有最终的界面更新通过 postToMain 回到主线程
+ */
+public final class DetectionThread {
+    private static final String THREAD_NAME = "LumosDetection";
+
+    private static volatile Handler handler = null;
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private DetectionThread() {
+    }
+
+    public static Handler getHandler() {
+        Handler h = handler;
+        if (h == null) {
+            synchronized (DetectionThread.class) {
+                h = handler;
+                if (h == null) {
+                    HandlerThread thread = new HandlerThread(THREAD_NAME, Process.THREAD_PRIORITY_BACKGROUND);
+                    thread.start();
+                    h = new Handler(thread.getLooper());
+                    handler = h;
+                }
+            }
+        }
+        return h;
+    }
+
+    public static boolean isCurrent() {
+        Handler h = handler;
+        return h != null && h.getLooper().isCurrentThread();
+    }
+
+    public static void post(Runnable task) {
+        getHandler().post(task);
+    }
+
+    /**
+     * 在检测线程执行并记录耗时 (这部分工作原来运行在主线程上)
+     */
+    public static void postDetection(Runnable task) {
+        getHandler().post(() -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            task.run();
+            DetectionMetrics.recordDetection(SystemClock.elapsedRealtimeNanos() - start);
+        });
+    }
+
+    /**
+     * 把界面更新投递到主线程, 并记录其在主线程上的耗时
+     */
+    public static void postToMain(Runnable task) {
+        mainHandler.post(() -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            task.run();
+            DetectionMetrics.recordMainThread(SystemClock.elapsedRealtimeNanos() - start);
+        });
+    }
+}
@@ -7,24 +7,24 @@
  */
 package com.mistycrown.lumostime;
 
+import android.app.KeyguardManager;
 import android.app.Service;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.graphics.Color;
 import android.graphics.PixelFormat;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.IBinder;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Gravity;
-import android.view.MotionEvent;
 import android.view.View;
 import android.view.WindowManager;
-import android.widget.TextView;
-import android.util.TypedValue;
 
 /**
  * 悬浮窗服务
@@ -32,21 +32,23 @@ import android.util.TypedValue;
  */
 public class FloatingWindowService extends Service {
     private static final String TAG = "FloatingWindowService";
+    private static final String PREFS_NAME = "FloatingWindowPrefs";
+    private static final String KEY_POSITION_X = "positionX";
+    private static final String KEY_POSITION_Y = "positionY";
     private static FloatingWindowService instance = null;
+    private AppEventBus.Subscription<AppEvents.ForegroundApp> foregroundSubscription;
+    private AppEventBus.Subscription<AppEvents.RulePrompt> promptSubscription;
 
     private WindowManager windowManager;
     private View floatingView;
     private WindowManager.LayoutParams params;
 
-    private TextView emojiView;
-    private TextView timeView;
-    private android.widget.ImageView iconView;
-    private android.widget.FrameLayout containerView;
+    private IslandView islandView;
+    private IslandDragController dragController;
     private BroadcastReceiver appChangeReceiver;
     private String currentAppPackage = "";
 
     // State
-    private boolean isMoving = false;
     private boolean isFocusing = false;
     private long startTime = 0;
     private android.os.Handler handler = new android.os.Handler(android.os.Looper.getMainLooper());
@@ -55,6 +57,25 @@ public class FloatingWindowService extends Service {
     private static final long SHOW_EMOJI_DURATION = 7000; // 5s to 7s
 
     private int currentDisplayState = 0; // 0: Time, 1: Emoji, 2: Icon
+    private static final long TICK_SLACK_MS = 5;
+
+    // 计时文本写入复用的字符缓冲, islandView 直接引用该缓冲绘制
+    private final IslandClock clock = new IslandClock();
+
+    // 渲染暂停: 屏幕关闭 / 锁屏 / 深度休眠 (Doze) / 悬浮窗被系统隐藏 时停止计时循环与翻转动画
+    // 全屏应用不会遮住 TYPE_APPLICATION_OVERLAY 窗口 (悬浮窗仍绘制在其上方, 需要继续计时), 不作为暂停条件;
+    // 系统强制隐藏悬浮窗 (例如应用调用 setHideOverlayWindows) 时不会通知悬浮窗, 无法感知
+    private BroadcastReceiver screenReceiver;
+    private boolean screenOn = true;
+    private boolean keyguardLocked = false;
+    private boolean deviceIdle = false;
+    private boolean windowVisible = true;
+    private boolean renderSuspended = false;
+    // 计时循环是否应当运行 (专注中且未显示提示文字); 暂停期间保留, 恢复时据此重新开始
+    private boolean tickWanted = false;
+    // 恢复后的第一次 tick 直接切到当前状态, 不补播翻转动画
+    private boolean snapNextTick = false;
+    private static final RenderMetrics renderMetrics = new RenderMetrics();
 
     // 提醒模式状态
     private boolean isPromptMode = false;
@@ -66,8 +87,9 @@ public class FloatingWindowService extends Service {
     private Runnable updateRunnable = new Runnable() {
         @Override
         public void run() {
-            if (!isFocusing)
+            if (!isFocusing || renderSuspended)
                 return;
+            renderMetrics.tick();
 
             long now = System.currentTimeMillis();
             long cycleTime = now % CYCLE_DURATION;
@@ -81,66 +103,32 @@ public class FloatingWindowService extends Service {
                 newState = 2; // Icon
             }
 
-            // Update Time Text constantly
+            // 只在显示的秒数变化时更新文本 (只重绘, 不触发 layout)
             long elapsed = now - startTime;
             if (startTime <= 0 || elapsed > 24 * 60 * 60 * 1000L) {
                 elapsed = 0;
             }
-            String timeText = formatDuration(elapsed);
-            timeView.setText(timeText);
-            if (timeText.length() > 5) {
-                timeView.setTextSize(TypedValue.COMPLEX_UNIT_DIP, 9);
-            } else {
-                timeView.setTextSize(TypedValue.COMPLEX_UNIT_DIP, 11);
+            if (clock.update(elapsed)) {
+                islandView.setTime(clock.chars(), clock.length(), clock.sizeBucket());
             }
 
-            // Handle State Transitions
-            if (newState != currentDisplayState) {
-                View fromView = getViewForState(currentDisplayState);
-                View toView = getViewForState(newState);
-
-                if (fromView != toView) {
-                    flipViews(fromView, toView);
-                }
-                currentDisplayState = newState;
+            // Handle State Transitions (翻转动画在 IslandView.onDraw 中逐帧绘制)
+            if (snapNextTick) {
+                islandView.show(newState);
+                snapNextTick = false;
+            } else if (newState != currentDisplayState) {
+                islandView.flipTo(newState);
             }
+            currentDisplayState = newState;
 
-            handler.postDelayed(this, 500);
+            // 下一次触发对齐到秒数变化或显示状态切换, 取较早者 (留几毫秒余量, 避免在边界前触发)
+            long nextSecond = IslandClock.millisToNextSecond(elapsed);
+            long nextState = (cycleTime < SHOW_TIME_DURATION ? SHOW_TIME_DURATION
+                    : cycleTime < SHOW_EMOJI_DURATION ? SHOW_EMOJI_DURATION : CYCLE_DURATION) - cycleTime;
+            handler.postDelayed(this, Math.min(nextSecond, nextState) + TICK_SLACK_MS);
         }
     };
 
-    private View getViewForState(int state) {
-        switch (state) {
-            case 0:
-                return timeView;
-            case 1:
-                return emojiView;
-            case 2:
-                return iconView;
-            default:
-                return timeView;
-        }
-    }
-
-    private void flipViews(final View from, final View to) {
-        from.animate().scaleY(0f).setDuration(200).withEndAction(new Runnable() {
-            @Override
-            public void run() {
-                from.setVisibility(View.GONE);
-                to.setScaleY(0f);
-                to.setVisibility(View.VISIBLE);
-                to.animate().scaleY(1f).setDuration(200).start();
-            }
-        }).start();
-    }
-
-    private String formatDuration(long millis) {
-        long seconds = millis / 1000;
-        long m = seconds / 60; // Total minutes
-        long s = seconds % 60;
-        return String.format("%02d:%02d", m, s);
-    }
-
     // Helper for DP to PX
     private int dpToPx(int dp) {
         float density = getResources().getDisplayMetrics().density;
@@ -170,6 +158,14 @@ public class FloatingWindowService extends Service {
         super.onDestroy();
         instance = null;
         Log.d(TAG, "🔴 悬浮窗服务销毁, instance已清空");
+        if (foregroundSubscription != null) {
+            foregroundSubscription.unsubscribe();
+            foregroundSubscription = null;
+        }
+        if (promptSubscription != null) {
+            promptSubscription.unsubscribe();
+            promptSubscription = null;
+        }
         if (floatingView != null) {
             try {
                 windowManager.removeView(floatingView);
@@ -178,7 +174,12 @@ public class FloatingWindowService extends Service {
             }
             floatingView = null;
         }
-        handler.removeCallbacks(updateRunnable);
+        stopTicking();
+        renderMetrics.end(SystemClock.elapsedRealtime());
+        if (dragController != null) {
+            dragController.release();
+            dragController = null;
+        }
 
         if (appChangeReceiver != null) {
             try {
@@ -187,6 +188,14 @@ public class FloatingWindowService extends Service {
                 Log.e(TAG, "Unregister receiver failed", e);
             }
         }
+        if (screenReceiver != null) {
+            try {
+                unregisterReceiver(screenReceiver);
+            } catch (Exception e) {
+                Log.e(TAG, "Unregister screen receiver failed", e);
+            }
+            screenReceiver = null;
+        }
     }
 
     @Override
@@ -196,19 +205,29 @@ public class FloatingWindowService extends Service {
         Log.d(TAG, "🟢 悬浮窗服务 onCreate");
 
         windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+        renderMetrics.begin(SystemClock.elapsedRealtime());
         initView();
         registerAppChangeReceiver();
+        registerScreenReceiver();
+        IslandIconCache.getInstance(this).warmRulePackages();
+        subscribeEvents();
     }
 
-    // Public method for external access
-    public static void updateCurrentApp(String packageName, String appLabel) {
-        Log.d(TAG, "📥 updateCurrentApp被调用: package=" + packageName + ", label=" + appLabel);
-        if (instance != null) {
-            Log.d(TAG, "✅ instance存在, isFocusing=" + instance.isFocusing);
-            instance.updateAppIconInternal(packageName, appLabel);
-        } else {
-            Log.w(TAG, "⚠️ FloatingWindowService instance为null, 无法更新图标");
-        }
+    /**
+     * 订阅前台应用与规则提醒事件 (主线程投递)
+     * 前台应用是粘性主题, 悬浮窗晚于检测启动时也会立即收到当前应用
+     */
+    private void subscribeEvents() {
+        // 只关心最新的前台应用, 容量为 1
+        foregroundSubscription = AppEventBus.subscribe(AppEvents.FOREGROUND_APP, AppEventBus.MAIN, 1, event -> {
+            Log.d(TAG, "📥 前台应用: package=" + event.packageName + ", label=" + event.appLabel);
+            updateAppIconInternal(event.packageName, event.appLabel, event.icon);
+        });
+        promptSubscription = AppEventBus.subscribe(AppEvents.RULE_PROMPT, AppEventBus.MAIN, 4, event -> {
+            Log.d(TAG, "📥 规则提醒: " + event.packageName + " / " + event.displayName + " / " + event.realAppName
+                    + " / " + event.activityId);
+            showPromptInternal(event.packageName, event.displayName, event.realAppName, event.activityId);
+        });
     }
 
     public static void showTempText(String text) {
@@ -225,35 +244,19 @@ public class FloatingWindowService extends Service {
 
     private void showTempTextInternal(String text) {
         Log.d(TAG, "🔤 showTempTextInternal: " + text);
-        if (timeView != null) {
+        if (islandView != null) {
             // 暂停循环更新
-            handler.removeCallbacks(updateRunnable);
-
-            // 隐藏其他视图
-            if (emojiView != null)
-                emojiView.setVisibility(View.GONE);
-            if (iconView != null)
-                iconView.setVisibility(View.GONE);
+            stopTicking();
 
             // 显示文字
-            timeView.setText(text);
-            timeView.setTextSize(TypedValue.COMPLEX_UNIT_DIP, 9);
-            timeView.setVisibility(View.VISIBLE);
-            timeView.setScaleY(1f);
+            islandView.showText(text);
+            // 计时文本被覆盖, 恢复计时时重新写入
+            clock.invalidate();
 
-            Log.d(TAG, "✅ 文字已显示在timeView (持久显示,等待用户点击)");
+            Log.d(TAG, "✅ 文字已显示在悬浮球 (持久显示,等待用户点击)");
             // 不再设置定时器,持久显示直到点击
         } else {
-            Log.w(TAG, "⚠️ timeView为null");
-        }
-    }
-
-    public static void showPrompt(String packageName, String appLabel, String realAppName, String activityId) {
-        Log.d(TAG, "📥 showPrompt被调用: " + packageName + " / " + appLabel + " / " + realAppName + " / " + activityId);
-        if (instance != null) {
-            instance.showPromptInternal(packageName, appLabel, realAppName, activityId);
-        } else {
-            Log.w(TAG, "⚠️ FloatingWindowService instance为null");
+            Log.w(TAG, "⚠️ islandView为null");
         }
     }
 
@@ -279,14 +282,211 @@ public class FloatingWindowService extends Service {
         this.promptAppLabel = "";
 
         // 恢复显示应用图标
-        if (timeView != null)
-            timeView.setVisibility(View.GONE);
-        if (iconView != null)
-            iconView.setVisibility(View.VISIBLE);
+        if (islandView != null)
+            islandView.show(IslandView.STATE_ICON);
 
         Log.d(TAG, "✅ 退出提醒模式");
     }
 
+    // ==================== 渲染暂停 ====================
+
+    private void startTicking() {
+        tickWanted = true;
+        renderMetrics.setTicking(true, SystemClock.elapsedRealtime());
+        handler.removeCallbacks(updateRunnable);
+        if (!renderSuspended) {
+            handler.post(updateRunnable);
+        }
+    }
+
+    private void stopTicking() {
+        tickWanted = false;
+        renderMetrics.setTicking(false, SystemClock.elapsedRealtime());
+        handler.removeCallbacks(updateRunnable);
+    }
+
+    /**
+     * 监听屏幕开关 / 解锁 / Doze, 并读取当前状态
+     */
+    private void registerScreenReceiver() {
+        final PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+        final KeyguardManager keyguardManager = (KeyguardManager) getSystemService(KEYGUARD_SERVICE);
+        screenOn = powerManager == null || powerManager.isInteractive();
+        keyguardLocked = keyguardManager != null && keyguardManager.isKeyguardLocked();
+        deviceIdle = powerManager != null && powerManager.isDeviceIdleMode();
+
+        screenReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                String action = intent.getAction();
+                if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+                    screenOn = false;
+                } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+                    screenOn = true;
+                    // 亮屏时锁屏界面可能仍在显示, 解锁后会收到 USER_PRESENT
+                    keyguardLocked = keyguardManager != null && keyguardManager.isKeyguardLocked();
+                } else if (Intent.ACTION_USER_PRESENT.equals(action)) {
+                    keyguardLocked = false;
+                } else if (PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED.equals(action)) {
+                    deviceIdle = powerManager != null && powerManager.isDeviceIdleMode();
+                }
+                updateRenderState();
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_USER_PRESENT);
+        filter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        registerReceiver(screenReceiver, filter);
+        updateRenderState();
+    }
+
+    /**
+     * 根据屏幕 / 锁屏 / Doze / 窗口可见性决定是否暂停渲染
+     * 恢复时经过的时间总是由 startTime 重新计算, 暂停多久都不会产生误差
+     */
+    private void updateRenderState() {
+        renderMetrics.setConditions(screenOn, keyguardLocked, deviceIdle, windowVisible);
+        boolean suspend = !screenOn || keyguardLocked || deviceIdle || !windowVisible;
+        if (suspend == renderSuspended) {
+            return;
+        }
+        renderSuspended = suspend;
+        renderMetrics.transition(suspend, SystemClock.elapsedRealtime());
+
+        if (suspend) {
+            handler.removeCallbacks(updateRunnable);
+            if (islandView != null) {
+                islandView.finishFlip();
+            }
+            Log.d(TAG, "⏸️ 悬浮球渲染暂停: screenOn=" + screenOn + ", keyguard=" + keyguardLocked + ", idle="
+                    + deviceIdle + ", visible=" + windowVisible);
+        } else {
+            Log.d(TAG, "▶️ 悬浮球渲染恢复");
+            if (tickWanted) {
+                clock.invalidate();
+                snapNextTick = true;
+                handler.removeCallbacks(updateRunnable);
+                handler.post(updateRunnable);
+            }
+        }
+    }
+
+    public static RenderMetrics.Snapshot getRenderMetrics() {
+        return renderMetrics.snapshot(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * 悬浮球渲染统计: 活跃 / 暂停时长, 暂停次数, tick 次数
+     * 时长只在计时循环需要运行 (专注中) 时累计, 没有专注时既不算活跃也不算暂停
+     * 进程内累计 (服务重启不清零); 主线程写入, 插件线程读取
+     */
+    public static final class RenderMetrics {
+        private boolean running = false;
+        private boolean suspended = false;
+        private boolean ticking = false;
+        private long since = 0;
+        private long activeMs = 0;
+        private long suspendedMs = 0;
+        private int suspendCount = 0;
+        private long ticks = 0;
+        private boolean screenOn = true;
+        private boolean keyguardLocked = false;
+        private boolean deviceIdle = false;
+        private boolean windowVisible = true;
+
+        public static final class Snapshot {
+            public final boolean running;
+            public final boolean suspended;
+            public final long activeMs;
+            public final long suspendedMs;
+            public final int suspendCount;
+            public final long ticks;
+            public final boolean screenOn;
+            public final boolean keyguardLocked;
+            public final boolean deviceIdle;
+            public final boolean windowVisible;
+
+            Snapshot(RenderMetrics m, long activeMs, long suspendedMs) {
+                this.running = m.running;
+                this.suspended = m.suspended;
+                this.activeMs = activeMs;
+                this.suspendedMs = suspendedMs;
+                this.suspendCount = m.suspendCount;
+                this.ticks = m.ticks;
+                this.screenOn = m.screenOn;
+                this.keyguardLocked = m.keyguardLocked;
+                this.deviceIdle = m.deviceIdle;
+                this.windowVisible = m.windowVisible;
+            }
+        }
+
+        synchronized void begin(long now) {
+            running = true;
+            suspended = false;
+            since = now;
+        }
+
+        synchronized void end(long now) {
+            if (!running) {
+                return;
+            }
+            accumulate(now);
+            running = false;
+            suspended = false;
+            ticking = false;
+        }
+
+        synchronized void setTicking(boolean value, long now) {
+            if (!running || value == ticking) {
+                return;
+            }
+            accumulate(now);
+            ticking = value;
+        }
+
+        synchronized void transition(boolean suspend, long now) {
+            if (!running || suspend == suspended) {
+                return;
+            }
+            accumulate(now);
+            suspended = suspend;
+            if (suspend) {
+                suspendCount++;
+            }
+        }
+
+        synchronized void setConditions(boolean screenOn, boolean keyguardLocked, boolean deviceIdle,
+                boolean windowVisible) {
+            this.screenOn = screenOn;
+            this.keyguardLocked = keyguardLocked;
+            this.deviceIdle = deviceIdle;
+            this.windowVisible = windowVisible;
+        }
+
+        synchronized void tick() {
+            ticks++;
+        }
+
+        synchronized Snapshot snapshot(long now) {
+            // 当前这一段尚未结算, 按快照时刻计入
+            long open = running && ticking ? Math.max(0, now - since) : 0;
+            return new Snapshot(this, activeMs + (running && !suspended ? open : 0),
+                    suspendedMs + (running && suspended ? open : 0));
+        }
+
+        private void accumulate(long now) {
+            long delta = ticking ? Math.max(0, now - since) : 0;
+            if (suspended) {
+                suspendedMs += delta;
+            } else {
+                activeMs += delta;
+            }
+            since = now;
+        }
+    }
+
     private void registerAppChangeReceiver() {
         appChangeReceiver = new BroadcastReceiver() {
             @Override
@@ -297,7 +497,7 @@ public class FloatingWindowService extends Service {
                 Log.i(TAG, "Package: " + packageName + ", Label: " + appLabel + ", isFocusing: " + isFocusing);
 
                 if (packageName != null && !isFocusing) {
-                    updateAppIconInternal(packageName, appLabel);
+                    updateAppIconInternal(packageName, appLabel, null);
                 } else {
                     Log.w(TAG, "Skipped update: packageName=" + packageName + ", isFocusing=" + isFocusing);
                 }
@@ -314,7 +514,7 @@ public class FloatingWindowService extends Service {
         Log.d(TAG, "Registered app change receiver");
     }
 
-    private void updateAppIconInternal(String packageName, String appLabel) {
+    private void updateAppIconInternal(String packageName, String appLabel, Drawable preloadedIcon) {
         if (packageName.equals(currentAppPackage)) {
             return; // No change
         }
@@ -328,93 +528,45 @@ public class FloatingWindowService extends Service {
 
         currentAppPackage = packageName;
 
-        try {
-            PackageManager pm = getPackageManager();
-            Drawable appIcon = pm.getApplicationIcon(packageName);
-            iconView.setImageDrawable(appIcon);
+        // 检测线程已经从 IslandIconCache 取好图标, 这里只兜底 (未命中时才会查询 PackageManager)
+        Drawable appIcon = preloadedIcon != null ? preloadedIcon
+                : IslandIconCache.getInstance(this).get(packageName);
+        if (appIcon != null) {
+            islandView.setIcon(appIcon);
 
             // Ensure icon is visible and others hidden
-            iconView.setVisibility(View.VISIBLE);
-            if (emojiView != null)
-                emojiView.setVisibility(View.GONE);
-            if (timeView != null)
-                timeView.setVisibility(View.GONE);
+            islandView.show(IslandView.STATE_ICON);
 
             Log.i(TAG, "✅ Updated icon for:: " + packageName);
-        } catch (PackageManager.NameNotFoundException e) {
+        } else {
             Log.w(TAG, "❌ Could not find app icon for: " + packageName);
             // Fallback to default
             try {
-                iconView.setImageDrawable(getPackageManager().getApplicationIcon(getPackageName()));
-                iconView.setVisibility(View.VISIBLE);
+                islandView.setIcon(getPackageManager().getApplicationIcon(getPackageName()));
+                islandView.show(IslandView.STATE_ICON);
             } catch (Exception ex) {
-                iconView.setImageResource(android.R.drawable.sym_def_app_icon);
+                islandView.setIconResource(android.R.drawable.sym_def_app_icon);
             }
         }
     }
 
     private void initView() {
-        // 容器
-        containerView = new android.widget.FrameLayout(this);
-        android.graphics.drawable.GradientDrawable bg = new android.graphics.drawable.GradientDrawable();
-        bg.setShape(android.graphics.drawable.GradientDrawable.OVAL);
-        bg.setColor(Color.WHITE);
-        // Add subtle shadow/stroke
-        bg.setStroke(1, Color.parseColor("#E5E7EB")); // Stone-200
-        containerView.setBackground(bg);
-
-        // 只有API 21+支持Elevation，不过现在基本都支持
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            containerView.setElevation(5f); // Reduced elevation for lighter shadow
-        }
-
-        // App Icon (默认显示)
-        iconView = new android.widget.ImageView(this);
+        // 单个自绘视图: 背景 / 图标 / Emoji / 计时都在 IslandView 中绘制
+        islandView = new IslandView(this);
         try {
-            iconView.setImageDrawable(getPackageManager().getApplicationIcon(getPackageName()));
+            islandView.setIcon(getPackageManager().getApplicationIcon(getPackageName()));
         } catch (Exception e) {
             // fallback
-            iconView.setImageResource(android.R.drawable.sym_def_app_icon);
+            islandView.setIconResource(android.R.drawable.sym_def_app_icon);
             e.printStackTrace();
         }
-        android.widget.FrameLayout.LayoutParams iconParams = new android.widget.FrameLayout.LayoutParams(
-                android.view.ViewGroup.LayoutParams.MATCH_PARENT,
-                android.view.ViewGroup.LayoutParams.MATCH_PARENT);
-        int padding = dpToPx(8); // Reduced padding to make icon larger
-        iconParams.setMargins(padding, padding, padding, padding);
-        containerView.addView(iconView, iconParams);
-
-        // Emoji Text (专注时显示)
-        emojiView = new TextView(this);
-        emojiView.setTextColor(Color.parseColor("#374151")); // Gray-700
-        emojiView.setGravity(Gravity.CENTER);
-        // Use DP for Emoji size too
-        emojiView.setTextSize(TypedValue.COMPLEX_UNIT_DIP, 17);
-        emojiView.setVisibility(View.GONE);
-        containerView.addView(emojiView, new android.widget.FrameLayout.LayoutParams(
-                android.view.ViewGroup.LayoutParams.MATCH_PARENT,
-                android.view.ViewGroup.LayoutParams.MATCH_PARENT));
-
-        // Time View
-        timeView = new TextView(this);
-        timeView.setTextColor(Color.parseColor("#4B5563")); // Gray-600
-        timeView.setGravity(Gravity.CENTER);
-        // Use DP for Time size
-        timeView.setTextSize(TypedValue.COMPLEX_UNIT_DIP, 11);
-        // Use SERIF to approximate "Song" style (Huawen Zhongsong)
-        // Add BOLD to make it legible
-        timeView.setTypeface(
-                android.graphics.Typeface.create(android.graphics.Typeface.SERIF, android.graphics.Typeface.BOLD));
-        timeView.setVisibility(View.GONE);
-        containerView.addView(timeView, new android.widget.FrameLayout.LayoutParams(
-                android.view.ViewGroup.LayoutParams.MATCH_PARENT,
-                android.view.ViewGroup.LayoutParams.MATCH_PARENT));
-
-        // App Name View removed
-        // appNameView = new TextView(this);
-        // ...
-
-        floatingView = containerView;
+
+        islandView.setWindowVisibilityListener(visible -> {
+            windowVisible = visible;
+            updateRenderState();
+        });
+
+        floatingView = islandView;
 
         // Layout Params
         int layoutType;
@@ -424,18 +576,20 @@ public class FloatingWindowService extends Service {
             layoutType = WindowManager.LayoutParams.TYPE_PHONE;
         }
 
-        int sizePx = dpToPx(45); // Reduced from 50dp to 45dp
+        int sizePx = dpToPx(IslandView.SIZE_DP); // Reduced from 50dp to 45dp
         params = new WindowManager.LayoutParams(
                 sizePx, sizePx, // 稍微加大一点
                 layoutType,
                 WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE,
                 PixelFormat.TRANSLUCENT);
 
-        params.gravity = Gravity.TOP | Gravity.START;
+        // 使用 LEFT 而不是 START: RTL 布局下 START 的 x 从右边缘计算, 与拖动 / 吸边的坐标计算不一致
+        params.gravity = Gravity.TOP | Gravity.LEFT;
         params.x = 100;
         params.y = 200;
 
         setupTouchListener();
+        restorePosition();
 
         try {
             windowManager.addView(floatingView, params);
@@ -446,7 +600,7 @@ public class FloatingWindowService extends Service {
     }
 
     private void updateContent(String icon, boolean focusing, long start) {
-        if (containerView == null)
+        if (islandView == null)
             return;
 
         this.isFocusing = focusing;
@@ -454,74 +608,68 @@ public class FloatingWindowService extends Service {
 
         if (focusing) {
             // Start Focusing Mode
-            iconView.setVisibility(View.GONE);
-
             if (icon != null && !icon.isEmpty()) {
-                emojiView.setText(icon);
+                islandView.setEmoji(icon);
             }
             // Reset to Time initially
-            emojiView.setVisibility(View.GONE);
-            iconView.setVisibility(View.GONE);
-            timeView.setVisibility(View.VISIBLE);
-            timeView.setScaleY(1f); // Ensure scale is reset
+            islandView.show(IslandView.STATE_TIME);
             currentDisplayState = 0;
+            clock.invalidate();
 
-            handler.removeCallbacks(updateRunnable);
-            handler.post(updateRunnable);
+            startTicking();
         } else {
-            // Stop Focusing Mode -> Show App Icon
-            handler.removeCallbacks(updateRunnable);
-
-            // Clean up animations
-            emojiView.animate().cancel();
-            timeView.animate().cancel();
-            iconView.animate().cancel();
-
-            emojiView.setVisibility(View.GONE);
-            timeView.setVisibility(View.GONE);
-
-            iconView.setScaleY(1f);
-            iconView.setVisibility(View.VISIBLE);
+            // Stop Focusing Mode -> Show App Icon (show 会取消进行中的翻转)
+            stopTicking();
+            islandView.show(IslandView.STATE_ICON);
         }
     }
 
+    /**
+     * 拖动每帧最多更新一次窗口位置, 松手后吸边; 最终位置异步保存
+     */
     private void setupTouchListener() {
-        floatingView.setOnTouchListener(new View.OnTouchListener() {
-            private int initialX;
-            private int initialY;
-            private float initialTouchX;
-            private float initialTouchY;
+        dragController = new IslandDragController(windowManager, floatingView, params, dpToPx(4),
+                new IslandDragController.Callback() {
+                    @Override
+                    public void onTap() {
+                        // 点击事件
+                        openApp();
+                    }
+
+                    @Override
+                    public void onSettled(int x, int y) {
+                        savePosition(x, y);
+                    }
+                });
+        floatingView.setOnTouchListener(dragController);
+    }
 
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        initialX = params.x;
-                        initialY = params.y;
-                        initialTouchX = event.getRawX();
-                        initialTouchY = event.getRawY();
-                        isMoving = false;
-                        return true;
-                    case MotionEvent.ACTION_MOVE:
-                        int dx = (int) (event.getRawX() - initialTouchX);
-                        int dy = (int) (event.getRawY() - initialTouchY);
-                        if (Math.abs(dx) > 10 || Math.abs(dy) > 10) {
-                            isMoving = true;
-                        }
-                        params.x = initialX + dx;
-                        params.y = initialY + dy;
-                        windowManager.updateViewLayout(floatingView, params);
-                        return true;
-                    case MotionEvent.ACTION_UP:
-                        if (!isMoving) {
-                            // 点击事件
-                            openApp();
-                        }
-                        return true;
-                }
-                return false;
+    /**
+     * 在后台线程读取上次的位置 (首次读取 SharedPreferences 需要磁盘 I/O, 不阻塞服务启动)
+     */
+    private void restorePosition() {
+        new Thread(() -> {
+            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            if (!prefs.contains(KEY_POSITION_X)) {
+                return;
             }
-        });
+            int x = prefs.getInt(KEY_POSITION_X, 100);
+            int y = prefs.getInt(KEY_POSITION_Y, 200);
+            handler.post(() -> {
+                if (dragController != null && floatingView != null) {
+                    dragController.restore(x, y);
+                    Log.d(TAG, "📍 恢复悬浮球位置: " + x + ", " + y);
+                }
+            });
+        }, "LumosIslandRestore").start();
+    }
+
+    private void savePosition(int x, int y) {
+        // apply: 异步写入磁盘
+        getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putInt(KEY_POSITION_X, x)
+                .putInt(KEY_POSITION_Y, y)
+                .apply();
     }
 
     private void openApp() {
@@ -529,7 +677,8 @@ public class FloatingWindowService extends Service {
             // 如果当前是专注状态,通知React Native结束计时
             if (isFocusing) {
                 Log.d(TAG, "🎯 悬浮球点击: 专注状态 -> 触发结束计时");
-                FocusNotificationPlugin.triggerStopFocusFromFloating();
+                AppEventBus.publish(AppEvents.FOCUS_STOP_REQUEST,
+                        new AppEvents.FocusRequest(null, System.currentTimeMillis()));
                 return;
             }
 
@@ -538,8 +687,10 @@ public class FloatingWindowService extends Service {
                 Log.d(TAG, "🎯 悬浮球点击: 提醒模式 -> 开始计时 " + promptAppLabel);
 
                 // 1. 触发React Native开始计时
-                FocusNotificationPlugin.triggerStartFocusFromPrompt(promptPackageName, promptAppLabel,
-                        promptRealAppName, promptActivityId);
+                AppEventBus.publish(AppEvents.FOCUS_START_REQUEST, new AppEvents.FocusRequest(
+                        new AppEvents.RulePrompt(promptPackageName, promptAppLabel, promptRealAppName,
+                                promptActivityId),
+                        System.currentTimeMillis()));
 
                 // 2. 隐藏提醒,显示"开始计时"
                 hidePrompt();
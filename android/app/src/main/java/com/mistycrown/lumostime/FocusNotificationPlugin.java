@@ -13,6 +13,7 @@ import android.content.Intent;
 import android.os.Build;
 import android.util.Log;
 
+import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
@@ -27,12 +28,23 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 public class FocusNotificationPlugin extends Plugin {
 
     private static final String TAG = "FocusNotification";
+    // 插件事件 (JS 通过 FocusNotification.addListener 订阅)
+    static final String EVENT_STOP_FOCUS = "stopFocusFromFloating";
+    static final String EVENT_START_FOCUS = "startFocusFromPrompt";
+    // 超过该时长的点击不再执行 (例如数小时后才打开应用), 与 JS 端的 FOCUS_REQUEST_MAX_AGE_MS 一致
+    static final long REQUEST_MAX_AGE_MS = 60_000;
     private static FocusNotificationPlugin instance = null;
+    private AppEventBus.Subscription<AppEvents.FocusRequest> stopSubscription;
+    private AppEventBus.Subscription<AppEvents.FocusRequest> startSubscription;
 
     @Override
     public void load() {
         super.load();
         instance = this;
+        stopSubscription = AppEventBus.subscribe(AppEvents.FOCUS_STOP_REQUEST, AppEventBus.BACKGROUND, 8,
+                this::triggerStopFocusFromFloating);
+        startSubscription = AppEventBus.subscribe(AppEvents.FOCUS_START_REQUEST, AppEventBus.BACKGROUND, 8,
+                this::triggerStartFocusFromPrompt);
         Log.d(TAG, "✅ FocusNotificationPlugin loaded, instance saved");
     }
 
@@ -40,38 +52,52 @@ public class FocusNotificationPlugin extends Plugin {
     protected void handleOnDestroy() {
         super.handleOnDestroy();
         instance = null;
+        if (stopSubscription != null) {
+            stopSubscription.unsubscribe();
+            stopSubscription = null;
+        }
+        if (startSubscription != null) {
+            startSubscription.unsubscribe();
+            startSubscription = null;
+        }
         Log.d(TAG, "🔴 FocusNotificationPlugin destroyed, instance cleared");
     }
 
     /**
-     * 静态方法: 从悬浮球触发结束计时事件
-     * 供FloatingWindowService调用
+     * 从悬浮球触发结束计时事件 (后台线程, WebView 桥较慢时不阻塞悬浮窗)
      */
-    public static void triggerStopFocusFromFloating() {
-        if (instance != null && instance.getBridge() != null) {
-            Log.d(TAG, "📤 触发停止计时事件到React Native");
-            instance.getBridge().triggerWindowJSEvent("stopFocusFromFloating", "{}");
-        } else {
-            Log.w(TAG, "⚠️ 无法触发事件: Plugin instance或Bridge为null");
-        }
+    private void triggerStopFocusFromFloating(AppEvents.FocusRequest request) {
+        JSObject data = new JSObject();
+        data.put("requestedAt", request.requestedAt);
+        deliver(EVENT_STOP_FOCUS, request, data);
     }
 
     /**
-     * 静态方法: 从悬浮球触发开始计时事件(提醒模式)
+     * 从悬浮球触发开始计时事件(提醒模式)
      */
-    public static void triggerStartFocusFromPrompt(String packageName, String appLabel, String realAppName,
-            String activityId) {
-        if (instance != null && instance.getBridge() != null) {
-            String jsonData = String.format(
-                    "{\"packageName\":\"%s\",\"appLabel\":\"%s\",\"realAppName\":\"%s\",\"activityId\":\"%s\"}",
-                    packageName.replace("\"", "\\\""),
-                    appLabel.replace("\"", "\\\""),
-                    realAppName.replace("\"", "\\\""),
-                    activityId.replace("\"", "\\\""));
-            instance.getBridge().triggerWindowJSEvent("startFocusFromPrompt", jsonData);
-        } else {
-            Log.w(TAG, "⚠️ 无法触发事件: Plugin instance或Bridge为null");
+    private void triggerStartFocusFromPrompt(AppEvents.FocusRequest request) {
+        AppEvents.RulePrompt prompt = request.prompt;
+        JSObject data = new JSObject();
+        data.put("packageName", prompt.packageName);
+        data.put("appLabel", prompt.displayName);
+        data.put("realAppName", prompt.realAppName);
+        data.put("activityId", prompt.activityId);
+        data.put("requestedAt", request.requestedAt);
+        deliver(EVENT_START_FOCUS, request, data);
+    }
+
+    /**
+     * 投递到 JS: 页面已有监听时直接发送; 页面尚未加载 / 尚未订阅时由 Capacitor 保留,
+     * 在 JS 调用 addListener 时补发 (只补发一次)。过期的请求直接丢弃, JS 端收到时也会再检查一次
+     */
+    private void deliver(String eventName, AppEvents.FocusRequest request, JSObject data) {
+        long age = System.currentTimeMillis() - request.requestedAt;
+        if (age > REQUEST_MAX_AGE_MS) {
+            Log.w(TAG, "⌛ 丢弃过期的悬浮球请求: " + eventName + " (" + age / 1000 + "s)");
+            return;
         }
+        Log.d(TAG, "📤 触发事件到 JS: " + eventName);
+        notifyListeners(eventName, data, true);
     }
 
     // --- 悬浮窗相关方法 ---
@@ -182,4 +208,24 @@ public class FocusNotificationPlugin extends Plugin {
         Log.d(TAG, "✅ 停止悬浮窗服务");
         call.resolve();
     }
+
+    /**
+     * 悬浮球渲染统计: 活跃 / 暂停时长与当前的暂停条件
+     */
+    @PluginMethod
+    public void getIslandRenderMetrics(PluginCall call) {
+        FloatingWindowService.RenderMetrics.Snapshot metrics = FloatingWindowService.getRenderMetrics();
+        JSObject ret = new JSObject();
+        ret.put("running", metrics.running);
+        ret.put("suspended", metrics.suspended);
+        ret.put("activeMs", metrics.activeMs);
+        ret.put("suspendedMs", metrics.suspendedMs);
+        ret.put("suspendCount", metrics.suspendCount);
+        ret.put("ticks", metrics.ticks);
+        ret.put("screenOn", metrics.screenOn);
+        ret.put("keyguardLocked", metrics.keyguardLocked);
+        ret.put("deviceIdle", metrics.deviceIdle);
+        ret.put("windowVisible", metrics.windowVisible);
+        call.resolve(ret);
+    }
 }
@@ -0,0 +1,216 @@
+/**
+ * @file ForegroundAppDetector.java
+ * @input UsageStatsManager event log
+ * @output Current foreground package + per-poll scan statistics
+ * @pos Native Logic Layer
+ * @description Cursor-based foreground app detection. Each poll reads only the UsageEvents written since the last
+ * processed event and folds them into a remembered foreground state, so a stable foreground app costs an almost
+ * empty query and the queryUsageStats fallback only runs when nothing is known yet.
+ */
+package com.mistycrown.lumostime;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStats;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.util.Log;
+import java.util.List;
+
+/**
+ * 前台应用检测 (增量游标)
+ * 线程安全: poll() 同步执行, AppMonitorService 的轮询与插件的 getRunningApp 共用同一份状态
+ */
+public class ForegroundAppDetector {
+    private static final String TAG = "ForegroundAppDetector";
+    // 首次检测时回看的时间窗口
+    private static final long BOOTSTRAP_LOOKBACK_MS = 60_000;
+    // 游标落后超过该值时 (例如监测服务停了很久) 丢弃旧状态重新初始化
+    private static final long MAX_CATCHUP_MS = 60 * 60_000;
+    // 事件可能比时间戳稍晚写入, 没有新事件时游标最多推进到 now - 该值
+    private static final long LATE_EVENT_GRACE_MS = 2_000;
+    // 兜底 queryUsageStats 的时间窗口
+    private static final long FALLBACK_WINDOW_MS = 10_000;
+
+    private static volatile ForegroundAppDetector instance = null;
+
+    /**
+     * 统计信息快照
+     */
+    public static final class Stats {
+        public long polls;
+        public int lastEventsScanned;
+        public int maxEventsScanned;
+        public long totalEventsScanned;
+        public long bootstrapQueries;
+        public long fallbackQueries;
+        public long cursorMillis;
+        public String foregroundPackage;
+    }
+
+    private final UsageStatsManager usageStatsManager;
+    private final UsageEvents.Event event = new UsageEvents.Event();
+
+    // 已处理的最后一个事件的时间戳, 0 表示尚未初始化
+    private long cursorMillis = 0;
+    // 时间戳恰好等于 cursorMillis 且已处理过的事件数 (queryEvents 的起点是闭区间, 下次查询需要跳过)
+    private int eventsAtCursor = 0;
+    private String foregroundPackage = null;
+    private long foregroundSince = 0;
+
+    private long polls = 0;
+    private int lastEventsScanned = 0;
+    private int maxEventsScanned = 0;
+    private long totalEventsScanned = 0;
+    private long bootstrapQueries = 0;
+    private long fallbackQueries = 0;
+
+    public static ForegroundAppDetector getInstance(Context context) {
+        ForegroundAppDetector detector = instance;
+        if (detector == null) {
+            synchronized (ForegroundAppDetector.class) {
+                detector = instance;
+                if (detector == null) {
+                    detector = new ForegroundAppDetector(context.getApplicationContext());
+                    instance = detector;
+                }
+            }
+        }
+        return detector;
+    }
+
+    private ForegroundAppDetector(Context context) {
+        usageStatsManager = (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
+    }
+
+    /**
+     * 拉取上次以来的新事件并返回当前前台应用, 无法确定时返回 null
+     */
+    public synchronized String poll() {
+        long now = System.currentTimeMillis();
+        polls++;
+
+        // 首次调用, 游标过旧, 或系统时间被调回
+        boolean bootstrap = cursorMillis == 0 || now - cursorMillis > MAX_CATCHUP_MS || cursorMillis > now;
+        if (bootstrap) {
+            bootstrapQueries++;
+            cursorMillis = now - BOOTSTRAP_LOOKBACK_MS;
+            eventsAtCursor = 0;
+            foregroundPackage = null;
+            foregroundSince = 0;
+        }
+
+        int scanned = scanEvents(now);
+        lastEventsScanned = scanned;
+        totalEventsScanned += scanned;
+        if (scanned > maxEventsScanned) {
+            maxEventsScanned = scanned;
+        }
+
+        if (foregroundPackage == null) {
+            // 事件日志中没有任何前台事件 (刚开机/长时间停留在同一应用), 只在此时走兜底查询
+            fallbackQueries++;
+            String recent = queryMostRecentlyUsed(now);
+            if (recent != null) {
+                foregroundPackage = recent;
+                foregroundSince = now;
+                Log.d(TAG, "🔎 Fallback resolved foreground: " + recent);
+            }
+        }
+        return foregroundPackage;
+    }
+
+    /**
+     * 最近一次 poll 确定的前台应用, 不触发查询
+     */
+    public synchronized String getForegroundPackage() {
+        return foregroundPackage;
+    }
+
+    public synchronized long getForegroundSince() {
+        return foregroundSince;
+    }
+
+    public synchronized Stats getStats() {
+        Stats stats = new Stats();
+        stats.polls = polls;
+        stats.lastEventsScanned = lastEventsScanned;
+        stats.maxEventsScanned = maxEventsScanned;
+        stats.totalEventsScanned = totalEventsScanned;
+        stats.bootstrapQueries = bootstrapQueries;
+        stats.fallbackQueries = fallbackQueries;
+        stats.cursorMillis = cursorMillis;
+        stats.foregroundPackage = foregroundPackage;
+        return stats;
+    }
+
+    private int scanEvents(long now) {
+        if (usageStatsManager == null) {
+            return 0;
+        }
+        UsageEvents events = usageStatsManager.queryEvents(cursorMillis, now);
+        if (events == null) {
+            Log.e(TAG, "queryEvents returned null - permission not granted?");
+            return 0;
+        }
+
+        int scanned = 0;
+        int skip = eventsAtCursor;
+        long cursor = cursorMillis;
+        int atCursor = eventsAtCursor;
+        while (events.hasNextEvent()) {
+            events.getNextEvent(event);
+            scanned++;
+            long timestamp = event.getTimeStamp();
+            if (timestamp < cursor) {
+                continue;
+            }
+            if (timestamp == cursorMillis && skip > 0) {
+                // 上次已处理过的边界事件
+                skip--;
+                continue;
+            }
+            if (timestamp == cursor) {
+                atCursor++;
+            } else {
+                cursor = timestamp;
+                atCursor = 1;
+            }
+            // MOVE_TO_FOREGROUND 与 Q+ 的 ACTIVITY_RESUMED 取值相同
+            if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND) {
+                String packageName = event.getPackageName();
+                if (packageName != null && !packageName.equals(foregroundPackage)) {
+                    foregroundPackage = packageName;
+                    foregroundSince = timestamp;
+                }
+            }
+        }
+
+        // 没有新事件时推进游标, 让下一次查询的时间窗口保持很小
+        long floor = now - LATE_EVENT_GRACE_MS;
+        if (cursor < floor) {
+            cursor = floor;
+            atCursor = 0;
+        }
+        cursorMillis = cursor;
+        eventsAtCursor = atCursor;
+        return scanned;
+    }
+
+    private String queryMostRecentlyUsed(long now) {
+        if (usageStatsManager == null) {
+            return null;
+        }
+        List<UsageStats> stats = usageStatsManager.queryUsageStats(
+                UsageStatsManager.INTERVAL_BEST, now - FALLBACK_WINDOW_MS, now);
+        if (stats == null || stats.isEmpty()) {
+            return null;
+        }
+        UsageStats mostRecent = null;
+        for (UsageStats usageStats : stats) {
+            if (mostRecent == null || usageStats.getLastTimeUsed() > mostRecent.getLastTimeUsed()) {
+                mostRecent = usageStats;
+            }
+        }
+        return mostRecent != null ? mostRecent.getPackageName() : null;
+    }
+}
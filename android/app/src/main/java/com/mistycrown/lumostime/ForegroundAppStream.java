@@ -0,0 +1,141 @@
+/**
+ * @file ForegroundAppStream.java
+ * @input AppEvents.FOREGROUND_APP (stable switches on DetectionThread)
+ * @output Throttled, sequence-numbered foreground changes for the "foregroundAppChanged" JS listener
+ * @pos Native Logic Layer
+ * @description Push side of the foreground-app API. Forwards only real package changes, at most one per minimum
+ * interval with trailing delivery of the latest app, so the web layer can drop getRunningApp polling and the bridge
+ * carries one message per change instead of one per poll.
+ */
+package com.mistycrown.lumostime;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 前台应用推送流 (节流 + 序号)
+ * offer() 与回调都在构造时传入的 Handler 线程 (DetectionThread) 上执行
+ */
+public class ForegroundAppStream {
+    public static final long DEFAULT_MIN_INTERVAL_MS = 500;
+
+    public interface Sink {
+        /**
+         * @param sequence 单调递增的序号, 从 1 开始
+         * @param skipped 节流期间被后续切换覆盖、没有推送的切换次数
+         */
+        void onForegroundChanged(AppEvents.ForegroundApp app, long sequence, int skipped);
+    }
+
+    /**
+     * 一次推送: 应用与其序号作为一个整体发布, 供 getRunningApp 与事件对齐
+     */
+    public static final class Emission {
+        public final AppEvents.ForegroundApp app;
+        public final long sequence;
+
+        Emission(AppEvents.ForegroundApp app, long sequence) {
+            this.app = app;
+            this.sequence = sequence;
+        }
+    }
+
+    private final Handler handler;
+    private final Sink sink;
+    private volatile long minIntervalMs = DEFAULT_MIN_INTERVAL_MS;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong emitted = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    // 最近一次推送, 尚未推送时为 null
+    private volatile Emission lastEmission = null;
+
+    // 最近一次推送的应用与时间 (uptimeMillis)
+    private String emittedPackage = null;
+    private long lastEmitAt = 0;
+    // 节流期间等待推送的最新应用
+    private AppEvents.ForegroundApp pending = null;
+    private int pendingSkipped = 0;
+
+    private final Runnable flushRunnable = this::flush;
+
+    public ForegroundAppStream(Handler handler, Sink sink) {
+        this.handler = handler;
+        this.sink = sink;
+    }
+
+    public void offer(AppEvents.ForegroundApp app) {
+        if (pending != null) {
+            // 上一个等待中的切换被覆盖
+            pendingSkipped++;
+            throttled.incrementAndGet();
+            pending = null;
+        }
+        if (app.packageName.equals(emittedPackage)) {
+            // 节流期间离开又回来, 对 JS 来说没有变化
+            handler.removeCallbacks(flushRunnable);
+            pendingSkipped = 0;
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        long nextAllowedAt = lastEmitAt + minIntervalMs;
+        if (emittedPackage == null || now >= nextAllowedAt) {
+            emit(app, now);
+            return;
+        }
+        pending = app;
+        handler.removeCallbacks(flushRunnable);
+        handler.postAtTime(flushRunnable, nextAllowedAt);
+    }
+
+    public void setMinIntervalMs(long intervalMs) {
+        minIntervalMs = Math.max(0, intervalMs);
+    }
+
+    public long getMinIntervalMs() {
+        return minIntervalMs;
+    }
+
+    /**
+     * 最近一次推送的序号, 尚未推送时为 0
+     */
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * 最近一次推送的应用及其序号 (同一个快照), 尚未推送时返回 null
+     */
+    public Emission getLastEmission() {
+        return lastEmission;
+    }
+
+    public long getEmitted() {
+        return emitted.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    private void flush() {
+        AppEvents.ForegroundApp app = pending;
+        if (app == null) {
+            return;
+        }
+        pending = null;
+        emit(app, SystemClock.uptimeMillis());
+    }
+
+    private void emit(AppEvents.ForegroundApp app, long now) {
+        int skipped = pendingSkipped;
+        pendingSkipped = 0;
+        emittedPackage = app.packageName;
+        lastEmitAt = now;
+        emitted.incrementAndGet();
+        long seq = sequence.incrementAndGet();
+        lastEmission = new Emission(app, seq);
+        sink.onForegroundChanged(app, seq, skipped);
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * @file InstalledAppInventory.java
+ * @input PackageManager.getChangedPackages, Package Broadcasts
+ * @output Incremental Installed-App Deltas
+ * @pos Native Cache
+ * @description Native snapshot of the listed (user-visible) installed apps. After the initial scan it is only
+ * reconciled for packages reported by PackageManager change sequence numbers or package broadcasts, so delta
+ * queries cost O(changes) instead of O(installed apps).
+ */
+package com.mistycrown.lumostime;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已安装应用清单
+ * 每次修改都会递增 version, 客户端用 token ("<session>:<version>") 获取之后的增量
+ */
+public class InstalledAppInventory implements PackageChangeMonitor.Listener {
+    private static final String TAG = "InstalledAppInventory";
+    // 最多保留的卸载记录数, 超出后更早的 token 需要全量刷新
+    private static final int MAX_TOMBSTONES = 512;
+
+    private static InstalledAppInventory instance = null;
+
+    private final Context context;
+    // 进程级会话标识, 进程重启后旧 token 失效
+    private final String sessionId = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<String, AppEntry> apps = new HashMap<>();
+    // packageName -> 卸载时的 version
+    private final Map<String, Long> removed = new HashMap<>();
+    // 广播通知但尚未核对的包名 (广播线程写入, 不持有 this 锁)
+    private final Set<String> dirtyPackages = ConcurrentHashMap.newKeySet();
+
+    private boolean initialized = false;
+    private long version = 0;
+    // 早于此版本的 token 无法计算增量
+    private long oldestDeltaVersion = 0;
+    private int changeSequence = 0;
+
+    public static final class AppEntry {
+        public final String packageName;
+        public final String label;
+        public final PackageInfo info;
+        final long addedVersion;
+        final long changedVersion;
+
+        AppEntry(String packageName, String label, PackageInfo info, long addedVersion, long changedVersion) {
+            this.packageName = packageName;
+            this.label = label;
+            this.info = info;
+            this.addedVersion = addedVersion;
+            this.changedVersion = changedVersion;
+        }
+    }
+
+    public static final class Delta {
+        public final String token;
+        // true 表示 sinceToken 无效, added 为完整清单, 客户端应丢弃旧数据
+        public final boolean reset;
+        public final List<AppEntry> added = new ArrayList<>();
+        public final List<AppEntry> updated = new ArrayList<>();
+        public final List<String> removed = new ArrayList<>();
+
+        Delta(String token, boolean reset) {
+            this.token = token;
+            this.reset = reset;
+        }
+    }
+
+    public static synchronized InstalledAppInventory getInstance(Context context) {
+        if (instance == null) {
+            instance = new InstalledAppInventory(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private InstalledAppInventory(Context context) {
+        this.context = context;
+        PackageChangeMonitor.getInstance(context).addListener(this);
+    }
+
+    @Override
+    public void onPackageChanged(String packageName, String action, boolean replacing) {
+        // 仅做标记, 实际核对在下次查询时于后台线程进行
+        dirtyPackages.add(packageName);
+        if (Intent.ACTION_PACKAGE_REMOVED.equals(action) && !replacing) {
+            AppIconCache.getInstance(context).invalidate(packageName);
+        }
+    }
+
+    /**
+     * 计算自 sinceToken 之后的增量 (需在后台线程调用)
+     */
+    public synchronized Delta getDelta(String sinceToken) {
+        refresh();
+
+        long since = parseToken(sinceToken);
+        if (since < 0 || since < oldestDeltaVersion || since > version) {
+            Delta full = new Delta(currentToken(), true);
+            full.added.addAll(apps.values());
+            return full;
+        }
+
+        Delta delta = new Delta(currentToken(), false);
+        for (AppEntry entry : apps.values()) {
+            if (entry.addedVersion > since) {
+                delta.added.add(entry);
+            } else if (entry.changedVersion > since) {
+                delta.updated.add(entry);
+            }
+        }
+        for (Map.Entry<String, Long> entry : removed.entrySet()) {
+            if (entry.getValue() > since && !apps.containsKey(entry.getKey())) {
+                delta.removed.add(entry.getKey());
+            }
+        }
+        return delta;
+    }
+
+    public synchronized String currentToken() {
+        return sessionId + ":" + version;
+    }
+
+    private long parseToken(String token) {
+        if (token == null) {
+            return -1;
+        }
+        int sep = token.lastIndexOf(':');
+        if (sep <= 0 || !token.substring(0, sep).equals(sessionId)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(sep + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void refresh() {
+        PackageManager pm = context.getPackageManager();
+        if (!initialized) {
+            fullScan(pm);
+            return;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            ChangedPackages changed = pm.getChangedPackages(changeSequence);
+            if (changed != null) {
+                dirtyPackages.addAll(changed.getPackageNames());
+                changeSequence = changed.getSequenceNumber();
+            }
+        }
+
+        if (dirtyPackages.isEmpty()) {
+            return;
+        }
+        int count = 0;
+        for (String packageName : dirtyPackages) {
+            dirtyPackages.remove(packageName);
+            reconcile(pm, packageName);
+            count++;
+        }
+        Log.d(TAG, "Reconciled " + count + " changed packages, version=" + version);
+    }
+
+    private void fullScan(PackageManager pm) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // 先记录序列号, 扫描期间发生的变化会在下次 refresh 时再核对一次
+            ChangedPackages changed = pm.getChangedPackages(0);
+            changeSequence = changed != null ? changed.getSequenceNumber() : 0;
+        }
+        dirtyPackages.clear();
+
+        version++;
+        apps.clear();
+        removed.clear();
+        for (PackageInfo info : pm.getInstalledPackages(0)) {
+            ApplicationInfo app = info.applicationInfo;
+            if (app != null && isListedApp(app)) {
+                apps.put(info.packageName, new AppEntry(info.packageName,
+                        pm.getApplicationLabel(app).toString(), info, version, version));
+            }
+        }
+        oldestDeltaVersion = version;
+        initialized = true;
+        Log.d(TAG, "Full scan: " + apps.size() + " apps, sequence=" + changeSequence);
+    }
+
+    private void reconcile(PackageManager pm, String packageName) {
+        PackageInfo info = null;
+        try {
+            info = pm.getPackageInfo(packageName, 0);
+        } catch (PackageManager.NameNotFoundException e) {
+            // uninstalled
+        }
+
+        AppEntry existing = apps.get(packageName);
+        if (info == null || info.applicationInfo == null || !isListedApp(info.applicationInfo)) {
+            if (existing != null) {
+                version++;
+                apps.remove(packageName);
+                removed.put(packageName, version);
+                trimTombstones();
+            }
+            return;
+        }
+
+        String label = pm.getApplicationLabel(info.applicationInfo).toString();
+        if (existing == null) {
+            version++;
+            removed.remove(packageName);
+            apps.put(packageName, new AppEntry(packageName, label, info, version, version));
+        } else if (!label.equals(existing.label)
+                || !AppIconCache.stampOf(info).equals(AppIconCache.stampOf(existing.info))) {
+            version++;
+            apps.put(packageName, new AppEntry(packageName, label, info, existing.addedVersion, version));
+        }
+    }
+
+    private void trimTombstones() {
+        if (removed.size() <= MAX_TOMBSTONES) {
+            return;
+        }
+        long oldest = Long.MAX_VALUE;
+        String oldestPackage = null;
+        for (Map.Entry<String, Long> entry : removed.entrySet()) {
+            if (entry.getValue() < oldest) {
+                oldest = entry.getValue();
+                oldestPackage = entry.getKey();
+            }
+        }
+        removed.remove(oldestPackage);
+        oldestDeltaVersion = Math.max(oldestDeltaVersion, oldest);
+    }
+
+    static boolean isListedApp(ApplicationInfo app) {
+        return (app.flags & ApplicationInfo.FLAG_SYSTEM) == 0
+                || (app.flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0;
+    }
+}
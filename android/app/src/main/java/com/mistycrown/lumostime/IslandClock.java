@@ -0,0 +1,85 @@
+/**
+ * @file IslandClock.java
+ * @input Elapsed focus time (ms) from FloatingWindowService's tick
+ * @output "mm:ss" in a reused char buffer + text size bucket
+ * @pos Native UI Helper
+ * @description Allocation-free formatter for the island timer. Replaces String.format on every 500 ms tick: the text
+ * is written into one char buffer only when the displayed second changes, and the caller touches the TextView only
+ * when update() reports a change. Pure Java so the allocation benchmark runs on the host JVM.
+ */
+package com.mistycrown.lumostime;
+
+/**
+ * 悬浮球计时文本
+ * 只在主线程使用, 非线程安全
+ */
+public final class IslandClock {
+    /** 正常字号 (不超过 5 个字符, 例如 "59:59") */
+    public static final int SIZE_NORMAL = 0;
+    /** 小字号 (超过 5 个字符, 例如 "100:00") */
+    public static final int SIZE_SMALL = 1;
+
+    private static final int NORMAL_MAX_LENGTH = 5;
+    // 分钟最多 19 位 (long), 加上 ":ss"
+    private final char[] buffer = new char[22];
+    private int length = 0;
+    private long renderedSecond = -1;
+
+    /**
+     * 按已经过的时间更新文本, 显示的秒数没有变化时不写缓冲并返回 false
+     */
+    public boolean update(long elapsedMillis) {
+        long second = Math.max(0, elapsedMillis) / 1000;
+        if (second == renderedSecond) {
+            return false;
+        }
+        renderedSecond = second;
+        long minutes = second / 60;
+        int seconds = (int) (second % 60);
+
+        // 分钟至少两位, 前面补 0
+        int digits = 2;
+        for (long m = minutes / 100; m > 0; m /= 10) {
+            digits++;
+        }
+        long m = minutes;
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[i] = (char) ('0' + (int) (m % 10));
+            m /= 10;
+        }
+        buffer[digits] = ':';
+        buffer[digits + 1] = (char) ('0' + seconds / 10);
+        buffer[digits + 2] = (char) ('0' + seconds % 10);
+        length = digits + 3;
+        return true;
+    }
+
+    /**
+     * 文本被其他内容覆盖 (例如提醒文字) 后调用, 下次 update() 一定会重新写入
+     */
+    public void invalidate() {
+        renderedSecond = -1;
+    }
+
+    public char[] chars() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int sizeBucket() {
+        return length > NORMAL_MAX_LENGTH ? SIZE_SMALL : SIZE_NORMAL;
+    }
+
+    /**
+     * 距离显示的秒数下一次变化还有多久
+     */
+    public static long millisToNextSecond(long elapsedMillis) {
+        if (elapsedMillis < 0) {
+            return -elapsedMillis;
+        }
+        return 1000 - elapsedMillis % 1000;
+    }
+}
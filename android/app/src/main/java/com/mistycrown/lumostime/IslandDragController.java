@@ -0,0 +1,278 @@
+/**
+ * @file IslandDragController.java
+ * @input MotionEvents on the island view, Choreographer frames
+ * @output WindowManager layout updates (at most one per frame), tap / settled callbacks
+ * @pos Native UI Helper
+ * @description Drag handling for the floating window. ACTION_MOVE only records the target position; the
+ * WindowManager.updateViewLayout IPC happens once per Choreographer frame, so 120 Hz+ touch sampling no longer
+ * means several layout IPCs per display frame. On release the velocity (in screen coordinates) picks the edge to
+ * snap to and projects the vertical fling; the snap is animated on the same frame callback. The window must use
+ * Gravity.LEFT so params.x is measured from the left edge in RTL layouts too.
+ */
+package com.mistycrown.lumostime;
+
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.WindowManager;
+
+/**
+ * 悬浮球拖动 / 甩动吸边
+ * 只在主线程使用
+ */
+public class IslandDragController implements View.OnTouchListener, Choreographer.FrameCallback {
+    private static final String TAG = "IslandDragController";
+
+    // 吸边动画时长
+    private static final long SNAP_DURATION_MS = 280;
+    // 垂直方向按松手速度继续滑行的时间 (秒), 近似惯性
+    private static final float FLING_PROJECTION_SECONDS = 0.15f;
+
+    public interface Callback {
+        /** 没有移动的点击 */
+        void onTap();
+
+        /** 拖动 / 吸边结束后的最终位置 */
+        void onSettled(int x, int y);
+    }
+
+    private final WindowManager windowManager;
+    private final View view;
+    private final WindowManager.LayoutParams params;
+    private final Callback callback;
+    private final int edgeMargin;
+    private final int touchSlop;
+    private final int minFlingVelocity;
+    private final int maxFlingVelocity;
+    private final Choreographer choreographer = Choreographer.getInstance();
+
+    private VelocityTracker velocityTracker;
+    private int initialX;
+    private int initialY;
+    private float initialTouchX;
+    private float initialTouchY;
+    private boolean moved = false;
+
+    // 等待下一帧写入的位置
+    private int pendingX;
+    private int pendingY;
+    private boolean frameScheduled = false;
+
+    // 吸边动画; snapStartNanos 为 0 表示在下一帧开始计时
+    private boolean snapping = false;
+    private long snapStartNanos = 0;
+    private int snapFromX;
+    private int snapFromY;
+    private int snapToX;
+    private int snapToY;
+
+    public IslandDragController(WindowManager windowManager, View view, WindowManager.LayoutParams params,
+            int edgeMargin, Callback callback) {
+        this.windowManager = windowManager;
+        this.view = view;
+        this.params = params;
+        this.edgeMargin = edgeMargin;
+        this.callback = callback;
+        ViewConfiguration configuration = ViewConfiguration.get(view.getContext());
+        this.touchSlop = configuration.getScaledTouchSlop();
+        this.minFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        this.maxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+        this.pendingX = params.x;
+        this.pendingY = params.y;
+    }
+
+    @Override
+    public boolean onTouch(View v, MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                cancelSnap();
+                if (velocityTracker == null) {
+                    velocityTracker = VelocityTracker.obtain();
+                } else {
+                    velocityTracker.clear();
+                }
+                trackVelocity(event);
+                initialX = params.x;
+                initialY = params.y;
+                initialTouchX = event.getRawX();
+                initialTouchY = event.getRawY();
+                moved = false;
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                trackVelocity(event);
+                int dx = (int) (event.getRawX() - initialTouchX);
+                int dy = (int) (event.getRawY() - initialTouchY);
+                if (!moved && (Math.abs(dx) > touchSlop || Math.abs(dy) > touchSlop)) {
+                    moved = true;
+                }
+                // 只记录位置, 由下一帧统一写入
+                pendingX = initialX + dx;
+                pendingY = initialY + dy;
+                scheduleFrame();
+                return true;
+            case MotionEvent.ACTION_UP:
+                trackVelocity(event);
+                if (!moved) {
+                    releaseVelocityTracker();
+                    callback.onTap();
+                } else {
+                    velocityTracker.computeCurrentVelocity(1000, maxFlingVelocity);
+                    float vx = velocityTracker.getXVelocity();
+                    float vy = velocityTracker.getYVelocity();
+                    releaseVelocityTracker();
+                    startSnap(vx, vy);
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                releaseVelocityTracker();
+                if (moved) {
+                    startSnap(0, 0);
+                }
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 恢复保存的位置; 用户已经开始拖动时忽略
+     */
+    public void restore(int x, int y) {
+        if (velocityTracker != null || snapping) {
+            return;
+        }
+        pendingX = clampX(x);
+        pendingY = clampY(y);
+        scheduleFrame();
+    }
+
+    /**
+     * 服务销毁时调用
+     */
+    public void release() {
+        choreographer.removeFrameCallback(this);
+        frameScheduled = false;
+        snapping = false;
+        releaseVelocityTracker();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        if (!snapping) {
+            applyPosition(pendingX, pendingY);
+            return;
+        }
+        if (snapStartNanos == 0) {
+            snapStartNanos = frameTimeNanos;
+        }
+        float t = Math.min(1f, (frameTimeNanos - snapStartNanos) / 1_000_000f / SNAP_DURATION_MS);
+        // Decelerate
+        float eased = 1f - (1f - t) * (1f - t);
+        int x = snapFromX + Math.round((snapToX - snapFromX) * eased);
+        int y = snapFromY + Math.round((snapToY - snapFromY) * eased);
+        applyPosition(x, y);
+        if (t < 1f) {
+            scheduleFrame();
+        } else {
+            snapping = false;
+            pendingX = snapToX;
+            pendingY = snapToY;
+            callback.onSettled(snapToX, snapToY);
+        }
+    }
+
+    // ==================== 内部 ====================
+
+    /**
+     * 根据松手速度选择吸附的边: 水平速度足够快时按甩动方向, 否则按悬浮球中心所在的半边
+     */
+    private void startSnap(float vx, float vy) {
+        int fromX = pendingX;
+        int fromY = pendingY;
+        int screenWidth = screenMetrics().widthPixels;
+        boolean toRight;
+        if (Math.abs(vx) >= minFlingVelocity) {
+            toRight = vx > 0;
+        } else {
+            toRight = fromX + params.width / 2 > screenWidth / 2;
+        }
+        snapToX = toRight ? screenWidth - params.width - edgeMargin : edgeMargin;
+        float projectedY = fromY;
+        if (Math.abs(vy) >= minFlingVelocity) {
+            projectedY += vy * FLING_PROJECTION_SECONDS;
+        }
+        snapToY = clampY(Math.round(projectedY));
+        snapFromX = fromX;
+        snapFromY = fromY;
+        snapStartNanos = 0;
+        snapping = true;
+        scheduleFrame();
+    }
+
+    private void cancelSnap() {
+        if (snapping) {
+            snapping = false;
+            pendingX = params.x;
+            pendingY = params.y;
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    private void applyPosition(int x, int y) {
+        if (params.x == x && params.y == y) {
+            return;
+        }
+        params.x = x;
+        params.y = y;
+        try {
+            windowManager.updateViewLayout(view, params);
+        } catch (IllegalArgumentException e) {
+            // 悬浮窗已被移除
+            Log.w(TAG, "⚠️ updateViewLayout skipped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 屏幕坐标下的速度: 窗口跟随手指移动, 视图内坐标几乎不变, 需要换算成 raw 坐标再记录
+     * 直接平移原事件再还原, 不为每个 MOVE 复制事件
+     */
+    private void trackVelocity(MotionEvent event) {
+        if (velocityTracker == null) {
+            return;
+        }
+        float offsetX = event.getRawX() - event.getX();
+        float offsetY = event.getRawY() - event.getY();
+        event.offsetLocation(offsetX, offsetY);
+        velocityTracker.addMovement(event);
+        event.offsetLocation(-offsetX, -offsetY);
+    }
+
+    private void releaseVelocityTracker() {
+        if (velocityTracker != null) {
+            velocityTracker.recycle();
+            velocityTracker = null;
+        }
+    }
+
+    private int clampX(int x) {
+        return Math.max(0, Math.min(x, screenMetrics().widthPixels - params.width));
+    }
+
+    private int clampY(int y) {
+        return Math.max(0, Math.min(y, screenMetrics().heightPixels - params.height));
+    }
+
+    private DisplayMetrics screenMetrics() {
+        return view.getResources().getDisplayMetrics();
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * @file IslandIconCache.java
+ * @input PackageMetadataCache (ApplicationInfo), AppRuleStore (packages to warm), PackageChangeMonitor, application onTrimMemory
+ * @output Icons pre-rasterized to the island's exact icon size, as BitmapDrawables
+ * @pos Native Cache
+ * @description Memory-bounded LRU (sized in bitmap bytes) of island icons. Each entry is rendered once with
+ * AppIconCache.rasterize at the pixel size IslandView draws it, so switching back to a recent app costs no
+ * PackageManager IPC, no adaptive-icon decode and no per-frame scaling. Rule-mapped packages are warmed on a
+ * background thread; entries drop on package change. The cache registers its own ComponentCallbacks2 on the application
+ * context, so it is trimmed under memory pressure whether or not the floating window is running.
+ */
+package com.mistycrown.lumostime;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 悬浮球图标缓存
+ * get() 未命中时会访问 PackageManager 并绘制图标, 应在后台线程 (例如 DetectionThread) 调用
+ */
+public class IslandIconCache implements PackageChangeMonitor.Listener, ComponentCallbacks2 {
+    private static final String TAG = "IslandIconCache";
+    // xxxhdpi 下单个图标约 54KB (116px), 2MB 约可容纳 35 个
+    private static final int MAX_BYTES = 2 * 1024 * 1024;
+
+    private static volatile IslandIconCache instance = null;
+
+    private final Context context;
+    private final int iconSizePx;
+    private final LruCache<String, Bitmap> bitmaps;
+    // 每次失效都会递增, 绘制期间发生失效的结果不写入缓存
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // 预热线程状态, 由 synchronized 保护
+    private boolean warming = false;
+    private boolean warmAgain = false;
+
+    public static IslandIconCache getInstance(Context context) {
+        IslandIconCache cache = instance;
+        if (cache == null) {
+            synchronized (IslandIconCache.class) {
+                cache = instance;
+                if (cache == null) {
+                    cache = new IslandIconCache(context.getApplicationContext());
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private IslandIconCache(Context context) {
+        this.context = context;
+        this.iconSizePx = IslandView.iconSizePx(context);
+        this.bitmaps = new LruCache<String, Bitmap>(MAX_BYTES) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        PackageChangeMonitor.getInstance(context).addListener(this);
+        // 注册在 Application 上, 悬浮窗服务未运行时同样会收到内存回调
+        context.registerComponentCallbacks(this);
+    }
+
+    /**
+     * 悬浮球尺寸的图标, 未安装或绘制失败时返回 null
+     * 每次返回新的 BitmapDrawable (共享同一个 Bitmap), 调用方可以自由设置 bounds
+     */
+    public Drawable get(String packageName) {
+        Bitmap bitmap = bitmaps.get(packageName);
+        if (bitmap == null) {
+            int gen = generation.get();
+            bitmap = render(packageName);
+            if (bitmap == null) {
+                return null;
+            }
+            if (generation.get() == gen) {
+                bitmaps.put(packageName, bitmap);
+            }
+        }
+        return new BitmapDrawable(context.getResources(), bitmap);
+    }
+
+    /**
+     * 在后台线程预先绘制规则中出现的应用图标 (已缓存的跳过)
+     * 正在预热时再次调用, 会在本轮结束后按最新的规则再跑一轮
+     */
+    public void warmRulePackages() {
+        synchronized (this) {
+            if (warming) {
+                warmAgain = true;
+                return;
+            }
+            warming = true;
+        }
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            while (true) {
+                int warmed = warm();
+                if (warmed > 0) {
+                    Log.d(TAG, "🔥 Warmed " + warmed + " island icons");
+                }
+                synchronized (this) {
+                    if (!warmAgain) {
+                        warming = false;
+                        return;
+                    }
+                    warmAgain = false;
+                }
+            }
+        }, "LumosIconWarmup");
+        thread.start();
+    }
+
+    /**
+     * 系统内存紧张时释放: 内存偏低 / 进入后台 / 中等压力时减半, 进程即将被回收时清空
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            bitmaps.evictAll();
+            Log.d(TAG, "🧹 Island icons released (level " + level + ")");
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            bitmaps.trimToSize(MAX_BYTES / 2);
+            Log.d(TAG, "🧹 Island icons halved (level " + level + ")");
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        bitmaps.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // 图标尺寸按 dp 计算, 创建时已确定
+    }
+
+    @Override
+    public void onPackageChanged(String packageName, String action, boolean replacing) {
+        generation.incrementAndGet();
+        bitmaps.remove(packageName);
+    }
+
+    private int warm() {
+        Set<String> packages = new LinkedHashSet<>();
+        for (AppRule rule : AppRuleStore.getInstance(context).snapshot().values()) {
+            // 通配规则无法确定具体应用
+            if (rule.packageName.indexOf(AppRule.WILDCARD) < 0) {
+                packages.add(rule.packageName);
+            }
+        }
+        int warmed = 0;
+        for (String packageName : packages) {
+            if (bitmaps.get(packageName) != null) {
+                continue;
+            }
+            if (get(packageName) != null) {
+                warmed++;
+            }
+        }
+        return warmed;
+    }
+
+    private Bitmap render(String packageName) {
+        try {
+            Drawable icon = PackageMetadataCache.getInstance(context).loadIcon(packageName);
+            if (icon == null) {
+                return null;
+            }
+            return AppIconCache.rasterize(icon, iconSizePx);
+        } catch (Exception e) {
+            Log.w(TAG, "Render island icon failed: " + packageName, e);
+            return null;
+        }
+    }
+}
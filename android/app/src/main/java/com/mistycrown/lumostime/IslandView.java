@@ -0,0 +1,353 @@
+/**
+ * @file IslandView.java
+ * @input Icon drawable, focus emoji, timer chars (IslandClock), prompt text from FloatingWindowService
+ * @output The "LumosTime Island" bubble drawn directly on Canvas
+ * @pos Native UI Component
+ * @description Single custom view replacing the FrameLayout + ImageView + two TextViews of the island. Content is
+ * drawn in onDraw with cached Paint/StaticLayout objects; the Time -> Emoji -> Icon flip is animated inside onDraw
+ * with one postInvalidateOnAnimation per frame. Nothing here calls requestLayout, so the overlay window is never
+ * re-measured or re-laid out during the rotation cycle.
+ */
+package com.mistycrown.lumostime;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.os.SystemClock;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.view.View;
+
+/**
+ * 悬浮球视图
+ * 图标 / Emoji / 计时 / 提示文字都在 onDraw 中直接绘制, 切换内容只触发重绘, 不触发 measure/layout
+ * 只在主线程使用
+ */
+public class IslandView extends View {
+    // 与 FloatingWindowService 的 currentDisplayState 取值一致
+    public static final int STATE_TIME = 0;
+    public static final int STATE_EMOJI = 1;
+    public static final int STATE_ICON = 2;
+    // 提示文字 (多行, 例如 "开始?\n小红书")
+    public static final int STATE_TEXT = 3;
+
+    /**
+     * 悬浮窗所在窗口的可见性变化 (被系统隐藏 / 重新显示)
+     */
+    public interface WindowVisibilityListener {
+        void onWindowVisibilityChanged(boolean visible);
+    }
+
+    // 悬浮球边长, 图标四周留白
+    public static final int SIZE_DP = 45;
+    private static final int ICON_PADDING_DP = 8;
+
+    // 翻转动画: 旧内容压扁 200ms, 新内容展开 200ms (与原先 ViewPropertyAnimator 的时长一致)
+    private static final long FLIP_HALF_MS = 200;
+
+    private static final int TIME_SIZE_NORMAL_DP = 11;
+    private static final int TIME_SIZE_SMALL_DP = 9;
+    private static final int EMOJI_SIZE_DP = 17;
+    private static final int TEXT_SIZE_DP = 9;
+
+    private final float density;
+    private final TextPaint timePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint emojiPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+
+    // 基线相对于中心的偏移, 只在字号变化时重新计算
+    private float timeBaselineOffset;
+    private float emojiBaselineOffset;
+
+    private int state = STATE_ICON;
+    private int flipFromState = STATE_ICON;
+    private long flipStartTime = 0;
+
+    private Drawable icon;
+    private String emoji = "";
+    // 指向 IslandClock 的缓冲, 不复制
+    private char[] timeChars;
+    private int timeLength = 0;
+    private int timeSizeBucket = IslandClock.SIZE_NORMAL;
+    private String text = "";
+    private StaticLayout textLayout;
+    private WindowVisibilityListener windowVisibilityListener;
+
+    /**
+     * 图标实际绘制的像素尺寸 (IslandIconCache 按此尺寸预先绘制, 绘制时不再缩放)
+     */
+    public static int iconSizePx(Context context) {
+        float density = context.getResources().getDisplayMetrics().density;
+        return Math.round(SIZE_DP * density) - 2 * Math.round(ICON_PADDING_DP * density);
+    }
+
+    public IslandView(Context context) {
+        super(context);
+        density = context.getResources().getDisplayMetrics().density;
+
+        GradientDrawable bg = new GradientDrawable();
+        bg.setShape(GradientDrawable.OVAL);
+        bg.setColor(Color.WHITE);
+        // Add subtle shadow/stroke
+        bg.setStroke(1, Color.parseColor("#E5E7EB")); // Stone-200
+        setBackground(bg);
+        setElevation(5f); // Reduced elevation for lighter shadow
+
+        timePaint.setColor(Color.parseColor("#4B5563")); // Gray-600
+        timePaint.setTextAlign(Paint.Align.CENTER);
+        // Use SERIF to approximate "Song" style (Huawen Zhongsong), BOLD to make it legible
+        timePaint.setTypeface(Typeface.create(Typeface.SERIF, Typeface.BOLD));
+        timePaint.setTextSize(dp(TIME_SIZE_NORMAL_DP));
+        timeBaselineOffset = baselineOffset(timePaint);
+
+        emojiPaint.setColor(Color.parseColor("#374151")); // Gray-700
+        emojiPaint.setTextAlign(Paint.Align.CENTER);
+        emojiPaint.setTextSize(dp(EMOJI_SIZE_DP));
+        emojiBaselineOffset = baselineOffset(emojiPaint);
+
+        textPaint.setColor(Color.parseColor("#4B5563"));
+        textPaint.setTypeface(Typeface.create(Typeface.SERIF, Typeface.BOLD));
+        textPaint.setTextSize(dp(TEXT_SIZE_DP));
+    }
+
+    // ==================== 内容 ====================
+
+    public void setIcon(Drawable drawable) {
+        icon = drawable;
+        updateIconBounds();
+        if (isDrawing(STATE_ICON)) {
+            invalidate();
+        }
+    }
+
+    public void setIconResource(int resId) {
+        setIcon(getContext().getDrawable(resId));
+    }
+
+    public void setEmoji(String value) {
+        emoji = value != null ? value : "";
+        if (isDrawing(STATE_EMOJI)) {
+            invalidate();
+        }
+    }
+
+    /**
+     * 更新计时文本; chars 会被持有 (IslandClock 复用同一个缓冲), 不在显示计时时只记录不重绘
+     */
+    public void setTime(char[] chars, int length, int sizeBucket) {
+        timeChars = chars;
+        timeLength = length;
+        if (sizeBucket != timeSizeBucket) {
+            timeSizeBucket = sizeBucket;
+            timePaint.setTextSize(dp(sizeBucket == IslandClock.SIZE_SMALL ? TIME_SIZE_SMALL_DP : TIME_SIZE_NORMAL_DP));
+            timeBaselineOffset = baselineOffset(timePaint);
+        }
+        if (isDrawing(STATE_TIME)) {
+            invalidate();
+        }
+    }
+
+    /**
+     * 立即显示提示文字 (取消进行中的翻转)
+     */
+    public void showText(String value) {
+        String next = value != null ? value : "";
+        if (!next.equals(text)) {
+            text = next;
+            textLayout = null;
+        }
+        show(STATE_TEXT);
+    }
+
+    /**
+     * 立即切换到指定内容, 不播放动画
+     */
+    public void show(int newState) {
+        flipStartTime = 0;
+        state = newState;
+        invalidate();
+    }
+
+    /**
+     * 以翻转动画切换到指定内容
+     */
+    public void flipTo(int newState) {
+        if (newState == state) {
+            return;
+        }
+        // 上一次翻转还没结束时, 从当前显示的内容开始
+        flipFromState = visibleState();
+        state = newState;
+        flipStartTime = SystemClock.uptimeMillis();
+        invalidate();
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public void setWindowVisibilityListener(WindowVisibilityListener listener) {
+        windowVisibilityListener = listener;
+    }
+
+    /**
+     * 结束进行中的翻转, 直接停在目标内容 (暂停渲染时调用, 恢复后不会补播动画)
+     */
+    public void finishFlip() {
+        if (flipStartTime > 0) {
+            flipStartTime = 0;
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (windowVisibilityListener != null) {
+            windowVisibilityListener.onWindowVisibilityChanged(visibility == VISIBLE);
+        }
+    }
+
+    // ==================== 绘制 ====================
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateIconBounds();
+        textLayout = null;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (flipStartTime == 0) {
+            drawState(canvas, state, 1f);
+            return;
+        }
+        long elapsed = elapsedFlip();
+        if (elapsed >= FLIP_HALF_MS * 2) {
+            flipStartTime = 0;
+            drawState(canvas, state, 1f);
+            return;
+        }
+        if (elapsed < FLIP_HALF_MS) {
+            drawState(canvas, flipFromState, 1f - interpolate(elapsed));
+        } else {
+            drawState(canvas, state, interpolate(elapsed - FLIP_HALF_MS));
+        }
+        // 每帧只请求一次重绘
+        postInvalidateOnAnimation();
+    }
+
+    private void drawState(Canvas canvas, int drawState, float scaleY) {
+        if (scaleY <= 0f) {
+            return;
+        }
+        float cx = getWidth() / 2f;
+        float cy = getHeight() / 2f;
+        int saveCount = canvas.save();
+        if (scaleY < 1f) {
+            canvas.scale(1f, scaleY, cx, cy);
+        }
+        switch (drawState) {
+            case STATE_TIME:
+                if (timeChars != null && timeLength > 0) {
+                    canvas.drawText(timeChars, 0, timeLength, cx, cy + timeBaselineOffset, timePaint);
+                }
+                break;
+            case STATE_EMOJI:
+                if (!emoji.isEmpty()) {
+                    canvas.drawText(emoji, cx, cy + emojiBaselineOffset, emojiPaint);
+                }
+                break;
+            case STATE_ICON:
+                if (icon != null) {
+                    icon.draw(canvas);
+                }
+                break;
+            case STATE_TEXT:
+                StaticLayout layout = obtainTextLayout();
+                if (layout != null) {
+                    canvas.translate(0, (getHeight() - layout.getHeight()) / 2f);
+                    layout.draw(canvas);
+                }
+                break;
+            default:
+                break;
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    private StaticLayout obtainTextLayout() {
+        if (textLayout == null && getWidth() > 0 && !text.isEmpty()) {
+            textLayout = StaticLayout.Builder.obtain(text, 0, text.length(), textPaint, getWidth())
+                    .setAlignment(Layout.Alignment.ALIGN_CENTER)
+                    .setIncludePad(false)
+                    .build();
+        }
+        return textLayout;
+    }
+
+    private void updateIconBounds() {
+        int w = getWidth();
+        int h = getHeight();
+        if (icon == null || w <= 0 || h <= 0) {
+            return;
+        }
+        int padding = Math.round(dp(ICON_PADDING_DP));
+        int availableW = w - padding * 2;
+        int availableH = h - padding * 2;
+        int iconW = icon.getIntrinsicWidth();
+        int iconH = icon.getIntrinsicHeight();
+        // 与 ImageView 默认的 FIT_CENTER 一致: 保持比例居中
+        if (iconW > 0 && iconH > 0) {
+            float scale = Math.min((float) availableW / iconW, (float) availableH / iconH);
+            int drawW = Math.round(iconW * scale);
+            int drawH = Math.round(iconH * scale);
+            int left = (w - drawW) / 2;
+            int top = (h - drawH) / 2;
+            icon.setBounds(left, top, left + drawW, top + drawH);
+        } else {
+            icon.setBounds(padding, padding, w - padding, h - padding);
+        }
+    }
+
+    // ==================== 工具 ====================
+
+    /**
+     * 当前这一帧是否会画出该内容 (包括翻转中即将消失的一侧)
+     */
+    private boolean isDrawing(int drawState) {
+        return visibleState() == drawState;
+    }
+
+    private int visibleState() {
+        if (flipStartTime > 0 && elapsedFlip() < FLIP_HALF_MS) {
+            return flipFromState;
+        }
+        return state;
+    }
+
+    private long elapsedFlip() {
+        return SystemClock.uptimeMillis() - flipStartTime;
+    }
+
+    // AccelerateDecelerate, 与 ViewPropertyAnimator 的默认插值一致
+    private static float interpolate(long elapsed) {
+        float t = Math.min(1f, (float) elapsed / FLIP_HALF_MS);
+        return (float) (Math.cos((t + 1) * Math.PI) / 2.0) + 0.5f;
+    }
+
+    private static float baselineOffset(Paint paint) {
+        return -(paint.ascent() + paint.descent()) / 2f;
+    }
+
+    private float dp(int value) {
+        return value * density;
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * @file LaunchablePackageSet.java
+ * @input PackageManager launcher/home queries, PackageChangeMonitor
+ * @output Immutable launchable + home package sets
+ * @pos Native Data Layer
+ * @description Precomputed sets of packages with a launcher entry and packages providing a HOME activity. Built once
+ * on DetectionThread and patched per package on install/update/uninstall, so filtering a window change is a single
+ * hash lookup instead of resolveActivity + queryIntentActivities + getLaunchIntentForPackage. Window events that
+ * arrive before the first build has run are let through rather than waiting for it.
+ */
+package com.mistycrown.lumostime;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.util.Log;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可启动应用 / 桌面应用集合
+ * 读取无锁 (volatile 不可变快照), 构建和增量更新都在 DetectionThread 上执行
+ */
+public class LaunchablePackageSet implements PackageChangeMonitor.Listener {
+    private static final String TAG = "LaunchablePackageSet";
+
+    private static volatile LaunchablePackageSet instance = null;
+
+    private static final class Snapshot {
+        final Set<String> launchable;
+        final Set<String> home;
+
+        Snapshot(Set<String> launchable, Set<String> home) {
+            this.launchable = Collections.unmodifiableSet(launchable);
+            this.home = Collections.unmodifiableSet(home);
+        }
+    }
+
+    private final Context context;
+    private volatile Snapshot snapshot = null;
+
+    private final AtomicBoolean buildPosted = new AtomicBoolean();
+
+    private final AtomicLong lookups = new AtomicLong();
+    // 原先按包缓存的路径在某个包首次出现 (或安装/更新后再次出现) 时要查询 PackageManager, 这里统计这类查询的次数
+    private final AtomicLong ipcAvoided = new AtomicLong();
+    // 自上次变化以来已查询过的包, 只在 DetectionThread 上访问
+    private final Set<String> seen = new HashSet<>();
+    private final AtomicLong ipcSpent = new AtomicLong();
+    private final AtomicLong fullBuilds = new AtomicLong();
+    private final AtomicLong incrementalUpdates = new AtomicLong();
+
+    public static LaunchablePackageSet getInstance(Context context) {
+        LaunchablePackageSet set = instance;
+        if (set == null) {
+            synchronized (LaunchablePackageSet.class) {
+                set = instance;
+                if (set == null) {
+                    set = new LaunchablePackageSet(context.getApplicationContext());
+                    instance = set;
+                }
+            }
+        }
+        return set;
+    }
+
+    private LaunchablePackageSet(Context context) {
+        this.context = context;
+        PackageChangeMonitor.getInstance(context).addListener(this);
+    }
+
+    /**
+     * 在检测线程上预先构建, 供服务连接时调用
+     */
+    public void prepare() {
+        if (snapshot == null && buildPosted.compareAndSet(false, true)) {
+            DetectionThread.post(this::ensureBuilt);
+        }
+    }
+
+    public boolean isLaunchable(String packageName) {
+        return ensureBuilt().launchable.contains(packageName);
+    }
+
+    public boolean isHomeApp(String packageName) {
+        return ensureBuilt().home.contains(packageName);
+    }
+
+    /**
+     * 桌面应用 (表示结束使用) 或有启动入口的应用, 一次哈希查询; 在 DetectionThread 上调用
+     * 集合尚未构建完成时不等待, 先视为需要处理 (构建任务已在检测线程排队)
+     */
+    public boolean isInteresting(String packageName) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            prepare();
+            return true;
+        }
+        lookups.incrementAndGet();
+        if (seen.add(packageName)) {
+            ipcAvoided.incrementAndGet();
+        }
+        return current.launchable.contains(packageName) || current.home.contains(packageName);
+    }
+
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * 由集合直接回答、而原先的逐包路径需要查询 PackageManager 的次数 (包首次出现或安装/更新后首次出现)
+     */
+    public long getIpcAvoided() {
+        return ipcAvoided.get();
+    }
+
+    public long getIpcSpent() {
+        return ipcSpent.get();
+    }
+
+    public long getFullBuilds() {
+        return fullBuilds.get();
+    }
+
+    public long getIncrementalUpdates() {
+        return incrementalUpdates.get();
+    }
+
+    @Override
+    public void onPackageChanged(String packageName, String action, boolean replacing) {
+        // 广播在主线程, 实际查询放到检测线程
+        DetectionThread.post(() -> update(packageName));
+    }
+
+    private Snapshot ensureBuilt() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = build();
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Snapshot build() {
+        long start = System.currentTimeMillis();
+        PackageManager pm = context.getPackageManager();
+        Set<String> launchable = new HashSet<>();
+        Set<String> home = new HashSet<>();
+        // 启动入口与 getLaunchIntentForPackage 一致 (不限定 DEFAULT); 桌面与原先的查询一致, 只取 DEFAULT
+        collectPackages(pm, mainIntent(Intent.CATEGORY_LAUNCHER, null), 0, launchable);
+        collectPackages(pm, mainIntent(Intent.CATEGORY_HOME, null), PackageManager.MATCH_DEFAULT_ONLY, home);
+        ipcSpent.addAndGet(2);
+        fullBuilds.incrementAndGet();
+        Log.d(TAG, "Built " + launchable.size() + " launchable / " + home.size() + " home packages in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return new Snapshot(launchable, home);
+    }
+
+    /**
+     * 只重新查询发生变化的包 (组件启用/禁用也会触发 PACKAGE_CHANGED)
+     */
+    private synchronized void update(String packageName) {
+        // 原先的路径在包变化后会重新查询该包
+        seen.remove(packageName);
+        Snapshot current = snapshot;
+        if (current == null) {
+            // 尚未构建, 构建时自然包含最新状态
+            return;
+        }
+        PackageManager pm = context.getPackageManager();
+        boolean launchable = pm.getLaunchIntentForPackage(packageName) != null;
+        Set<String> homeActivities = new HashSet<>();
+        collectPackages(pm, mainIntent(Intent.CATEGORY_HOME, packageName), PackageManager.MATCH_DEFAULT_ONLY,
+                homeActivities);
+        boolean home = !homeActivities.isEmpty();
+        ipcSpent.addAndGet(2);
+        incrementalUpdates.incrementAndGet();
+
+        if (launchable == current.launchable.contains(packageName) && home == current.home.contains(packageName)) {
+            return;
+        }
+        Set<String> nextLaunchable = new HashSet<>(current.launchable);
+        Set<String> nextHome = new HashSet<>(current.home);
+        if (launchable) {
+            nextLaunchable.add(packageName);
+        } else {
+            nextLaunchable.remove(packageName);
+        }
+        if (home) {
+            nextHome.add(packageName);
+        } else {
+            nextHome.remove(packageName);
+        }
+        snapshot = new Snapshot(nextLaunchable, nextHome);
+    }
+
+    private static Intent mainIntent(String category, String packageName) {
+        Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.addCategory(category);
+        if (packageName != null) {
+            intent.setPackage(packageName);
+        }
+        return intent;
+    }
+
+    private static void collectPackages(PackageManager pm, Intent intent, int flags, Set<String> out) {
+        try {
+            List<ResolveInfo> activities = pm.queryIntentActivities(intent, flags);
+            for (ResolveInfo info : activities) {
+                if (info.activityInfo != null) {
+                    out.add(info.activityInfo.packageName);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Query activities failed", e);
+        }
+    }
+}
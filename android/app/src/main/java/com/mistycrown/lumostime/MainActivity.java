@@ -18,6 +18,9 @@ public class MainActivity extends BridgeActivity {
         registerPlugin(AppUsagePlugin.class);
         registerPlugin(IconPlugin.class); // 注册图标切换插件
         super.onCreate(savedInstanceState);
+
+        // 拦截 /_lumos_icon_/ 请求, 让 WebView 直接从原生图标缓存加载应用图标
+        bridge.setWebViewClient(new AppIconWebViewClient(bridge));
         
         // 初始化图标状态，确保应用有正确的入口点
         initializeIconState();
@@ -0,0 +1,116 @@
+/**
+ * @file PackageChangeMonitor.java
+ * @input System Package Broadcasts (ADDED/REMOVED/REPLACED/CHANGED), Locale Changes
+ * @output Package Change Callbacks
+ * @pos Native Infrastructure
+ * @description Process-wide receiver for package install/update/uninstall broadcasts. Registered once on the
+ * application context and fans the changed package name out to native caches that need precise invalidation.
+ */
+package com.mistycrown.lumostime;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 应用安装/卸载/更新广播的统一入口
+ * 回调在主线程执行, 监听者只应做轻量的标记工作, 不要在回调里访问 PackageManager
+ */
+public class PackageChangeMonitor {
+    private static final String TAG = "PackageChangeMonitor";
+    private static PackageChangeMonitor instance = null;
+
+    public interface Listener {
+        /**
+         * @param packageName 发生变化的包名
+         * @param action      Intent action, 例如 {@link Intent#ACTION_PACKAGE_ADDED}
+         * @param replacing   是否为覆盖安装过程中的 REMOVED/ADDED
+         */
+        void onPackageChanged(String packageName, String action, boolean replacing);
+    }
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    // 系统语言变化: 应用名称等本地化资源需要重新加载
+    private final CopyOnWriteArrayList<Runnable> localeListeners = new CopyOnWriteArrayList<>();
+
+    public static synchronized PackageChangeMonitor getInstance(Context context) {
+        if (instance == null) {
+            instance = new PackageChangeMonitor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PackageChangeMonitor(Context context) {
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Uri data = intent.getData();
+                String packageName = data != null ? data.getSchemeSpecificPart() : null;
+                if (packageName == null) {
+                    return;
+                }
+                String action = intent.getAction();
+                boolean replacing = intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+                Log.d(TAG, "📦 " + action + " " + packageName + (replacing ? " (replacing)" : ""));
+                for (Listener listener : listeners) {
+                    try {
+                        listener.onPackageChanged(packageName, action, replacing);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Package listener failed", e);
+                    }
+                }
+            }
+        };
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(receiver, filter, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(receiver, filter);
+        }
+
+        BroadcastReceiver localeReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Log.d(TAG, "🌐 Locale changed");
+                for (Runnable listener : localeListeners) {
+                    try {
+                        listener.run();
+                    } catch (Exception e) {
+                        Log.e(TAG, "Locale listener failed", e);
+                    }
+                }
+            }
+        };
+        // 系统广播, 不需要导出标记
+        context.registerReceiver(localeReceiver, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+        Log.d(TAG, "Registered package change receiver");
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void addLocaleListener(Runnable listener) {
+        localeListeners.addIfAbsent(listener);
+    }
+
+    public void removeLocaleListener(Runnable listener) {
+        localeListeners.remove(listener);
+    }
+}
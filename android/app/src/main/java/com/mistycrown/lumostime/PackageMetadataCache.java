@@ -0,0 +1,174 @@
+/**
+ * @file PackageMetadataCache.java
+ * @input PackageManager, PackageChangeMonitor (package + locale changes)
+ * @output Cached label / ApplicationInfo per package; launchable / home-app flags via LaunchablePackageSet
+ * @pos Native Data Layer
+ * @description Process-wide, size-bounded cache of per-package metadata used on every app switch. Replaces the
+ * repeated getApplicationInfo + getApplicationLabel IPC in both detection services, the plugin and the floating
+ * window; entries are dropped precisely when the package is added/replaced/removed, labels on locale change.
+ */
+package com.mistycrown.lumostime;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.util.LruCache;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 应用元数据缓存
+ * get() 在未命中时会访问 PackageManager, 应在后台线程 (例如 DetectionThread) 调用
+ */
+public class PackageMetadataCache implements PackageChangeMonitor.Listener {
+    private static final String TAG = "PackageMetadataCache";
+    private static final int MAX_ENTRIES = 256;
+
+    private static volatile PackageMetadataCache instance = null;
+
+    /**
+     * 单个应用的元数据 (不可变)
+     */
+    public static final class Entry {
+        public final String packageName;
+        public final boolean installed;
+        // 未安装时为包名
+        public final String label;
+        // 图标句柄: 持有 ApplicationInfo, 加载图标时不需要再查询一次
+        public final ApplicationInfo appInfo;
+
+        Entry(String packageName, boolean installed, String label, ApplicationInfo appInfo) {
+            this.packageName = packageName;
+            this.installed = installed;
+            this.label = label;
+            this.appInfo = appInfo;
+        }
+    }
+
+    private final Context context;
+    private final LruCache<String, Entry> entries = new LruCache<>(MAX_ENTRIES);
+    private final LaunchablePackageSet launchables;
+    // 每次失效都会递增, 加载期间发生失效的结果不写入缓存
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public static PackageMetadataCache getInstance(Context context) {
+        PackageMetadataCache cache = instance;
+        if (cache == null) {
+            synchronized (PackageMetadataCache.class) {
+                cache = instance;
+                if (cache == null) {
+                    cache = new PackageMetadataCache(context.getApplicationContext());
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private PackageMetadataCache(Context context) {
+        this.context = context;
+        this.launchables = LaunchablePackageSet.getInstance(context);
+        PackageChangeMonitor monitor = PackageChangeMonitor.getInstance(context);
+        monitor.addListener(this);
+        monitor.addLocaleListener(this::invalidateAll);
+    }
+
+    /**
+     * 名称 + ApplicationInfo, 未命中时查询 PackageManager
+     */
+    public Entry get(String packageName) {
+        Entry entry = entries.get(packageName);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        int gen = generation.get();
+        Entry loaded = load(context.getPackageManager(), packageName);
+        store(gen, loaded);
+        return loaded;
+    }
+
+    /**
+     * 应用名称, 未安装时返回包名
+     */
+    public String getLabel(String packageName) {
+        return get(packageName).label;
+    }
+
+    /**
+     * 调用方已经持有 ApplicationInfo (例如遍历已安装应用) 时使用, 未命中只加载名称
+     */
+    public String getLabel(PackageManager pm, ApplicationInfo app) {
+        Entry entry = entries.get(app.packageName);
+        if (entry != null && entry.installed) {
+            hits.incrementAndGet();
+            return entry.label;
+        }
+        misses.incrementAndGet();
+        int gen = generation.get();
+        String label = pm.getApplicationLabel(app).toString();
+        store(gen, new Entry(app.packageName, true, label, app));
+        return label;
+    }
+
+    /**
+     * 通过缓存的 ApplicationInfo 加载图标, 未安装时返回 null
+     */
+    public Drawable loadIcon(String packageName) {
+        Entry entry = get(packageName);
+        if (!entry.installed) {
+            return null;
+        }
+        return context.getPackageManager().getApplicationIcon(entry.appInfo);
+    }
+
+    public boolean isLaunchable(String packageName) {
+        return launchables.isLaunchable(packageName);
+    }
+
+    public boolean isHomeApp(String packageName) {
+        return launchables.isHomeApp(packageName);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public void onPackageChanged(String packageName, String action, boolean replacing) {
+        generation.incrementAndGet();
+        entries.remove(packageName);
+    }
+
+    private void invalidateAll() {
+        generation.incrementAndGet();
+        entries.evictAll();
+        Log.d(TAG, "Locale changed, labels dropped");
+    }
+
+    private void store(int gen, Entry entry) {
+        if (generation.get() == gen) {
+            entries.put(entry.packageName, entry);
+        }
+    }
+
+    private static Entry load(PackageManager pm, String packageName) {
+        try {
+            ApplicationInfo app = pm.getApplicationInfo(packageName, 0);
+            String label = pm.getApplicationLabel(app).toString();
+            return new Entry(packageName, true, label, app);
+        } catch (PackageManager.NameNotFoundException e) {
+            // 未安装也缓存下来, 安装时会收到 ADDED 广播
+            return new Entry(packageName, false, packageName, null);
+        }
+    }
+}
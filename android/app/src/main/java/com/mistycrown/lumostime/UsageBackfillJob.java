@@ -0,0 +1,312 @@
+/**
+ * @file UsageBackfillJob.java
+ * @input UsageStatsManager.queryEvents (the days Android still retains)
+ * @output Historical records imported into UsageJournal, rollups rebuilt, progress callbacks
+ * @pos Native Logic Layer
+ * @description One-off import of the usage history Android keeps before LumosTime started journaling. The window
+ * ends at the first journal record so live and imported data never overlap; each day is imported as one atomic
+ * replace of that day's imported records, and finished days are remembered, so an interrupted job resumes where it
+ * stopped and a re-run never double counts.
+ */
+package com.mistycrown.lumostime;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 历史使用记录导入 (首次开启使用情况访问权限后)
+ */
+public class UsageBackfillJob {
+    private static final String TAG = "UsageBackfillJob";
+    private static final String PREFS_NAME = "UsageBackfillPrefs";
+    private static final String KEY_WINDOW_START = "windowStart";
+    private static final String KEY_CUTOFF = "cutoff";
+    private static final String KEY_COMPLETED_DAYS = "completedDays";
+    private static final String KEY_DONE = "done";
+
+    // 系统通常只保留 7~10 天的 UsageEvents, 更早的查询会返回空
+    private static final long RETENTION_MS = 10L * 24 * 60 * 60 * 1000;
+    // 并行查询的天数; 每天导入后暂停一会, 避免与前台争抢 I/O
+    private static final int WORKERS = 2;
+    private static final long THROTTLE_MS = 250;
+
+    public static final String STATE_IDLE = "idle";
+    public static final String STATE_RUNNING = "running";
+    public static final String STATE_DONE = "done";
+    public static final String STATE_FAILED = "failed";
+
+    private static volatile UsageBackfillJob instance = null;
+
+    public interface Listener {
+        void onProgress(Progress progress);
+    }
+
+    /**
+     * 进度快照
+     */
+    public static final class Progress {
+        public final String state;
+        public final int totalDays;
+        public final int completedDays;
+        public final long importedEvents;
+        // 本次运行开始时已完成的天数 (大于 0 表示从中断处继续)
+        public final int resumedDays;
+        public final long windowStart;
+        public final long cutoff;
+
+        Progress(String state, int totalDays, int completedDays, long importedEvents, int resumedDays,
+                long windowStart, long cutoff) {
+            this.state = state;
+            this.totalDays = totalDays;
+            this.completedDays = completedDays;
+            this.importedEvents = importedEvents;
+            this.resumedDays = resumedDays;
+            this.windowStart = windowStart;
+            this.cutoff = cutoff;
+        }
+    }
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private volatile Listener listener;
+
+    // 以下进度字段由 synchronized 保护
+    private String state = STATE_IDLE;
+    private int totalDays = 0;
+    private int completedDays = 0;
+    private long importedEvents = 0;
+    private int resumedDays = 0;
+    private long windowStart = 0;
+    private long cutoff = 0;
+
+    public static UsageBackfillJob getInstance(Context context) {
+        UsageBackfillJob job = instance;
+        if (job == null) {
+            synchronized (UsageBackfillJob.class) {
+                job = instance;
+                if (job == null) {
+                    job = new UsageBackfillJob(context.getApplicationContext());
+                    instance = job;
+                }
+            }
+        }
+        return job;
+    }
+
+    private UsageBackfillJob(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (prefs.getBoolean(KEY_DONE, false)) {
+            state = STATE_DONE;
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isDone() {
+        return prefs.getBoolean(KEY_DONE, false);
+    }
+
+    /**
+     * 在后台线程开始 (或继续) 导入; 已在运行或已完成时返回 false
+     */
+    public synchronized boolean start() {
+        if (STATE_RUNNING.equals(state) || isDone()) {
+            return false;
+        }
+        state = STATE_RUNNING;
+        Thread thread = new Thread(this::run, "LumosBackfill");
+        thread.start();
+        return true;
+    }
+
+    public synchronized Progress getProgress() {
+        return new Progress(state, totalDays, completedDays, importedEvents, resumedDays, windowStart, cutoff);
+    }
+
+    // ==================== 导入 ====================
+
+    private void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        try {
+            List<String> pending = prepare();
+            report();
+            ExecutorService workers = Executors.newFixedThreadPool(WORKERS, r -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, "LumosBackfillWorker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (String day : pending) {
+                    futures.add(workers.submit(() -> importDay(day)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                workers.shutdown();
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            }
+
+            // 导入的日期早于已有的每日汇总, 重新计算
+            UsageRollupIndex.getInstance(context).rebuild();
+            prefs.edit().putBoolean(KEY_DONE, true).apply();
+            synchronized (this) {
+                state = STATE_DONE;
+            }
+            Log.i(TAG, "✅ Backfill done: " + importedEvents + " events in " + totalDays + " days");
+        } catch (Exception e) {
+            Log.e(TAG, "Backfill failed", e);
+            synchronized (this) {
+                state = STATE_FAILED;
+            }
+        }
+        report();
+    }
+
+    /**
+     * 确定导入窗口 (首次运行时保存, 继续时沿用), 返回尚未完成的日期
+     */
+    private List<String> prepare() {
+        UsageJournal journal = UsageJournal.getInstance(context);
+        long windowStartValue = prefs.getLong(KEY_WINDOW_START, -1);
+        long cutoffValue = prefs.getLong(KEY_CUTOFF, -1);
+        if (windowStartValue < 0 || cutoffValue < 0) {
+            // 到日志第一条记录为止, 与实时记录不重叠
+            long first = journal.getFirstTimestamp();
+            cutoffValue = first >= 0 ? first : System.currentTimeMillis();
+            windowStartValue = cutoffValue - RETENTION_MS;
+            prefs.edit()
+                    .putLong(KEY_WINDOW_START, windowStartValue)
+                    .putLong(KEY_CUTOFF, cutoffValue)
+                    .apply();
+        }
+        Set<String> completed = prefs.getStringSet(KEY_COMPLETED_DAYS, new HashSet<>());
+        List<String> days = new ArrayList<>();
+        int lastDay = UsageRollupIndex.dayKey(cutoffValue);
+        for (int day = UsageRollupIndex.dayKey(windowStartValue); day <= lastDay;
+                day = UsageRollupIndex.nextDay(day)) {
+            days.add(String.valueOf(day));
+        }
+        List<String> pending = new ArrayList<>();
+        for (String day : days) {
+            if (!completed.contains(day)) {
+                pending.add(day);
+            }
+        }
+        synchronized (this) {
+            windowStart = windowStartValue;
+            cutoff = cutoffValue;
+            totalDays = days.size();
+            completedDays = days.size() - pending.size();
+            resumedDays = completedDays;
+        }
+        if (resumedDays > 0) {
+            Log.i(TAG, "🔁 Resuming backfill, " + resumedDays + "/" + totalDays + " days already imported");
+        }
+        return pending;
+    }
+
+    private void importDay(String day) {
+        int dayKey = Integer.parseInt(day);
+        long from = Math.max(windowStart, UsageRollupIndex.dayStart(dayKey));
+        long to = Math.min(cutoff, UsageRollupIndex.dayStart(UsageRollupIndex.nextDay(dayKey)));
+        int imported = 0;
+        if (from < to) {
+            imported = importRange(day, from, to);
+        }
+        markCompleted(day, imported);
+        report();
+        try {
+            Thread.sleep(THROTTLE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int importRange(String day, long from, long to) {
+        UsageStatsManager usageStatsManager =
+                (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
+        UsageEvents events = usageStatsManager.queryEvents(from, to);
+        if (events == null) {
+            return 0;
+        }
+        PackageMetadataCache metadata = PackageMetadataCache.getInstance(context);
+        int capacity = 256;
+        long[] timestamps = new long[capacity];
+        String[] packageNames = new String[capacity];
+        int[] types = new int[capacity];
+        int count = 0;
+        UsageEvents.Event event = new UsageEvents.Event();
+        while (events.hasNextEvent()) {
+            events.getNextEvent(event);
+            int type;
+            String packageName = event.getPackageName();
+            switch (event.getEventType()) {
+                case UsageEvents.Event.MOVE_TO_FOREGROUND:
+                    type = metadata.isHomeApp(packageName) ? UsageJournal.TYPE_HOME : UsageJournal.TYPE_FOREGROUND;
+                    break;
+                case UsageEvents.Event.MOVE_TO_BACKGROUND:
+                    type = UsageJournal.TYPE_BACKGROUND;
+                    break;
+                case UsageEvents.Event.SCREEN_NON_INTERACTIVE:
+                case UsageEvents.Event.DEVICE_SHUTDOWN:
+                    type = UsageJournal.TYPE_SCREEN_OFF;
+                    packageName = null;
+                    break;
+                case UsageEvents.Event.SCREEN_INTERACTIVE:
+                    type = UsageJournal.TYPE_SCREEN_ON;
+                    packageName = null;
+                    break;
+                default:
+                    continue;
+            }
+            if (count == capacity) {
+                capacity *= 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                packageNames = Arrays.copyOf(packageNames, capacity);
+                types = Arrays.copyOf(types, capacity);
+            }
+            timestamps[count] = event.getTimeStamp();
+            packageNames[count] = packageName;
+            types[count] = type;
+            count++;
+        }
+        return UsageJournal.getInstance(context).importDay(day, timestamps, packageNames, types, count);
+    }
+
+    private synchronized void markCompleted(String day, int imported) {
+        Set<String> completed = new HashSet<>(prefs.getStringSet(KEY_COMPLETED_DAYS, new HashSet<>()));
+        completed.add(day);
+        // commit: 进程被杀后继续时不会重复导入这一天 (即使重复也只是替换)
+        prefs.edit().putStringSet(KEY_COMPLETED_DAYS, completed).commit();
+        completedDays++;
+        importedEvents += imported;
+    }
+
+    private void report() {
+        Listener current = listener;
+        if (current != null) {
+            current.onProgress(getProgress());
+        }
+    }
+}
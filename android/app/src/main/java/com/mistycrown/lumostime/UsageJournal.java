@@ -0,0 +1,677 @@
+/**
+ * @file UsageJournal.java
+ * @input Foreground / home / screen events from AppSessionTracker (DetectionThread)
+ * @output Append-only binary journal on disk + memory-mapped range scans
+ * @pos Native Data Store
+ * @description Durable source of truth for app switches, independent of whether the WebView is alive. Records are
+ * 16 bytes (timestamp, interned package id, event type) appended in batches to one segment per local day; finished
+ * months are compacted into a single sorted pack with redundant records removed. Range scans map the files
+ * read-only, so years of history (a few MB) are read without copying into the Java heap.
+ */
+package com.mistycrown.lumostime;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 使用记录日志
+ * 写入在 DetectionThread 上批量进行; 扫描之间互不阻塞, 只与压缩互斥
+ */
+public class UsageJournal {
+    private static final String TAG = "UsageJournal";
+    private static final String DIR_NAME = "usage_journal";
+    private static final String PACKAGES_FILE = "packages.dat";
+    private static final String SEGMENT_PREFIX = "d-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String PACK_PREFIX = "m-";
+    private static final String PACK_SUFFIX = ".pack";
+
+    // 记录格式: long timestamp | int packageId | short type | short flags
+    public static final int RECORD_SIZE = 16;
+    // 缓冲满或等待 FLUSH_DELAY_MS 后写盘
+    private static final int BATCH_RECORDS = 64;
+    private static final long FLUSH_DELAY_MS = 10_000;
+
+    /** 应用进入前台 */
+    public static final int TYPE_FOREGROUND = 1;
+    /** 回到桌面 (结束使用) */
+    public static final int TYPE_HOME = 2;
+    public static final int TYPE_SCREEN_OFF = 3;
+    public static final int TYPE_SCREEN_ON = 4;
+    /** 应用退到后台 (只来自系统 UsageEvents 导入) */
+    public static final int TYPE_BACKGROUND = 5;
+
+    // 从 UsageStatsManager 导入的记录, 重新导入同一天时整体替换
+    private static final short FLAG_IMPORTED = 1;
+
+    // 屏幕事件没有包名
+    public static final int NO_PACKAGE = -1;
+
+    private static volatile UsageJournal instance = null;
+
+    public interface Visitor {
+        void onRecord(long timestamp, int packageId, int type);
+    }
+
+    private final File dir;
+    private final Handler handler;
+    // 锁顺序: filesLock -> 对象锁; 追加只用对象锁, 扫描持读锁, 压缩 (删除/替换文件) 持写锁
+    private final ReentrantReadWriteLock filesLock = new ReentrantReadWriteLock();
+    private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd", Locale.US);
+
+    // 包名驻留表, 下标即 id, 只追加
+    private final HashMap<String, Integer> packageIds = new HashMap<>();
+    private final ArrayList<String> packageNames = new ArrayList<>();
+
+    private final ByteBuffer batch = ByteBuffer.allocate(BATCH_RECORDS * RECORD_SIZE).order(ByteOrder.BIG_ENDIAN);
+    // 当前缓冲所属的日期 (yyyyMMdd)
+    private String batchDay = null;
+    // 本进程已检查过末尾的分段日期, 每个分段只在第一次追加前检查一次
+    private String checkedSegmentDay = null;
+    private boolean flushScheduled = false;
+    private String lastCompactedDay = null;
+
+    private long appended = 0;
+    private long flushes = 0;
+
+    private final Runnable flushRunnable = () -> {
+        synchronized (this) {
+            flushScheduled = false;
+            flushLocked();
+        }
+    };
+
+    public static UsageJournal getInstance(Context context) {
+        UsageJournal journal = instance;
+        if (journal == null) {
+            synchronized (UsageJournal.class) {
+                journal = instance;
+                if (journal == null) {
+                    journal = new UsageJournal(new File(context.getApplicationContext().getFilesDir(), DIR_NAME),
+                            DetectionThread.getHandler());
+                    instance = journal;
+                }
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * @param handler 用于延迟写盘和压缩, 为 null 时只在缓冲满或 flush() 时写盘, 不自动压缩
+     */
+    UsageJournal(File dir, Handler handler) {
+        this.dir = dir;
+        this.handler = handler;
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Cannot create " + dir);
+        }
+        loadPackages();
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 追加一条记录 (写入缓冲), 按时间顺序调用
+     */
+    public synchronized void append(int type, String packageName, long timestamp) {
+        String day = dayFormat.format(new Date(timestamp));
+        if (!day.equals(batchDay)) {
+            // 跨天 (或启动后第一条): 先把前一天的缓冲写入它自己的分段, 再顺便压缩已结束的月份
+            flushLocked();
+            scheduleCompaction(day);
+        }
+        batchDay = day;
+        int packageId = packageName != null ? intern(packageName) : NO_PACKAGE;
+        batch.putLong(timestamp);
+        batch.putInt(packageId);
+        batch.putShort((short) type);
+        batch.putShort((short) 0);
+        appended++;
+        if (!batch.hasRemaining()) {
+            flushLocked();
+        } else if (!flushScheduled && handler != null) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * 立即写盘 (熄屏/进程可能被回收前调用)
+     */
+    public synchronized void flush() {
+        flushLocked();
+    }
+
+    private void flushLocked() {
+        if (batch.position() == 0) {
+            return;
+        }
+        batch.flip();
+        File segment = new File(dir, SEGMENT_PREFIX + batchDay + SEGMENT_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            FileChannel channel = out.getChannel();
+            if (!batchDay.equals(checkedSegmentDay)) {
+                // 末尾半条记录 (写入时进程被杀): 先截掉, 否则之后追加的记录全部错位
+                long size = channel.size();
+                long torn = size % RECORD_SIZE;
+                if (torn != 0) {
+                    Log.w(TAG, "⚠️ " + segment.getName() + " has " + torn + " trailing bytes, truncated");
+                    channel.truncate(size - torn);
+                }
+                checkedSegmentDay = batchDay;
+            }
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            flushes++;
+        } catch (IOException e) {
+            Log.e(TAG, "Append to " + segment.getName() + " failed", e);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private int intern(String packageName) {
+        Integer id = packageIds.get(packageName);
+        if (id != null) {
+            return id;
+        }
+        int newId = packageNames.size();
+        // 驻留表先落盘, 保证分段中的 id 总能解析
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(dir, PACKAGES_FILE), true))) {
+            out.writeUTF(packageName);
+        } catch (IOException e) {
+            Log.e(TAG, "Persist package name failed", e);
+        }
+        packageNames.add(packageName);
+        packageIds.put(packageName, newId);
+        return newId;
+    }
+
+    private void loadPackages() {
+        File file = new File(dir, PACKAGES_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (in.available() > 0) {
+                String name = in.readUTF();
+                packageIds.put(name, packageNames.size());
+                packageNames.add(name);
+            }
+        } catch (IOException e) {
+            // 末尾半条记录 (写入时进程被杀): 之前的 id 仍然有效, 重写文件去掉残留, 否则后续追加会错位
+            Log.w(TAG, "Package table truncated at " + packageNames.size(), e);
+            rewritePackages(file);
+        }
+    }
+
+    private void rewritePackages(File file) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (String name : packageNames) {
+                out.writeUTF(name);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Rewrite package table failed", e);
+        }
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * 包名 id 对应的包名, 未知时返回 null
+     */
+    public synchronized String getPackageName(int packageId) {
+        return packageId >= 0 && packageId < packageNames.size() ? packageNames.get(packageId) : null;
+    }
+
+    /**
+     * 包名对应的 id, 从未记录过时返回 NO_PACKAGE
+     */
+    public synchronized int getPackageId(String packageName) {
+        Integer id = packageIds.get(packageName);
+        return id != null ? id : NO_PACKAGE;
+    }
+
+    /**
+     * 按时间顺序访问 [fromMillis, toMillis) 内的记录 (包括尚未写盘的缓冲)
+     */
+    public void scan(long fromMillis, long toMillis, Visitor visitor) {
+        // 读锁只排斥压缩, 多个扫描 (例如按天并行的汇总) 可以同时进行
+        filesLock.readLock().lock();
+        try {
+            List<File> overlapping = new ArrayList<>();
+            synchronized (this) {
+                flushLocked();
+                String fromDay = dayFormat.format(new Date(fromMillis));
+                String toDay = dayFormat.format(new Date(Math.max(fromMillis, toMillis - 1)));
+                for (File file : listFiles()) {
+                    String key = keyOf(file);
+                    boolean pack = file.getName().startsWith(PACK_PREFIX);
+                    boolean overlaps = pack
+                            ? key.compareTo(fromDay.substring(0, 6)) >= 0 && key.compareTo(toDay.substring(0, 6)) <= 0
+                            : key.compareTo(fromDay) >= 0 && key.compareTo(toDay) <= 0;
+                    if (overlaps) {
+                        overlapping.add(file);
+                    }
+                }
+            }
+            for (File file : overlapping) {
+                scanFile(file, file.getName().startsWith(PACK_PREFIX), fromMillis, toMillis, visitor);
+            }
+        } finally {
+            filesLock.readLock().unlock();
+        }
+    }
+
+    private void scanFile(File file, boolean sorted, long fromMillis, long toMillis, Visitor visitor) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            // 写入时被中断留下的半条记录不读取
+            long count = channel.size() / RECORD_SIZE;
+            if (count == 0) {
+                return;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, count * RECORD_SIZE);
+            // 月度包已按时间排序, 二分定位起点; 日分段很小, 直接顺序扫描 (时钟回拨时也不会漏记录)
+            long index = sorted ? lowerBound(map, count, fromMillis) : 0;
+            for (; index < count; index++) {
+                int offset = (int) (index * RECORD_SIZE);
+                long timestamp = map.getLong(offset);
+                if (timestamp >= toMillis) {
+                    if (sorted) {
+                        break;
+                    }
+                    continue;
+                }
+                if (timestamp >= fromMillis) {
+                    visitor.onRecord(timestamp, map.getInt(offset + 8), map.getShort(offset + 12));
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Scan " + file.getName() + " failed", e);
+        }
+    }
+
+    private static long lowerBound(ByteBuffer map, long count, long fromMillis) {
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (map.getLong((int) (mid * RECORD_SIZE)) < fromMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // ==================== 导入 ====================
+
+    /**
+     * 导入某一天的历史记录 (按时间排序, 都属于 day 这一天, 本地日期 yyyyMMdd)
+     * 该天已有的导入记录会被整体替换, 实时写入的记录保留, 所以重复导入不会重复计数;
+     * 上次导入后该天已被压缩进月度包时, 先从月度包中去掉这一天的导入记录
+     */
+    public int importDay(String day, long[] timestamps, String[] packageNames, int[] types, int count) {
+        filesLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                flushLocked();
+                if (!stripImportedFromPack(day)) {
+                    return 0;
+                }
+                File segment = new File(dir, SEGMENT_PREFIX + day + SEGMENT_SUFFIX);
+                long existing = segment.exists() ? segment.length() / RECORD_SIZE : 0;
+                long[] mergedTimestamps = new long[(int) existing + count];
+                long[] mergedPayloads = new long[(int) existing + count];
+                int size = 0;
+                if (existing > 0) {
+                    try (DataInputStream in = new DataInputStream(
+                            new BufferedInputStream(new FileInputStream(segment)))) {
+                        for (long i = 0; i < existing; i++) {
+                            long timestamp = in.readLong();
+                            long payload = in.readLong();
+                            if ((short) payload != FLAG_IMPORTED) {
+                                mergedTimestamps[size] = timestamp;
+                                mergedPayloads[size] = payload;
+                                size++;
+                            }
+                        }
+                    } catch (IOException e) {
+                        Log.e(TAG, "Read " + segment.getName() + " failed, import skipped", e);
+                        return 0;
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    int packageId = packageNames[i] != null ? intern(packageNames[i]) : NO_PACKAGE;
+                    mergedTimestamps[size] = timestamps[i];
+                    mergedPayloads[size] = ((long) packageId << 32) | ((types[i] & 0xFFFFL) << 16) | FLAG_IMPORTED;
+                    size++;
+                }
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Long.compare(mergedTimestamps[a], mergedTimestamps[b]));
+
+                File tmp = new File(dir, segment.getName() + ".tmp");
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                    for (Integer index : order) {
+                        out.writeLong(mergedTimestamps[index]);
+                        out.writeLong(mergedPayloads[index]);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Write " + tmp.getName() + " failed", e);
+                    tmp.delete();
+                    return 0;
+                }
+                if (!tmp.renameTo(segment)) {
+                    Log.e(TAG, "Rename " + tmp.getName() + " failed");
+                    tmp.delete();
+                    return 0;
+                }
+                return count;
+            }
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 从 day 所在月份的月度包中删除这一天的导入记录; 调用方持有写锁和对象锁
+     * @return 失败时返回 false (此时不能导入, 否则会重复计数)
+     */
+    private boolean stripImportedFromPack(String day) {
+        File pack = new File(dir, PACK_PREFIX + day.substring(0, 6) + PACK_SUFFIX);
+        if (!pack.exists()) {
+            return true;
+        }
+        long from;
+        long to;
+        try {
+            from = dayFormat.parse(day).getTime();
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(from);
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            to = calendar.getTimeInMillis();
+        } catch (ParseException e) {
+            Log.e(TAG, "Bad day key " + day, e);
+            return false;
+        }
+        long records = pack.length() / RECORD_SIZE;
+        long[] timestamps = new long[(int) records];
+        long[] payloads = new long[(int) records];
+        int kept = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(pack)))) {
+            for (long i = 0; i < records; i++) {
+                long timestamp = in.readLong();
+                long payload = in.readLong();
+                if ((short) payload == FLAG_IMPORTED && timestamp >= from && timestamp < to) {
+                    continue;
+                }
+                timestamps[kept] = timestamp;
+                payloads[kept] = payload;
+                kept++;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Read " + pack.getName() + " failed, import of " + day + " skipped", e);
+            return false;
+        }
+        if (kept == records) {
+            return true;
+        }
+        // 月度包本身有序, 删除后仍然有序
+        File tmp = new File(dir, pack.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            for (int i = 0; i < kept; i++) {
+                out.writeLong(timestamps[i]);
+                out.writeLong(payloads[i]);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Write " + tmp.getName() + " failed", e);
+            tmp.delete();
+            return false;
+        }
+        if (!tmp.renameTo(pack)) {
+            Log.e(TAG, "Rename " + tmp.getName() + " failed");
+            tmp.delete();
+            return false;
+        }
+        Log.d(TAG, "♻️ Removed " + (records - kept) + " imported records of " + day + " from " + pack.getName());
+        return true;
+    }
+
+    // ==================== 压缩 ====================
+
+    private void scheduleCompaction(String today) {
+        if (today.equals(lastCompactedDay)) {
+            return;
+        }
+        lastCompactedDay = today;
+        // 调用方持有对象锁, 压缩需要先取写锁, 只能异步执行
+        if (handler != null) {
+            handler.post(() -> compactBefore(today.substring(0, 6)));
+        }
+    }
+
+    /**
+     * 把早于 month (yyyyMM) 的日分段合并为月度包: 按时间排序, 去掉连续重复的记录
+     */
+    void compactBefore(String month) {
+        filesLock.writeLock().lock();
+        try {
+            compactBeforeLocked(month);
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+    }
+
+    private void compactBeforeLocked(String month) {
+        List<File> files;
+        synchronized (this) {
+            flushLocked();
+            files = listFiles();
+        }
+        TreeMap<String, List<File>> byMonth = new TreeMap<>();
+        for (File file : files) {
+            if (file.getName().startsWith(SEGMENT_PREFIX)) {
+                String fileMonth = keyOf(file).substring(0, 6);
+                if (fileMonth.compareTo(month) < 0) {
+                    List<File> monthFiles = byMonth.get(fileMonth);
+                    if (monthFiles == null) {
+                        monthFiles = new ArrayList<>();
+                        byMonth.put(fileMonth, monthFiles);
+                    }
+                    monthFiles.add(file);
+                }
+            }
+        }
+        for (String fileMonth : byMonth.keySet()) {
+            compactMonth(fileMonth, byMonth.get(fileMonth));
+        }
+    }
+
+    private void compactMonth(String month, List<File> segments) {
+        File pack = new File(dir, PACK_PREFIX + month + PACK_SUFFIX);
+        List<File> sources = new ArrayList<>(segments);
+        if (pack.exists()) {
+            sources.add(pack);
+        }
+        long total = 0;
+        for (File file : sources) {
+            total += file.length() / RECORD_SIZE;
+        }
+        // 一个月通常只有几千条记录, 在内存中排序
+        long[] timestamps = new long[(int) total];
+        long[] payloads = new long[(int) total];
+        int count = 0;
+        for (File file : sources) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                long records = file.length() / RECORD_SIZE;
+                for (long i = 0; i < records; i++) {
+                    timestamps[count] = in.readLong();
+                    payloads[count] = in.readLong();
+                    count++;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Read " + file.getName() + " failed, compaction of " + month + " skipped", e);
+                return;
+            }
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+
+        File tmp = new File(dir, pack.getName() + ".tmp");
+        int kept = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            long previous = Long.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                long payload = payloads[order[i]];
+                // 连续两条相同的记录 (同一应用重复进入前台, 重复熄屏) 只保留第一条
+                if (payload == previous) {
+                    continue;
+                }
+                out.writeLong(timestamps[order[i]]);
+                out.writeLong(payload);
+                previous = payload;
+                kept++;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Write " + tmp.getName() + " failed", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(pack)) {
+            Log.e(TAG, "Rename " + tmp.getName() + " failed");
+            tmp.delete();
+            return;
+        }
+        for (File segment : segments) {
+            segment.delete();
+        }
+        Log.d(TAG, "🗜️ Compacted " + month + ": " + count + " -> " + kept + " records");
+    }
+
+    // ==================== 统计 ====================
+
+    public synchronized long getAppended() {
+        return appended;
+    }
+
+    public synchronized long getFlushes() {
+        return flushes;
+    }
+
+    public synchronized int getPackageCount() {
+        return packageNames.size();
+    }
+
+    /**
+     * 磁盘占用 (分段 + 月度包 + 驻留表)
+     */
+    public synchronized long getBytesOnDisk() {
+        long bytes = new File(dir, PACKAGES_FILE).length();
+        for (File file : listFiles()) {
+            bytes += file.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * 最早有记录的日期 (yyyyMMdd), 月度包按该月 1 日计; 没有记录时返回 null
+     */
+    public synchronized String getFirstDayKey() {
+        List<File> files = listFiles();
+        if (files.isEmpty()) {
+            return null;
+        }
+        String key = keyOf(files.get(0));
+        return key.length() == 6 ? key + "01" : key;
+    }
+
+    /**
+     * 最早一条记录的时间, 没有记录时返回 -1
+     */
+    public synchronized long getFirstTimestamp() {
+        flushLocked();
+        for (File file : listFiles()) {
+            if (file.length() < RECORD_SIZE) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                // 日分段中按追加顺序, 第一条即最早
+                return in.readLong();
+            } catch (IOException e) {
+                Log.e(TAG, "Read " + file.getName() + " failed", e);
+            }
+        }
+        return -1;
+    }
+
+    public synchronized int getFileCount() {
+        return listFiles().size();
+    }
+
+    /**
+     * 所有分段和月度包, 按日期排序 (同一月份的月度包排在日分段之前)
+     */
+    private List<File> listFiles() {
+        List<File> result = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return result;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if ((name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    || (name.startsWith(PACK_PREFIX) && name.endsWith(PACK_SUFFIX))) {
+                result.add(file);
+            }
+        }
+        result.sort((a, b) -> keyOf(a).compareTo(keyOf(b)));
+        return result;
+    }
+
+    /**
+     * 日分段为 yyyyMMdd, 月度包为 yyyyMM
+     */
+    private static String keyOf(File file) {
+        String name = file.getName();
+        if (name.startsWith(PACK_PREFIX)) {
+            return name.substring(PACK_PREFIX.length(), name.length() - PACK_SUFFIX.length());
+        }
+        return name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+    }
+}
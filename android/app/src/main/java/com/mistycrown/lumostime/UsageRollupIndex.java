@@ -0,0 +1,493 @@
+/**
+ * @file UsageRollupIndex.java
+ * @input UsageJournal (sealed past days + live tail of today)
+ * @output Per-day, per-package foreground totals and switch counts
+ * @pos Native Data Store
+ * @description Persistent daily rollups so range queries such as "last 90 days per app" cost O(days) instead of a
+ * rescan of raw events. A day is sealed (computed once from the journal and appended to disk) after it closes;
+ * today is kept up to date incrementally by consuming only the journal records written since the last query.
+ * Includes a full rebuild and a consistency check that recomputes sealed days from raw events.
+ */
+package com.mistycrown.lumostime;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 每日使用汇总索引
+ * 方法均为 synchronized; 首次查询可能需要补算多天, 应在后台线程调用
+ */
+public class UsageRollupIndex {
+    private static final String TAG = "UsageRollupIndex";
+    private static final String FILE_NAME = "usage_rollups.bin";
+    private static final int FILE_MAGIC = 0x4C524F4C; // "LROL"
+    private static final int FILE_FORMAT = 1;
+    // 最近这段时间内的日志可能还在写入缓冲/检测线程上, 实时部分暂不消费, 按进行中的会话估算
+    private static final long LIVE_GRACE_MS = 2000;
+
+    private static volatile UsageRollupIndex instance = null;
+
+    /**
+     * 一天的汇总 (不可变), 包名为 UsageJournal 的驻留 id
+     */
+    private static final class DayRollup {
+        final int day;
+        final int[] packageIds;
+        final long[] totalMs;
+        final int[] switches;
+
+        DayRollup(int day, int[] packageIds, long[] totalMs, int[] switches) {
+            this.day = day;
+            this.packageIds = packageIds;
+            this.totalMs = totalMs;
+            this.switches = switches;
+        }
+    }
+
+    /**
+     * 范围查询结果, 平行数组; dailyMs[i * days.length + d] 为 packages[i] 在 days[d] 的时长
+     */
+    public static final class Result {
+        public final int[] days;
+        public final String[] packages;
+        public final long[] totalMs;
+        public final int[] switches;
+        public final long[] dailyMs;
+        public final int sealedDays;
+
+        Result(int[] days, String[] packages, long[] totalMs, int[] switches, long[] dailyMs, int sealedDays) {
+            this.days = days;
+            this.packages = packages;
+            this.totalMs = totalMs;
+            this.switches = switches;
+            this.dailyMs = dailyMs;
+            this.sealedDays = sealedDays;
+        }
+    }
+
+    /**
+     * 一致性检查中不一致的一天
+     */
+    public static final class Mismatch {
+        public final int day;
+        public final String packageName;
+        public final long indexedMs;
+        public final long rawMs;
+        public final int indexedSwitches;
+        public final int rawSwitches;
+
+        Mismatch(int day, String packageName, long indexedMs, long rawMs, int indexedSwitches, int rawSwitches) {
+            this.day = day;
+            this.packageName = packageName;
+            this.indexedMs = indexedMs;
+            this.rawMs = rawMs;
+            this.indexedSwitches = indexedSwitches;
+            this.rawSwitches = rawSwitches;
+        }
+    }
+
+    /**
+     * 一天内的累计: 前台区间裁剪到 [dayStart, dayEnd), 进入前台的时刻在这一天内才计一次切换
+     */
+    private static final class DayAccumulator extends UsageSummary.Pairing {
+        final int day;
+        final long dayStart;
+        final long dayEnd;
+        final HashMap<String, long[]> totals = new HashMap<>();
+        final HashMap<String, int[]> switches = new HashMap<>();
+
+        DayAccumulator(int day) {
+            this.day = day;
+            this.dayStart = dayStart(day);
+            this.dayEnd = dayStart(nextDay(day));
+        }
+
+        @Override
+        void onOpen(String packageName, long timestamp) {
+            if (timestamp >= dayStart && timestamp < dayEnd) {
+                int[] count = switches.get(packageName);
+                if (count == null) {
+                    switches.put(packageName, new int[] { 1 });
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+
+        @Override
+        void onInterval(String packageName, long from, long to) {
+            long clipped = Math.min(to, dayEnd) - Math.max(from, dayStart);
+            if (clipped > 0) {
+                long[] total = totals.get(packageName);
+                if (total == null) {
+                    totals.put(packageName, new long[] { clipped });
+                } else {
+                    total[0] += clipped;
+                }
+            }
+        }
+
+        long totalOf(String packageName) {
+            long[] total = totals.get(packageName);
+            return total != null ? total[0] : 0;
+        }
+
+        int switchesOf(String packageName) {
+            int[] count = switches.get(packageName);
+            return count != null ? count[0] : 0;
+        }
+    }
+
+    private final File file;
+    private final UsageJournal journal;
+    private final UsageSummary.EventSource events;
+    // day (yyyyMMdd) -> 已封存的汇总
+    private final TreeMap<Integer, DayRollup> sealed = new TreeMap<>();
+    // 今天的实时累计, 只消费 liveScannedUntil 之后的日志
+    private DayAccumulator live = null;
+    private long liveScannedUntil = 0;
+
+    public static UsageRollupIndex getInstance(Context context) {
+        UsageRollupIndex index = instance;
+        if (index == null) {
+            synchronized (UsageRollupIndex.class) {
+                index = instance;
+                if (index == null) {
+                    index = new UsageRollupIndex(context.getApplicationContext());
+                    instance = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private UsageRollupIndex(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        this.journal = UsageJournal.getInstance(context);
+        this.events = UsageSummary.journalSource(context);
+        load();
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * [fromDay, toDay] (yyyyMMdd, 含两端) 内每个应用的时长与切换次数
+     */
+    public synchronized Result query(int fromDay, int toDay) {
+        int today = dayKey(System.currentTimeMillis());
+        sealUntil(today);
+
+        List<Integer> dayList = new ArrayList<>();
+        for (int day = fromDay; day <= toDay; day = nextDay(day)) {
+            dayList.add(day);
+        }
+        int dayCount = dayList.size();
+        HashMap<String, long[]> daily = new HashMap<>();
+        HashMap<String, int[]> switches = new HashMap<>();
+        int sealedDays = 0;
+        for (int d = 0; d < dayCount; d++) {
+            int day = dayList.get(d);
+            DayRollup rollup = sealed.get(day);
+            if (rollup != null) {
+                sealedDays++;
+                for (int i = 0; i < rollup.packageIds.length; i++) {
+                    String packageName = journal.getPackageName(rollup.packageIds[i]);
+                    if (packageName != null) {
+                        accumulate(daily, switches, packageName, dayCount, d, rollup.totalMs[i], rollup.switches[i]);
+                    }
+                }
+            } else if (day == today) {
+                DayAccumulator current = refreshLive(today);
+                long now = System.currentTimeMillis();
+                for (String packageName : current.totals.keySet()) {
+                    accumulate(daily, switches, packageName, dayCount, d, current.totalOf(packageName), 0);
+                }
+                for (String packageName : current.switches.keySet()) {
+                    accumulate(daily, switches, packageName, dayCount, d, 0, current.switchesOf(packageName));
+                }
+                // 进行中的会话计到当前时间 (不写入累计)
+                if (current.current != null) {
+                    long open = now - Math.max(current.since, current.dayStart);
+                    accumulate(daily, switches, current.current, dayCount, d, Math.max(0, open), 0);
+                }
+            }
+        }
+
+        String[] packages = daily.keySet().toArray(new String[0]);
+        long[] totals = new long[packages.length];
+        for (int i = 0; i < packages.length; i++) {
+            for (long value : daily.get(packages[i])) {
+                totals[i] += value;
+            }
+        }
+        Integer[] order = new Integer[packages.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(totals[b], totals[a]));
+
+        String[] sortedPackages = new String[packages.length];
+        long[] sortedTotals = new long[packages.length];
+        int[] sortedSwitches = new int[packages.length];
+        long[] dailyMs = new long[packages.length * dayCount];
+        for (int i = 0; i < order.length; i++) {
+            String packageName = packages[order[i]];
+            sortedPackages[i] = packageName;
+            sortedTotals[i] = totals[order[i]];
+            sortedSwitches[i] = switches.get(packageName)[0];
+            System.arraycopy(daily.get(packageName), 0, dailyMs, i * dayCount, dayCount);
+        }
+        int[] days = new int[dayCount];
+        for (int d = 0; d < dayCount; d++) {
+            days[d] = dayList.get(d);
+        }
+        return new Result(days, sortedPackages, sortedTotals, sortedSwitches, dailyMs, sealedDays);
+    }
+
+    public synchronized int getSealedDayCount() {
+        return sealed.size();
+    }
+
+    private static void accumulate(HashMap<String, long[]> daily, HashMap<String, int[]> switches,
+            String packageName, int dayCount, int dayIndex, long durationMs, int switchCount) {
+        long[] row = daily.get(packageName);
+        if (row == null) {
+            row = new long[dayCount];
+            daily.put(packageName, row);
+            switches.put(packageName, new int[1]);
+        }
+        row[dayIndex] += durationMs;
+        switches.get(packageName)[0] += switchCount;
+    }
+
+    /**
+     * 今天的实时部分: 只读取上次之后新写入的日志 (留出 LIVE_GRACE_MS 等待缓冲中的记录)
+     */
+    private DayAccumulator refreshLive(int today) {
+        if (live == null || live.day != today) {
+            live = new DayAccumulator(today);
+            liveScannedUntil = live.dayStart - UsageSummary.LOOKBACK_MS;
+        }
+        long until = Math.max(liveScannedUntil, System.currentTimeMillis() - LIVE_GRACE_MS);
+        if (until > liveScannedUntil) {
+            events.read(liveScannedUntil, until, live);
+            liveScannedUntil = until;
+        }
+        return live;
+    }
+
+    // ==================== 封存 / 重建 / 校验 ====================
+
+    /**
+     * 封存 today 之前所有尚未封存、日志中有数据的日期
+     */
+    private void sealUntil(int today) {
+        String firstKey = journal.getFirstDayKey();
+        if (firstKey == null) {
+            return;
+        }
+        int day = Integer.parseInt(firstKey);
+        if (!sealed.isEmpty()) {
+            day = Math.max(day, nextDay(sealed.lastKey()));
+        }
+        int count = 0;
+        for (; day < today; day = nextDay(day)) {
+            seal(compute(day));
+            count++;
+        }
+        if (count > 0) {
+            Log.d(TAG, "📦 Sealed " + count + " day(s), " + sealed.size() + " in index");
+        }
+    }
+
+    private DayAccumulator compute(int day) {
+        DayAccumulator accumulator = new DayAccumulator(day);
+        events.read(accumulator.dayStart - UsageSummary.LOOKBACK_MS, accumulator.dayEnd, accumulator);
+        accumulator.close(accumulator.dayEnd);
+        return accumulator;
+    }
+
+    private void seal(DayAccumulator accumulator) {
+        List<String> packages = new ArrayList<>(accumulator.totals.keySet());
+        for (String packageName : accumulator.switches.keySet()) {
+            if (!accumulator.totals.containsKey(packageName)) {
+                packages.add(packageName);
+            }
+        }
+        int[] ids = new int[packages.size()];
+        long[] totals = new long[packages.size()];
+        int[] switches = new int[packages.size()];
+        for (int i = 0; i < ids.length; i++) {
+            String packageName = packages.get(i);
+            ids[i] = journal.getPackageId(packageName);
+            totals[i] = accumulator.totalOf(packageName);
+            switches[i] = accumulator.switchesOf(packageName);
+        }
+        DayRollup rollup = new DayRollup(accumulator.day, ids, totals, switches);
+        append(rollup);
+        sealed.put(rollup.day, rollup);
+    }
+
+    /**
+     * 丢弃索引, 从日志重新计算所有已结束的日期
+     */
+    public synchronized int rebuild() {
+        sealed.clear();
+        live = null;
+        if (file.exists() && !file.delete()) {
+            Log.e(TAG, "Cannot delete " + file.getName());
+        }
+        sealUntil(dayKey(System.currentTimeMillis()));
+        return sealed.size();
+    }
+
+    /**
+     * 用原始日志重新计算 [fromDay, toDay] 内已封存的日期, 返回不一致的项
+     */
+    public synchronized List<Mismatch> verify(int fromDay, int toDay) {
+        List<Mismatch> mismatches = new ArrayList<>();
+        for (Map.Entry<Integer, DayRollup> entry : sealed.subMap(fromDay, true, toDay, true).entrySet()) {
+            DayRollup rollup = entry.getValue();
+            DayAccumulator raw = compute(rollup.day);
+            HashMap<String, Integer> indexed = new HashMap<>();
+            for (int i = 0; i < rollup.packageIds.length; i++) {
+                String packageName = journal.getPackageName(rollup.packageIds[i]);
+                indexed.put(packageName, i);
+                if (raw.totalOf(packageName) != rollup.totalMs[i]
+                        || raw.switchesOf(packageName) != rollup.switches[i]) {
+                    mismatches.add(new Mismatch(rollup.day, packageName, rollup.totalMs[i],
+                            raw.totalOf(packageName), rollup.switches[i], raw.switchesOf(packageName)));
+                }
+            }
+            List<String> rawPackages = new ArrayList<>(raw.totals.keySet());
+            rawPackages.addAll(raw.switches.keySet());
+            for (String packageName : rawPackages) {
+                if (!indexed.containsKey(packageName)) {
+                    indexed.put(packageName, -1);
+                    mismatches.add(new Mismatch(rollup.day, packageName, 0, raw.totalOf(packageName), 0,
+                            raw.switchesOf(packageName)));
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    // ==================== 持久化 ====================
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        boolean truncated = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_FORMAT) {
+                Log.w(TAG, "Unknown rollup file, rebuilding lazily");
+                truncated = true;
+            } else {
+                while (in.available() > 0) {
+                    int day = in.readInt();
+                    int count = in.readInt();
+                    int[] ids = new int[count];
+                    long[] totals = new long[count];
+                    int[] switches = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        ids[i] = in.readInt();
+                        totals[i] = in.readLong();
+                        switches[i] = in.readInt();
+                    }
+                    sealed.put(day, new DayRollup(day, ids, totals, switches));
+                }
+            }
+        } catch (EOFException e) {
+            // 封存时进程被杀留下的半个块
+            Log.w(TAG, "Rollup file truncated after " + sealed.size() + " days");
+            truncated = true;
+        } catch (IOException e) {
+            Log.e(TAG, "Load rollups failed", e);
+            truncated = true;
+        }
+        if (truncated) {
+            rewrite();
+        }
+    }
+
+    private void append(DayRollup rollup) {
+        boolean fresh = !file.exists();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            if (fresh) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_FORMAT);
+            }
+            writeDay(out, rollup);
+        } catch (IOException e) {
+            Log.e(TAG, "Append rollup " + rollup.day + " failed", e);
+        }
+    }
+
+    private void rewrite() {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_FORMAT);
+            for (DayRollup rollup : sealed.values()) {
+                writeDay(out, rollup);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Rewrite rollups failed", e);
+        }
+    }
+
+    private static void writeDay(DataOutputStream out, DayRollup rollup) throws IOException {
+        out.writeInt(rollup.day);
+        out.writeInt(rollup.packageIds.length);
+        for (int i = 0; i < rollup.packageIds.length; i++) {
+            out.writeInt(rollup.packageIds[i]);
+            out.writeLong(rollup.totalMs[i]);
+            out.writeInt(rollup.switches[i]);
+        }
+    }
+
+    // ==================== 日期 ====================
+
+    /**
+     * 本地日期 yyyyMMdd
+     */
+    public static int dayKey(long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        return calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100
+                + calendar.get(Calendar.DAY_OF_MONTH);
+    }
+
+    static long dayStart(int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(day / 10000, day / 100 % 100 - 1, day % 100);
+        return calendar.getTimeInMillis();
+    }
+
+    static int nextDay(int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(day / 10000, day / 100 % 100 - 1, day % 100);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return dayKey(calendar.getTimeInMillis());
+    }
+}
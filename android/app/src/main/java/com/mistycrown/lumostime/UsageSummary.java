@@ -0,0 +1,400 @@
+/**
+ * @file UsageSummary.java
+ * @input UsageJournal range scans or UsageStatsManager.queryEvents
+ * @output Per-app, per-bucket (hour/day/week) foreground durations as parallel arrays
+ * @pos Native Logic Layer
+ * @description Native aggregation behind AppUsagePlugin.queryUsageSummary. Foreground/background events are paired
+ * into intervals and clipped into time buckets without shipping raw events to JS. The range is split into local days
+ * that are aggregated in parallel on a fork-join pool and merged at the end.
+ */
+package com.mistycrown.lumostime;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 使用时长汇总
+ * 结果中 durationsMs 按包名分行: durationsMs[i * bucketCount + b] 为 packages[i] 在第 b 个时间段的时长
+ */
+public final class UsageSummary {
+    public static final String GRANULARITY_HOUR = "hour";
+    public static final String GRANULARITY_DAY = "day";
+    public static final String GRANULARITY_WEEK = "week";
+
+    public static final String SOURCE_JOURNAL = "journal";
+    public static final String SOURCE_SYSTEM = "system";
+
+    // 每天向前多读一段, 找到跨越午夜的会话起点; 超过这段时间没有任何事件的会话会从该天的零点起算
+    static final long LOOKBACK_MS = 24L * 60 * 60 * 1000;
+
+    // queryEvents 是 IPC, 并行度不宜过高
+    private static final ForkJoinPool POOL =
+            new ForkJoinPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+
+    /** 时间段起点, 第 b 段为 [bucketStarts[b], bucketStarts[b + 1]), 最后一段到 end 为止 */
+    public final long[] bucketStarts;
+    public final String[] packages;
+    public final long[] totalMs;
+    public final long[] durationsMs;
+    public final int days;
+
+    private UsageSummary(long[] bucketStarts, String[] packages, long[] totalMs, long[] durationsMs, int days) {
+        this.bucketStarts = bucketStarts;
+        this.packages = packages;
+        this.totalMs = totalMs;
+        this.durationsMs = durationsMs;
+        this.days = days;
+    }
+
+    public int getBucketCount() {
+        return bucketStarts.length;
+    }
+
+    /**
+     * 统一后的事件, 两种数据源都转换为这几种
+     */
+    interface EventSink {
+        void onForeground(String packageName, long timestamp);
+
+        void onBackground(String packageName, long timestamp);
+
+        // 回到桌面 / 熄屏 / 锁屏: 结束当前会话
+        void onIdle(long timestamp);
+    }
+
+    interface EventSource {
+        void read(long from, long to, EventSink sink);
+    }
+
+    /**
+     * 阻塞计算, 在后台线程调用
+     */
+    public static UsageSummary compute(Context context, long start, long end, String granularity, String source) {
+        EventSource events = SOURCE_SYSTEM.equals(source) ? systemSource(context) : journalSource(context);
+        long[] bucketStarts = buckets(start, end, granularity);
+        long[] dayStarts = buckets(start, end, GRANULARITY_DAY);
+        List<Partial> partials = POOL.invoke(new DayRangeTask(events, bucketStarts, end, dayStarts, 0,
+                dayStarts.length));
+        return merge(partials, bucketStarts, dayStarts.length);
+    }
+
+    // ==================== 时间段 ====================
+
+    /**
+     * 按本地时间对齐的时间段起点; 第一段从 start 开始 (可能不对齐)
+     */
+    static long[] buckets(long start, long end, String granularity) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setFirstDayOfWeek(Calendar.MONDAY);
+        calendar.setTimeInMillis(start);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        int field = Calendar.HOUR_OF_DAY;
+        if (!GRANULARITY_HOUR.equals(granularity)) {
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            field = Calendar.DAY_OF_MONTH;
+            if (GRANULARITY_WEEK.equals(granularity)) {
+                calendar.set(Calendar.DAY_OF_WEEK, Calendar.MONDAY);
+                if (calendar.getTimeInMillis() > start) {
+                    calendar.add(Calendar.WEEK_OF_YEAR, -1);
+                }
+                field = Calendar.WEEK_OF_YEAR;
+            }
+        }
+        ArrayList<Long> starts = new ArrayList<>();
+        starts.add(start);
+        calendar.add(field, 1);
+        while (calendar.getTimeInMillis() < end) {
+            starts.add(calendar.getTimeInMillis());
+            calendar.add(field, 1);
+        }
+        long[] result = new long[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
+
+    // ==================== 按天并行 ====================
+
+    /**
+     * 一天的结果: 只覆盖与这一天重叠的时间段 [firstBucket, firstBucket + width)
+     */
+    private static final class Partial {
+        final int firstBucket;
+        final int width;
+        final HashMap<String, long[]> durations = new HashMap<>();
+
+        Partial(int firstBucket, int width) {
+            this.firstBucket = firstBucket;
+            this.width = width;
+        }
+    }
+
+    private static final class DayRangeTask extends RecursiveTask<List<Partial>> {
+        private final EventSource events;
+        private final long[] bucketStarts;
+        private final long end;
+        private final long[] dayStarts;
+        private final int from;
+        private final int to;
+
+        DayRangeTask(EventSource events, long[] bucketStarts, long end, long[] dayStarts, int from, int to) {
+            this.events = events;
+            this.bucketStarts = bucketStarts;
+            this.end = end;
+            this.dayStarts = dayStarts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Partial> compute() {
+            if (to - from <= 1) {
+                List<Partial> result = new ArrayList<>(1);
+                if (to > from) {
+                    long dayEnd = from + 1 < dayStarts.length ? dayStarts[from + 1] : end;
+                    result.add(aggregateDay(events, bucketStarts, end, dayStarts[from], dayEnd));
+                }
+                return result;
+            }
+            int mid = (from + to) >>> 1;
+            DayRangeTask left = new DayRangeTask(events, bucketStarts, end, dayStarts, from, mid);
+            DayRangeTask right = new DayRangeTask(events, bucketStarts, end, dayStarts, mid, to);
+            left.fork();
+            List<Partial> result = new ArrayList<>(right.compute());
+            result.addAll(left.join());
+            return result;
+        }
+    }
+
+    /**
+     * 配对前台/后台事件, 把 [dayStart, dayEnd) 内的前台时间分配到各时间段
+     */
+    private static Partial aggregateDay(EventSource events, long[] bucketStarts, long end, long dayStart,
+            long dayEnd) {
+        int firstBucket = bucketIndex(bucketStarts, dayStart);
+        int lastBucket = bucketIndex(bucketStarts, dayEnd - 1);
+        Partial partial = new Partial(firstBucket, lastBucket - firstBucket + 1);
+        DayPairing pairing = new DayPairing(partial, bucketStarts, end, dayStart, dayEnd);
+        events.read(dayStart - LOOKBACK_MS, dayEnd, pairing);
+        // 读完后仍在前台的应用计到这一天结束 (今天则到当前时间)
+        pairing.close(Math.min(dayEnd, System.currentTimeMillis()));
+        return partial;
+    }
+
+    /**
+     * 前台/后台事件配对为区间, 供汇总和每日汇总索引共用
+     */
+    abstract static class Pairing implements EventSink {
+        String current = null;
+        long since = 0;
+
+        @Override
+        public void onForeground(String packageName, long timestamp) {
+            if (packageName.equals(current)) {
+                return;
+            }
+            close(timestamp);
+            current = packageName;
+            since = timestamp;
+            onOpen(packageName, timestamp);
+        }
+
+        @Override
+        public void onBackground(String packageName, long timestamp) {
+            // 新应用的 RESUMED 可能早于旧应用的 PAUSED, 只结束当前应用
+            if (packageName.equals(current)) {
+                close(timestamp);
+            }
+        }
+
+        @Override
+        public void onIdle(long timestamp) {
+            close(timestamp);
+        }
+
+        void close(long timestamp) {
+            if (current != null) {
+                onInterval(current, since, timestamp);
+                current = null;
+            }
+        }
+
+        void onOpen(String packageName, long timestamp) {
+        }
+
+        abstract void onInterval(String packageName, long from, long to);
+    }
+
+    private static final class DayPairing extends Pairing {
+        private final Partial partial;
+        private final long[] bucketStarts;
+        private final long end;
+        private final long dayStart;
+        private final long dayEnd;
+
+        DayPairing(Partial partial, long[] bucketStarts, long end, long dayStart, long dayEnd) {
+            this.partial = partial;
+            this.bucketStarts = bucketStarts;
+            this.end = end;
+            this.dayStart = dayStart;
+            this.dayEnd = dayEnd;
+        }
+
+        @Override
+        void onInterval(String packageName, long from, long to) {
+            add(partial, bucketStarts, end, packageName, Math.max(from, dayStart), Math.min(to, dayEnd));
+        }
+    }
+
+    private static void add(Partial partial, long[] bucketStarts, long end, String packageName, long from, long to) {
+        if (to <= from) {
+            return;
+        }
+        long[] row = partial.durations.get(packageName);
+        if (row == null) {
+            row = new long[partial.width];
+            partial.durations.put(packageName, row);
+        }
+        for (int b = bucketIndex(bucketStarts, from); b < bucketStarts.length; b++) {
+            long bucketStart = bucketStarts[b];
+            if (bucketStart >= to) {
+                break;
+            }
+            long bucketEnd = b + 1 < bucketStarts.length ? bucketStarts[b + 1] : end;
+            long overlap = Math.min(to, bucketEnd) - Math.max(from, bucketStart);
+            if (overlap > 0) {
+                row[b - partial.firstBucket] += overlap;
+            }
+        }
+    }
+
+    /**
+     * 包含 timestamp 的时间段下标
+     */
+    private static int bucketIndex(long[] bucketStarts, long timestamp) {
+        int index = Arrays.binarySearch(bucketStarts, timestamp);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return Math.max(0, index);
+    }
+
+    private static UsageSummary merge(List<Partial> partials, long[] bucketStarts, int days) {
+        int bucketCount = bucketStarts.length;
+        HashMap<String, long[]> rows = new HashMap<>();
+        for (Partial partial : partials) {
+            for (Map.Entry<String, long[]> entry : partial.durations.entrySet()) {
+                long[] row = rows.get(entry.getKey());
+                if (row == null) {
+                    row = new long[bucketCount];
+                    rows.put(entry.getKey(), row);
+                }
+                long[] values = entry.getValue();
+                for (int i = 0; i < values.length; i++) {
+                    row[partial.firstBucket + i] += values[i];
+                }
+            }
+        }
+        // 按总时长降序
+        String[] packages = rows.keySet().toArray(new String[0]);
+        long[] unsortedTotals = new long[packages.length];
+        for (int i = 0; i < packages.length; i++) {
+            long total = 0;
+            for (long value : rows.get(packages[i])) {
+                total += value;
+            }
+            unsortedTotals[i] = total;
+        }
+        Integer[] order = new Integer[packages.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unsortedTotals[b], unsortedTotals[a]));
+
+        String[] sortedPackages = new String[packages.length];
+        long[] totals = new long[packages.length];
+        long[] durations = new long[packages.length * bucketCount];
+        for (int i = 0; i < order.length; i++) {
+            sortedPackages[i] = packages[order[i]];
+            totals[i] = unsortedTotals[order[i]];
+            System.arraycopy(rows.get(sortedPackages[i]), 0, durations, i * bucketCount, bucketCount);
+        }
+        return new UsageSummary(bucketStarts, sortedPackages, totals, durations, days);
+    }
+
+    // ==================== 数据源 ====================
+
+    static EventSource journalSource(Context context) {
+        UsageJournal journal = UsageJournal.getInstance(context);
+        return (from, to, sink) -> journal.scan(from, to, (timestamp, packageId, type) -> {
+            switch (type) {
+                case UsageJournal.TYPE_FOREGROUND:
+                    String packageName = journal.getPackageName(packageId);
+                    if (packageName != null) {
+                        sink.onForeground(packageName, timestamp);
+                    }
+                    break;
+                case UsageJournal.TYPE_BACKGROUND:
+                    String backgroundName = journal.getPackageName(packageId);
+                    if (backgroundName != null) {
+                        sink.onBackground(backgroundName, timestamp);
+                    }
+                    break;
+                case UsageJournal.TYPE_HOME:
+                case UsageJournal.TYPE_SCREEN_OFF:
+                    sink.onIdle(timestamp);
+                    break;
+                default:
+                    break;
+            }
+        });
+    }
+
+    private static EventSource systemSource(Context context) {
+        UsageStatsManager usageStatsManager =
+                (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
+        PackageMetadataCache metadata = PackageMetadataCache.getInstance(context);
+        return (from, to, sink) -> {
+            UsageEvents usageEvents = usageStatsManager.queryEvents(from, to);
+            if (usageEvents == null) {
+                return;
+            }
+            UsageEvents.Event event = new UsageEvents.Event();
+            while (usageEvents.hasNextEvent()) {
+                usageEvents.getNextEvent(event);
+                switch (event.getEventType()) {
+                    case UsageEvents.Event.MOVE_TO_FOREGROUND:
+                        // 桌面不算使用时间, 与日志中的 TYPE_HOME 一致
+                        if (metadata.isHomeApp(event.getPackageName())) {
+                            sink.onIdle(event.getTimeStamp());
+                        } else {
+                            sink.onForeground(event.getPackageName(), event.getTimeStamp());
+                        }
+                        break;
+                    case UsageEvents.Event.MOVE_TO_BACKGROUND:
+                        sink.onBackground(event.getPackageName(), event.getTimeStamp());
+                        break;
+                    case UsageEvents.Event.SCREEN_NON_INTERACTIVE:
+                    case UsageEvents.Event.KEYGUARD_SHOWN:
+                    case UsageEvents.Event.DEVICE_SHUTDOWN:
+                        sink.onIdle(event.getTimeStamp());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        };
+    }
+}
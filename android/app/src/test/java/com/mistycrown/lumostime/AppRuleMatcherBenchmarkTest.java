@@ -0,0 +1,79 @@
+package com.mistycrown.lumostime;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import org.junit.Test;
+
+/**
+ * 规则匹配微基准: 1000 条规则 (精确/前缀/通配/时间段混合) 下单次匹配的耗时
+ * 在主机 JVM 上运行, 耗时写在断言信息中; 断言只防止明显的退化 (例如退化为线性扫描 + 分配)
+ */
+public class AppRuleMatcherBenchmarkTest {
+
+    private static final int RULE_COUNT = 1000;
+    private static final int WARMUP_ROUNDS = 200_000;
+    private static final int MEASURE_ROUNDS = 1_000_000;
+    // 宽松上限, 避免在慢速 CI 上误报
+    private static final long MAX_NANOS_PER_MATCH = 20_000;
+
+    private static List<AppRule> buildRules() {
+        List<AppRule> rules = new ArrayList<>(RULE_COUNT);
+        for (int i = 0; i < RULE_COUNT; i++) {
+            String id = "r" + i;
+            switch (i % 10) {
+                case 0:
+                    rules.add(new AppRule(id, "com.vendor" + i + ".*", "a" + i, "", AppRule.ALL_DAY, AppRule.ALL_DAY,
+                            AppRule.ALL_WEEKDAYS, 0));
+                    break;
+                case 1:
+                    rules.add(new AppRule(id, "com.*.game" + i, "a" + i, "", AppRule.ALL_DAY, AppRule.ALL_DAY,
+                            AppRule.ALL_WEEKDAYS, 0));
+                    break;
+                case 2:
+                    rules.add(new AppRule(id, "com.example.app" + i, "a" + i, "", 9 * 60, 18 * 60, 0x1F, 1));
+                    break;
+                default:
+                    rules.add(new AppRule(id, "com.example.app" + i, "a" + i, "", AppRule.ALL_DAY, AppRule.ALL_DAY,
+                            AppRule.ALL_WEEKDAYS, 0));
+                    break;
+            }
+        }
+        return rules;
+    }
+
+    @Test
+    public void matchCostWithThousandRules() throws Exception {
+        AppRuleMatcher matcher = AppRuleMatcher.compile(buildRules(), TimeZone.getTimeZone("UTC"));
+        assertEquals(RULE_COUNT, matcher.size());
+
+        // 命中精确 / 命中前缀 / 命中通配 / 未命中
+        String[] packages = {
+                "com.example.app5", "com.vendor30.reader", "com.supercell.game41", "org.unknown.app",
+                "com.example.app12", "com.vendor990.x", "com.example.app999", "com.android.settings"
+        };
+        long now = 1704101400000L;
+
+        int hits = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            if (matcher.match(packages[i & 7], now) != null) {
+                hits++;
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            if (matcher.match(packages[i & 7], now) != null) {
+                hits++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long nanosPerMatch = elapsed / MEASURE_ROUNDS;
+
+        String measured = RULE_COUNT + " rules, " + nanosPerMatch + " ns/match";
+        assertTrue("no rule matched: " + measured, hits > 0);
+        assertTrue("match too slow: " + measured, nanosPerMatch < MAX_NANOS_PER_MATCH);
+    }
+}
@@ -0,0 +1,114 @@
+package com.mistycrown.lumostime;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TimeZone;
+import org.junit.Test;
+
+public class AppRuleMatcherTest {
+
+    private static final int MONDAY = 1;
+    private static final int SUNDAY = 1 << 6;
+
+    private static AppRule rule(String id, String pattern, int start, int end, int weekdays, int priority) {
+        return new AppRule(id, pattern, "act-" + id, "", start, end, weekdays, priority);
+    }
+
+    private static AppRule rule(String id, String pattern) {
+        return rule(id, pattern, AppRule.ALL_DAY, AppRule.ALL_DAY, AppRule.ALL_WEEKDAYS, 0);
+    }
+
+    @Test
+    public void exactMatch() throws Exception {
+        AppRuleMatcher matcher = AppRuleMatcher.compile(Arrays.asList(rule("a", "com.tencent.mm")));
+        assertEquals("a", matcher.match("com.tencent.mm", 600, MONDAY).id);
+        assertNull(matcher.match("com.tencent.mobileqq", 600, MONDAY));
+        assertNull(matcher.match("com.tencent", 600, MONDAY));
+    }
+
+    @Test
+    public void prefixPattern() throws Exception {
+        AppRuleMatcher matcher = AppRuleMatcher.compile(Arrays.asList(rule("tencent", "com.tencent.*")));
+        assertEquals("tencent", matcher.match("com.tencent.mm", 600, MONDAY).id);
+        assertEquals("tencent", matcher.match("com.tencent.", 600, MONDAY).id);
+        assertNull(matcher.match("com.tencentx", 600, MONDAY));
+        assertNull(matcher.match("com.ten", 600, MONDAY));
+    }
+
+    @Test
+    public void moreSpecificRuleWinsOnEqualPriority() throws Exception {
+        AppRuleMatcher matcher = AppRuleMatcher.compile(Arrays.asList(
+                rule("all", "*"),
+                rule("com", "com.*"),
+                rule("tencent", "com.tencent.*"),
+                rule("wechat", "com.tencent.mm")));
+        assertEquals("wechat", matcher.match("com.tencent.mm", 600, MONDAY).id);
+        assertEquals("tencent", matcher.match("com.tencent.mobileqq", 600, MONDAY).id);
+        assertEquals("com", matcher.match("com.android.chrome", 600, MONDAY).id);
+        assertEquals("all", matcher.match("org.mozilla.firefox", 600, MONDAY).id);
+    }
+
+    @Test
+    public void higherPriorityBeatsSpecificity() throws Exception {
+        AppRuleMatcher matcher = AppRuleMatcher.compile(Arrays.asList(
+                rule("wechat", "com.tencent.mm"),
+                rule("focus", "com.*", AppRule.ALL_DAY, AppRule.ALL_DAY, AppRule.ALL_WEEKDAYS, 10)));
+        assertEquals("focus", matcher.match("com.tencent.mm", 600, MONDAY).id);
+    }
+
+    @Test
+    public void globWithInnerWildcard() throws Exception {
+        AppRuleMatcher matcher = AppRuleMatcher.compile(Arrays.asList(rule("games", "com.*.game*")));
+        assertEquals("games", matcher.match("com.supercell.gamebox", 600, MONDAY).id);
+        assertNull(matcher.match("com.supercell.box", 600, MONDAY));
+        assertTrue(AppRuleMatcher.globMatches("a*b*c", "aXXbYYc"));
+        assertFalse(AppRuleMatcher.globMatches("a*b*c", "aXXbYY"));
+    }
+
+    @Test
+    public void timeWindowFallsBackToAllDayRule() throws Exception {
+        AppRuleMatcher matcher = AppRuleMatcher.compile(Arrays.asList(
+                rule("default", "com.tencent.mm"),
+                rule("work", "com.tencent.mm", 9 * 60, 18 * 60, AppRule.ALL_WEEKDAYS, 1)));
+        assertEquals("work", matcher.match("com.tencent.mm", 9 * 60, MONDAY).id);
+        assertEquals("work", matcher.match("com.tencent.mm", 18 * 60 - 1, MONDAY).id);
+        assertEquals("default", matcher.match("com.tencent.mm", 18 * 60, MONDAY).id);
+        assertEquals("default", matcher.match("com.tencent.mm", 8 * 60, MONDAY).id);
+    }
+
+    @Test
+    public void timeWindowWrapsMidnight() throws Exception {
+        AppRuleMatcher matcher = AppRuleMatcher.compile(Arrays.asList(
+                rule("night", "com.ss.android.ugc.aweme", 22 * 60, 2 * 60, AppRule.ALL_WEEKDAYS, 0)));
+        assertNotNull(matcher.match("com.ss.android.ugc.aweme", 23 * 60, MONDAY));
+        assertNotNull(matcher.match("com.ss.android.ugc.aweme", 60, MONDAY));
+        assertNull(matcher.match("com.ss.android.ugc.aweme", 12 * 60, MONDAY));
+    }
+
+    @Test
+    public void weekdayMask() throws Exception {
+        AppRuleMatcher matcher = AppRuleMatcher.compile(Arrays.asList(
+                rule("weekend", "com.netflix.*", AppRule.ALL_DAY, AppRule.ALL_DAY, (1 << 5) | SUNDAY, 0)));
+        assertNotNull(matcher.match("com.netflix.mediaclient", 600, SUNDAY));
+        assertNull(matcher.match("com.netflix.mediaclient", 600, MONDAY));
+    }
+
+    @Test
+    public void matchByTimestampUsesCompiledTimeZone() throws Exception {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        AppRuleMatcher matcher = AppRuleMatcher.compile(Arrays.asList(
+                rule("monday-morning", "com.tencent.mm", 9 * 60, 10 * 60, MONDAY, 0)), utc);
+        // 2024-01-01 (周一) 09:30 UTC
+        long mondayMorning = 1704101400000L;
+        assertNotNull(matcher.match("com.tencent.mm", mondayMorning));
+        assertNull(matcher.match("com.tencent.mm", mondayMorning + 24L * 60 * 60 * 1000));
+    }
+
+    @Test
+    public void emptyMatcher() throws Exception {
+        assertNull(AppRuleMatcher.EMPTY.match("com.tencent.mm", 600, MONDAY));
+        assertEquals(0, AppRuleMatcher.compile(Collections.<AppRule>emptyList()).size());
+    }
+}
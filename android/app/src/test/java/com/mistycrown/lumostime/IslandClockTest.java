@@ -0,0 +1,89 @@
+package com.mistycrown.lumostime;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+/**
+ * 悬浮球计时文本: 格式正确性 + 每次 tick 的分配量
+ * 分配量通过 com.sun.management.ThreadMXBean 在主机 JVM 上测量, 不支持时跳过该断言
+ */
+public class IslandClockTest {
+
+    private static final int WARMUP_TICKS = 200_000;
+    // 两小时的 500ms tick, 外加足够多的轮次让 JIT 稳定
+    private static final int MEASURE_TICKS = 2_000_000;
+
+    private static String text(IslandClock clock) {
+        return new String(clock.chars(), 0, clock.length());
+    }
+
+    @Test
+    public void formatsMinutesAndSeconds() {
+        IslandClock clock = new IslandClock();
+        assertTrue(clock.update(0));
+        assertEquals("00:00", text(clock));
+        assertTrue(clock.update(61_000));
+        assertEquals("01:01", text(clock));
+        assertTrue(clock.update(59 * 60_000L + 59_999));
+        assertEquals("59:59", text(clock));
+        assertEquals(IslandClock.SIZE_NORMAL, clock.sizeBucket());
+        assertTrue(clock.update(100 * 60_000L));
+        assertEquals("100:00", text(clock));
+        assertEquals(IslandClock.SIZE_SMALL, clock.sizeBucket());
+        assertTrue(clock.update(24 * 60 * 60_000L));
+        assertEquals("1440:00", text(clock));
+    }
+
+    @Test
+    public void reportsChangeOnlyWhenSecondChanges() {
+        IslandClock clock = new IslandClock();
+        assertTrue(clock.update(1_000));
+        assertFalse(clock.update(1_500));
+        assertFalse(clock.update(1_999));
+        assertTrue(clock.update(2_000));
+        clock.invalidate();
+        assertTrue(clock.update(2_000));
+        assertEquals("00:02", text(clock));
+    }
+
+    @Test
+    public void tickAlignsToNextSecond() {
+        assertEquals(1000, IslandClock.millisToNextSecond(0));
+        assertEquals(1, IslandClock.millisToNextSecond(1_999));
+        assertEquals(500, IslandClock.millisToNextSecond(12_500));
+    }
+
+    @Test
+    public void tickDoesNotAllocate() {
+        IslandClock clock = new IslandClock();
+        long changes = 0;
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            if (clock.update(i * 500L)) {
+                changes += clock.length();
+            }
+        }
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("allocation counter unavailable", bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_TICKS; i++) {
+            if (clock.update(i * 500L)) {
+                changes += clock.length();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        String measured = MEASURE_TICKS + " ticks, " + allocated + " bytes allocated, "
+                + (nanos / MEASURE_TICKS) + " ns/tick";
+        assertTrue("no display changes: " + measured, changes > 0);
+        // 计数器本身偶尔会有几十字节的噪声, 远小于每次 tick 一个 String (约 48 字节 x 两百万次)
+        assertTrue("allocation on tick path: " + measured, allocated < 1024);
+    }
+}
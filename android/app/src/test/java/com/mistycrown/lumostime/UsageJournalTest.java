@@ -0,0 +1,134 @@
+package com.mistycrown.lumostime;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 历史导入: 同一天重复导入 (包括中途被压缩进月度包后继续) 不会重复计数, 实时记录保留;
+ * 写入中途被杀留下的半条记录在下次追加前截掉
+ */
+public class UsageJournalTest {
+
+    private static final String DAY = "20240115";
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private File dir;
+    private long dayStart;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("journal").toFile();
+        dayStart = new SimpleDateFormat("yyyyMMdd", Locale.US).parse(DAY).getTime();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private int importSample(UsageJournal journal) {
+        long[] timestamps = { dayStart + HOUR, dayStart + 2 * HOUR, dayStart + 3 * HOUR };
+        String[] packages = { "com.tencent.mm", null, "com.android.chrome" };
+        int[] types = { UsageJournal.TYPE_FOREGROUND, UsageJournal.TYPE_SCREEN_OFF, UsageJournal.TYPE_FOREGROUND };
+        return journal.importDay(DAY, timestamps, packages, types, timestamps.length);
+    }
+
+    private List<Long> scanDay(UsageJournal journal) {
+        List<Long> result = new ArrayList<>();
+        journal.scan(dayStart, dayStart + 24 * HOUR, (timestamp, packageId, type) -> result.add(timestamp));
+        return result;
+    }
+
+    @Test
+    public void reimportReplacesSegmentRecords() {
+        UsageJournal journal = new UsageJournal(dir, null);
+        assertEquals(3, importSample(journal));
+        assertEquals(3, importSample(journal));
+        assertEquals(3, scanDay(journal).size());
+    }
+
+    @Test
+    public void reimportAfterCompactionDoesNotDoubleCount() {
+        UsageJournal journal = new UsageJournal(dir, null);
+        // 实时记录与导入记录混在同一天
+        journal.append(UsageJournal.TYPE_FOREGROUND, "com.example.live", dayStart + 4 * HOUR);
+        journal.flush();
+        assertEquals(3, importSample(journal));
+
+        // 导入后、标记完成前进程被杀, 启动时的压缩把这一天移进了月度包
+        journal.compactBefore("202402");
+        assertFalse(new File(dir, "d-" + DAY + ".seg").exists());
+        assertTrue(new File(dir, "m-202401.pack").exists());
+        assertEquals(4, scanDay(journal).size());
+
+        // 继续导入同一天
+        assertEquals(3, importSample(journal));
+        List<Long> records = scanDay(journal);
+        assertEquals(4, records.size());
+        assertTrue(records.contains(dayStart + 4 * HOUR));
+
+        // 再次压缩后依然只有一份
+        journal.compactBefore("202402");
+        assertEquals(4, scanDay(journal).size());
+    }
+
+    @Test
+    public void packStripOnlyTouchesThatDay() {
+        UsageJournal journal = new UsageJournal(dir, null);
+        long otherDay = dayStart + 24 * HOUR;
+        journal.importDay("20240116", new long[] { otherDay + HOUR }, new String[] { "com.tencent.mm" },
+                new int[] { UsageJournal.TYPE_FOREGROUND }, 1);
+        importSample(journal);
+        journal.compactBefore("202402");
+
+        importSample(journal);
+        List<Long> other = new ArrayList<>();
+        journal.scan(otherDay, otherDay + 24 * HOUR, (timestamp, packageId, type) -> other.add(timestamp));
+        assertEquals(1, other.size());
+        assertEquals(3, scanDay(journal).size());
+    }
+
+    @Test
+    public void tornSegmentTailIsTruncatedBeforeAppend() throws Exception {
+        UsageJournal journal = new UsageJournal(dir, null);
+        journal.append(UsageJournal.TYPE_FOREGROUND, "com.tencent.mm", dayStart + HOUR);
+        journal.flush();
+
+        // 写入中途进程被杀: 分段末尾留下半条记录
+        File segment = new File(dir, "d-" + DAY + ".seg");
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            out.write(new byte[] { 0, 0, 1, 2, 3 });
+        }
+
+        UsageJournal restarted = new UsageJournal(dir, null);
+        restarted.append(UsageJournal.TYPE_FOREGROUND, "com.android.chrome", dayStart + 2 * HOUR);
+        restarted.flush();
+        restarted.append(UsageJournal.TYPE_SCREEN_OFF, null, dayStart + 3 * HOUR);
+        restarted.flush();
+
+        assertEquals(3 * 16, segment.length());
+        List<Long> records = scanDay(restarted);
+        assertEquals(3, records.size());
+        assertTrue(records.contains(dayStart + 2 * HOUR));
+        assertTrue(records.contains(dayStart + 3 * HOUR));
+
+        restarted.compactBefore("202402");
+        assertEquals(records, scanDay(restarted));
+    }
+}
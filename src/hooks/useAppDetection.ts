@@ -1,7 +1,7 @@
 /**
  * @file useAppDetection.ts
- * @input SessionContext (activeSessions), SettingsContext (appRules), CategoryScopeContext (categories), ToastContext (addToast), handleStartActivity callback
- * @output App Detection Listener (startFocusFromPrompt event handler)
+ * @input SettingsContext (appRules), CategoryScopeContext (categories), ToastContext (addToast), handleStartActivity callback
+ * @output App Detection Listener (FocusNotification 'startFocusFromPrompt' plugin event handler)
  * @pos Hook (System Integration)
  * @description 应用检测 Hook - 监听悬浮球触发的应用启动事件，自动关联并启动对应的活动计时
  * 
@@ -9,24 +9,31 @@
  */
 import { useEffect, useRef } from 'react';
 import { Capacitor } from '@capacitor/core';
-import { useSession } from '../contexts/SessionContext';
 import { useSettings } from '../contexts/SettingsContext';
 import { useCategoryScope } from '../contexts/CategoryScopeContext';
 import { useToast } from '../contexts/ToastContext';
+import FocusNotification, { isStaleFocusRequest, StartFocusFromPromptEvent } from '../plugins/FocusNotificationPlugin';
 
 export const useAppDetection = (
     handleStartActivity: (activity: any, categoryId: string, todoId?: string, scopeIdOrIds?: string | string[], note?: string) => void
 ) => {
-    const { activeSessions } = useSession();
     const { appRules } = useSettings();
     const { categories } = useCategoryScope();
     const { addToast } = useToast();
     const lastPromptTimeRef = useRef(0);
+    // 监听只注册一次: 原生端只在没有监听时保留请求, 反复注销 / 注册的间隙里到达的请求会丢失; 处理时读取最新状态
+    const latestRef = useRef({ appRules, categories, addToast, handleStartActivity });
+    latestRef.current = { appRules, categories, addToast, handleStartActivity };
 
     useEffect(() => {
         const setupAppDetectionListener = () => {
-            const handleStartFromPrompt = (event: any) => {
+            const handleStartFromPrompt = (event: StartFocusFromPromptEvent) => {
                 try {
+                    const { appRules, categories, addToast, handleStartActivity } = latestRef.current;
+                    if (isStaleFocusRequest(event)) {
+                        console.log('⌛ 忽略过期的悬浮球开始计时请求');
+                        return;
+                    }
                     const now = Date.now();
                     if (now - lastPromptTimeRef.current < 3000) {
                         console.log('⏳ 忽略重复点击事件 (Debounced)');
@@ -36,24 +43,7 @@ export const useAppDetection = (
 
                     console.log('📥 收到悬浮球开始计时事件:', event);
 
-                    let packageName = '';
-                    let appLabel = '';
-                    let realAppName = '';
-                    let eventActivityId = '';
-
-                    if (event.detail) {
-                        const data = typeof event.detail === 'string' ? JSON.parse(event.detail) : event.detail;
-                        packageName = data.packageName;
-                        appLabel = data.appLabel;
-                        realAppName = data.realAppName;
-                        eventActivityId = data.activityId;
-                    } else {
-                        // Keep compatibility with potential raw events
-                        packageName = event.packageName;
-                        appLabel = event.appLabel;
-                        realAppName = event.realAppName;
-                        eventActivityId = event.activityId;
-                    }
+                    const { packageName, appLabel, realAppName, activityId: eventActivityId } = event;
 
                     if (!packageName) {
                         console.warn('⚠️ packageName为空');
@@ -92,9 +82,10 @@ export const useAppDetection = (
                 }
             };
 
-            window.addEventListener('startFocusFromPrompt', handleStartFromPrompt);
+            // 页面加载前的点击由原生端保留, 注册监听时补发
+            const listener = FocusNotification.addListener('startFocusFromPrompt', handleStartFromPrompt);
             return () => {
-                window.removeEventListener('startFocusFromPrompt', handleStartFromPrompt);
+                listener.then(handle => handle.remove());
             };
         };
 
@@ -103,5 +94,5 @@ export const useAppDetection = (
             const cleanup = setupAppDetectionListener();
             return cleanup;
         }
-    }, [activeSessions, appRules, categories]);
+    }, []);
 };
@@ -1,26 +1,35 @@
 /**
  * @file useFloatingWindow.ts
  * @input SessionContext (activeSessions), ToastContext (addToast), handleStopActivity callback
- * @output Floating Window Listener (stopFocusFromFloating event handler)
+ * @output Floating Window Listener (FocusNotification 'stopFocusFromFloating' plugin event handler)
  * @pos Hook (System Integration)
  * @description 悬浮窗 Hook - 监听 Android 悬浮窗的结束计时事件，自动停止所有活动会话
  * 
  * ⚠️ Once I am updated, be sure to update my header comment and the folder's md.
  */
-import { useEffect } from 'react';
+import { useEffect, useRef } from 'react';
 import { Capacitor } from '@capacitor/core';
 import { useSession } from '../contexts/SessionContext';
 import { useToast } from '../contexts/ToastContext';
+import FocusNotification, { isStaleFocusRequest, StopFocusFromFloatingEvent } from '../plugins/FocusNotificationPlugin';
 
 export const useFloatingWindow = (
     handleStopActivity: (sessionId: string) => void
 ) => {
     const { activeSessions } = useSession();
     const { addToast } = useToast();
+    // 监听只注册一次: 原生端只在没有监听时保留请求, 反复注销 / 注册的间隙里到达的请求会丢失; 处理时读取最新状态
+    const latestRef = useRef({ activeSessions, addToast, handleStopActivity });
+    latestRef.current = { activeSessions, addToast, handleStopActivity };
 
     useEffect(() => {
         const setupFloatingWindowListener = () => {
-            const handleStopFromFloating = () => {
+            const handleStopFromFloating = (event: StopFocusFromFloatingEvent) => {
+                const { activeSessions, addToast, handleStopActivity } = latestRef.current;
+                if (isStaleFocusRequest(event)) {
+                    console.log('⌛ 忽略过期的悬浮球结束计时请求');
+                    return;
+                }
                 console.log('📥 收到悬浮球结束计时事件');
 
                 if (activeSessions.length > 0) {
@@ -34,9 +43,10 @@ export const useFloatingWindow = (
                 }
             };
 
-            window.addEventListener('stopFocusFromFloating', handleStopFromFloating);
+            // 页面加载前的点击由原生端保留, 注册监听时补发
+            const listener = FocusNotification.addListener('stopFocusFromFloating', handleStopFromFloating);
             return () => {
-                window.removeEventListener('stopFocusFromFloating', handleStopFromFloating);
+                listener.then(handle => handle.remove());
             };
         };
 
@@ -45,5 +55,5 @@ export const useFloatingWindow = (
             const cleanup = setupFloatingWindowListener();
             return cleanup;
         }
-    }, [activeSessions]);
+    }, []);
 };
@@ -7,21 +7,281 @@
  * 
  * ⚠️ Once I am updated, be sure to update my header comment and the folder's md.
  */
-import { registerPlugin } from '@capacitor/core';
+import { registerPlugin, PluginListenerHandle } from '@capacitor/core';
+
+export interface InstalledAppInfo {
+    packageName: string;
+    label: string;
+    /** base64 data URL, or an icon URL served by the native WebViewClient when iconMode is 'url' */
+    icon: string;
+}
+
+/** 'base64' (默认) 内联图标数据; 'url' 返回 /_lumos_icon_/ 地址, 由 <img> 按需加载 */
+export type AppIconMode = 'base64' | 'url';
+
+/**
+ * 流式应用列表的分批事件: phase=labels 只有 packageName/label, phase=icons 只有 packageName/icon
+ */
+export interface InstalledAppsChunkEvent {
+    streamId: number;
+    phase: 'labels' | 'icons';
+    apps: Partial<InstalledAppInfo>[];
+}
+
+export interface InstalledAppsStreamResult {
+    streamId: number;
+    total: number;
+    iconsSent: number;
+    cancelled: boolean;
+    timing: { firstChunkMs: number; labelsMs: number; iconsMs: number; totalMs: number };
+}
+
+export interface InstalledAppsDelta {
+    /** 下次调用时传回的 sinceToken */
+    token: string;
+    /** sinceToken 无效时为 true, 此时 added 是完整清单 */
+    reset: boolean;
+    added: InstalledAppInfo[];
+    updated: InstalledAppInfo[];
+    removed: string[];
+}
+
+export interface AppRuleInput {
+    /** 包名或通配模式, 例如 'com.tencent.*' */
+    packageName: string;
+    activityId: string;
+    activityName?: string;
+    /** 规则 id, 默认等于 packageName; 同一应用按时段关联不同活动时需指定 */
+    id?: string;
+    /** 当天分钟数 [0, 1440), 两者都不填表示全天; end < start 表示跨越午夜 */
+    startMinute?: number;
+    endMinute?: number;
+    /** 星期位掩码, bit0 = 周一 ... bit6 = 周日, 默认 0x7F */
+    weekdays?: number;
+    /** 多条规则同时命中时数值大者优先, 默认 0 */
+    priority?: number;
+}
+
+export interface AppRuleDetail extends Required<AppRuleInput> {}
+
+export interface AppRuleBatchResult {
+    /** 提交后的规则集版本, 与 getAppRules().version 一致 */
+    version: number;
+    /** 是否有实际修改 (无修改时不会写盘) */
+    changed: boolean;
+    results: { id: string; packageName: string; status: 'added' | 'updated' | 'unchanged' | 'removed' | 'notFound' }[];
+    /** 缺少必填字段而被跳过的条目下标 */
+    invalid: number[];
+}
+
+export interface DetectorStats {
+    polls: number;
+    /** 最近一次轮询扫描的事件数 */
+    lastEventsScanned: number;
+    maxEventsScanned: number;
+    totalEventsScanned: number;
+    avgEventsScanned: number;
+    bootstrapQueries: number;
+    /** queryUsageStats 兜底查询次数 */
+    fallbackQueries: number;
+    cursorMillis: number;
+    foregroundPackage: string;
+}
+
+/** 前台检测线程耗时 (毫秒) */
+export interface DetectionMetrics {
+    switches: number;
+    detectionTasks: number;
+    /** 在检测线程上执行的工作, 迁移前全部占用主线程 */
+    detectionMs: number;
+    detectionMaxMs: number;
+    /** 仍在主线程执行的界面更新 */
+    mainThreadTasks: number;
+    mainThreadMs: number;
+    mainThreadMaxMs: number;
+    mainThreadSavedMsPerSwitch: number;
+    mainThreadMsPerSwitch: number;
+    /** 应用元数据缓存 (名称/可启动/桌面) 命中次数 */
+    metadataCacheHits: number;
+    metadataCacheMisses: number;
+    /**
+     * 可启动/桌面集合的查询次数; 其中原先逐包查询 PackageManager 的路径需要发起 IPC 的次数 (包首次出现或变化后首次出现);
+     * 以及构建/更新集合实际花费的 IPC 次数
+     */
+    launchableLookups: number;
+    launchableIpcAvoided: number;
+    launchableIpcSpent: number;
+    launchableFullBuilds: number;
+    launchableIncrementalUpdates: number;
+    /** 无障碍窗口事件总数 / 其中被过滤的 (不可启动的系统窗口) */
+    windowEvents: number;
+    windowEventsFiltered: number;
+    /** 合并阶段丢弃 (未稳定即被取代或回到原应用) / 交付的切换次数 */
+    switchesDropped: number;
+    switchesDelivered: number;
+}
+
+/**
+ * 前台应用变化推送 (替代轮询 getRunningApp)
+ * 只在应用真正变化时推送, 两次推送间隔不小于 minIntervalMs, 节流期间只保留最新的应用
+ */
+export interface ForegroundAppChangedEvent {
+    packageName: string;
+    appLabel: string;
+    /** 单调递增, 可与 getRunningApp 返回的 sequence 比较丢弃旧事件 */
+    sequence: number;
+    /** 节流期间被覆盖、没有推送的切换次数 */
+    skipped: number;
+    /** 切换发生的时间 (毫秒时间戳) */
+    timestamp: number;
+}
+
+export interface ForegroundStreamStatus {
+    minIntervalMs: number;
+    sequence: number;
+    emitted: number;
+    throttled: number;
+}
+
+/** 原生会话统计 (当日), totalMs 包含正在进行的会话 */
+export interface AppSessionTotals {
+    packageName: string;
+    totalMs: number;
+    /** 会话次数, 短于 1.5s 的误入和跳出后恢复的会话不计 */
+    sessions: number;
+    /** 是否为当前打开的会话 */
+    active: boolean;
+}
+
+/** 磁盘日志中的一条记录; screenOff/screenOn 没有 packageName */
+export interface JournalRecord {
+    timestamp: number;
+    type: 'foreground' | 'home' | 'screenOff' | 'screenOn' | 'unknown';
+    packageName?: string;
+}
+
+export interface JournalStats {
+    /** 本次进程追加的记录数 / 写盘次数 */
+    appended: number;
+    flushes: number;
+    packages: number;
+    /** 日分段 + 月度包 */
+    files: number;
+    bytesOnDisk: number;
+}
+
+export type UsageGranularity = 'hour' | 'day' | 'week';
+
+/**
+ * 原生汇总的使用时长, 平行数组:
+ * packages[i] / labels[i] / totalMs[i] 为第 i 个应用 (按总时长降序),
+ * durationsMs[i * bucketCount + b] 为该应用在 bucketStarts[b] 开始的时间段内的时长
+ */
+export interface UsageSummary {
+    /** 按本地时间对齐, 第一段从 start 开始, 最后一段到 end 为止 */
+    bucketStarts: number[];
+    bucketCount: number;
+    packages: string[];
+    labels: string[];
+    totalMs: number[];
+    durationsMs: number[];
+    days: number;
+    computeMs: number;
+}
+
+/**
+ * 每日汇总, 平行数组: dailyMs[i * days.length + d] 为 packages[i] 在 days[d] 的时长
+ * days 为本地日期 yyyyMMdd (数字), 今天包含进行中的会话
+ */
+export interface UsageRollup {
+    days: number[];
+    packages: string[];
+    totalMs: number[];
+    switches: number[];
+    dailyMs: number[];
+    /** 从封存索引读取的天数 (其余为今天或没有记录) */
+    sealedDays: number;
+    computeMs: number;
+}
+
+export interface UsageRollupMismatch {
+    day: number;
+    packageName: string;
+    indexedMs: number;
+    rawMs: number;
+    indexedSwitches: number;
+    rawSwitches: number;
+}
+
+/**
+ * 历史记录导入进度 (usageBackfillProgress 事件 / getUsageBackfillStatus)
+ * 导入窗口为 [windowStart, cutoff), cutoff 为开始记录日志的时间; 中断后会从已完成的日期之后继续
+ */
+export interface UsageBackfillProgress {
+    state: 'idle' | 'running' | 'done' | 'failed';
+    totalDays: number;
+    completedDays: number;
+    importedEvents: number;
+    /** 本次运行开始时已完成的天数, 大于 0 表示从断点继续 */
+    resumedDays: number;
+    windowStart: number;
+    cutoff: number;
+}
+
+/** 后台监测服务的轮询策略 */
+export interface MonitorPollOptions {
+    /** 应用切换后的轮询间隔, 默认 1000ms */
+    minIntervalMs?: number;
+    /** 前台应用稳定时退避到的最大间隔, 默认 15000ms */
+    maxIntervalMs?: number;
+    /** 每次未检测到切换时间隔乘以该系数, 默认 1.5 */
+    backoffFactor?: number;
+    /** 熄屏时暂停轮询, 解锁后恢复, 默认 true */
+    pauseWhenScreenOff?: boolean;
+}
 
 export interface AppUsagePlugin {
     checkPermissions(): Promise<{ granted: boolean }>;
     requestPermissions(): Promise<void>;
     checkAccessibilityPermission(): Promise<{ granted: boolean }>;
     requestAccessibilityPermission(): Promise<void>;
-    getRunningApp(): Promise<{ packageName: string }>;
-    getInstalledApps(): Promise<{ apps: { packageName: string; label: string; icon: string }[] }>;
-    saveAppRule(options: { packageName: string; activityId: string; activityName?: string }): Promise<void>;
-    removeAppRule(options: { packageName: string }): Promise<void>;
-    getAppRules(): Promise<{ rules: { [packageName: string]: string } }>;
-    startMonitor(): Promise<void>;
+    getRunningApp(): Promise<{ packageName: string; sequence?: number }>;
+    /** foregroundAppChanged 推送的最小间隔, 默认 500ms */
+    getSessionTotals(options: { packageName: string }): Promise<AppSessionTotals>;
+    getSessionTotals(): Promise<{ apps: AppSessionTotals[]; currentPackage: string; currentDurationMs: number }>;
+    /** 读取 [from, to) 内的日志记录, 默认最近 24 小时, 最多 limit (默认 5000) 条 */
+    queryJournal(options?: { from?: number; to?: number; limit?: number }): Promise<{ records: JournalRecord[]; total: number; truncated: boolean }>;
+    getJournalStats(): Promise<JournalStats>;
+    /** 获得使用情况访问权限后会自动开始, 一般不需要手动调用 */
+    startUsageBackfill(): Promise<UsageBackfillProgress & { started: boolean }>;
+    getUsageBackfillStatus(): Promise<UsageBackfillProgress>;
+    /** start/end (毫秒) 所在的本地日期, 或截至今天的 days 天 (默认 7) */
+    queryUsageRollup(options?: { start?: number; end?: number; days?: number }): Promise<UsageRollup>;
+    rebuildUsageRollup(): Promise<{ sealedDays: number; computeMs: number }>;
+    /** 用原始日志重新计算最近 days 天 (默认 30) 并比较 */
+    verifyUsageRollup(options?: { days?: number }): Promise<{ consistent: boolean; mismatches: UsageRollupMismatch[] }>;
+    /** 默认 granularity 为 'day', source 为 'journal' (磁盘日志); 'system' 使用系统 UsageStats 事件 */
+    queryUsageSummary(options: { start: number; end?: number; granularity?: UsageGranularity; source?: 'journal' | 'system' }): Promise<UsageSummary>;
+    setForegroundStreamOptions(options: { minIntervalMs?: number }): Promise<ForegroundStreamStatus>;
+    getDetectorStats(): Promise<DetectorStats>;
+    getDetectionMetrics(options?: { reset?: boolean }): Promise<DetectionMetrics>;
+    setSwitchDebounce(options: { settleMs?: number; minDwellMs?: number }): Promise<{ settleMs: number; minDwellMs: number }>;
+    getInstalledApps(options?: { iconMode?: AppIconMode }): Promise<{ apps: InstalledAppInfo[] }>;
+    getInstalledApps(options: { stream: true; chunkSize?: number; iconMode?: AppIconMode }): Promise<InstalledAppsStreamResult>;
+    cancelInstalledApps(): Promise<void>;
+    getInstalledAppsDelta(options?: { sinceToken?: string; includeIcons?: boolean; iconMode?: AppIconMode }): Promise<InstalledAppsDelta>;
+    saveAppRule(options: AppRuleInput): Promise<void>;
+    removeAppRule(options: { packageName: string; id?: string }): Promise<void>;
+    saveAppRules(options: { rules: AppRuleInput[] }): Promise<AppRuleBatchResult>;
+    removeAppRules(options: { packageNames: string[] }): Promise<AppRuleBatchResult>;
+    replaceAllRules(options: { rules: AppRuleInput[] }): Promise<AppRuleBatchResult>;
+    getAppRules(): Promise<{ rules: { [packageName: string]: string }; names: { [packageName: string]: string }; details: AppRuleDetail[]; version: number }>;
+    startMonitor(options?: MonitorPollOptions): Promise<void>;
     stopMonitor(): Promise<void>;
     showFloatingText(options: { text: string }): Promise<void>;
+    addListener(eventName: 'installedAppsChunk', listenerFunc: (event: InstalledAppsChunkEvent) => void): Promise<PluginListenerHandle>;
+    addListener(eventName: 'usageBackfillProgress', listenerFunc: (event: UsageBackfillProgress) => void): Promise<PluginListenerHandle>;
+    addListener(eventName: 'foregroundAppChanged', listenerFunc: (event: ForegroundAppChangedEvent) => void): Promise<PluginListenerHandle>;
 }
 
 const AppUsage = registerPlugin<AppUsagePlugin>('AppUsage');
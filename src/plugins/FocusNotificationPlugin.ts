@@ -8,6 +8,60 @@
  * ⚠️ Once I am updated, be sure to update my header comment and the folder's md.
  */
 import { registerPlugin } from '@capacitor/core';
+import type { PluginListenerHandle } from '@capacitor/core';
+
+/**
+ * 悬浮球点击请求的最长有效期; 超过该时长 (例如数小时后才打开应用) 的请求直接丢弃
+ * 与原生端 FocusNotificationPlugin.REQUEST_MAX_AGE_MS 一致
+ */
+export const FOCUS_REQUEST_MAX_AGE_MS = 60_000;
+
+/**
+ * 专注中点击悬浮球: 请求结束计时
+ * 页面尚未加载 / 尚未订阅时由原生端保留, 在 addListener 时补发一次
+ */
+export interface StopFocusFromFloatingEvent {
+    /** 点击时间 (毫秒时间戳) */
+    requestedAt: number;
+}
+
+/**
+ * 提醒模式下点击悬浮球: 请求开始计时 (投递方式同上)
+ */
+export interface StartFocusFromPromptEvent {
+    packageName: string;
+    /** 提醒显示的名称 (标签名称, 没有时为应用名) */
+    appLabel: string;
+    realAppName: string;
+    activityId: string;
+    requestedAt: number;
+}
+
+/**
+ * 请求是否已过期
+ */
+export const isStaleFocusRequest = (event: { requestedAt?: number }): boolean =>
+    typeof event.requestedAt === 'number' && Date.now() - event.requestedAt > FOCUS_REQUEST_MAX_AGE_MS;
+
+/**
+ * 悬浮球渲染统计 (进程内累计)
+ * 屏幕关闭 / 锁屏 / Doze / 悬浮窗被隐藏 时计时循环与动画暂停
+ */
+export interface IslandRenderMetrics {
+    /** 悬浮窗服务是否在运行 */
+    running: boolean;
+    /** 当前是否处于暂停状态 */
+    suspended: boolean;
+    activeMs: number;
+    suspendedMs: number;
+    suspendCount: number;
+    /** 计时循环实际执行的次数 */
+    ticks: number;
+    screenOn: boolean;
+    keyguardLocked: boolean;
+    deviceIdle: boolean;
+    windowVisible: boolean;
+}
 
 /**
  * 专注通知插件接口
@@ -38,6 +92,17 @@ export interface FocusNotificationPlugin {
      */
     stopFloatingWindow(): Promise<void>;
 
+    /**
+     * 获取悬浮球渲染统计 (活跃 / 暂停时长)
+     */
+    getIslandRenderMetrics(): Promise<IslandRenderMetrics>;
+
+    /**
+     * 悬浮球点击请求
+     */
+    addListener(eventName: 'stopFocusFromFloating', listenerFunc: (event: StopFocusFromFloatingEvent) => void): Promise<PluginListenerHandle>;
+    addListener(eventName: 'startFocusFromPrompt', listenerFunc: (event: StartFocusFromPromptEvent) => void): Promise<PluginListenerHandle>;
+
     /**
      * Add a listener for a plugin event
      */
@@ -8,7 +8,7 @@
  * ⚠️ Once I am updated, be sure to update my header comment and the folder's md.
  */
 import { WebPlugin } from '@capacitor/core';
-import type { FocusNotificationPlugin } from './FocusNotificationPlugin';
+import type { FocusNotificationPlugin, IslandRenderMetrics } from './FocusNotificationPlugin';
 
 /**
  * Web平台占位实现（不执行任何操作）
@@ -35,4 +35,20 @@ export class FocusNotificationWeb extends WebPlugin implements FocusNotification
     async stopFloatingWindow(): Promise<void> {
         console.log('FocusNotification.stopFloatingWindow (Web - No-op)');
     }
+
+    async getIslandRenderMetrics(): Promise<IslandRenderMetrics> {
+        console.log('FocusNotification.getIslandRenderMetrics (Web - No-op)');
+        return {
+            running: false,
+            suspended: false,
+            activeMs: 0,
+            suspendedMs: 0,
+            suspendCount: 0,
+            ticks: 0,
+            screenOn: true,
+            keyguardLocked: false,
+            deviceIdle: false,
+            windowVisible: true,
+        };
+    }
 }
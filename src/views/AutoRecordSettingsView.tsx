@@ -10,6 +10,7 @@
 import React, { useEffect, useState, useMemo } from 'react';
 import { ArrowLeft, Check, ShieldAlert, Smartphone, ChevronRight, X, Search, Link as LinkIcon, Trash2 } from 'lucide-react';
 import AppUsage from '../plugins/AppUsagePlugin';
+import { PluginListenerHandle } from '@capacitor/core';
 import { Category, Activity } from '../types';
 
 interface Props {
@@ -20,7 +21,7 @@ interface Props {
 interface InstalledApp {
     packageName: string;
     label: string;
-    icon: string; // Base64
+    icon: string; // Icon URL (or Base64), empty until delivered
 }
 
 interface AppRule {
@@ -42,6 +43,10 @@ export const AutoRecordSettingsView: React.FC<Props> = ({ onBack, categories })
     useEffect(() => {
         checkPermission();
         loadData();
+        // 离开页面时取消尚未完成的图标加载
+        return () => {
+            AppUsage.cancelInstalledApps().catch(() => { });
+        };
     }, []);
 
     // Re-check permission on resume
@@ -58,25 +63,53 @@ export const AutoRecordSettingsView: React.FC<Props> = ({ onBack, categories })
         } catch (e) { console.error(e); }
     };
 
+    const sortApps = (apps: InstalledApp[], ruleMap: { [key: string]: string }) => {
+        // Sort: Apps with rules first, then alphabetical
+        return [...apps].sort((a, b) => {
+            const hasRuleA = !!ruleMap[a.packageName];
+            const hasRuleB = !!ruleMap[b.packageName];
+            if (hasRuleA && !hasRuleB) return -1;
+            if (!hasRuleA && hasRuleB) return 1;
+            return a.label.localeCompare(b.label);
+        });
+    };
+
     const loadData = async () => {
         setIsLoading(true);
+        let listener: PluginListenerHandle | null = null;
         try {
             // Load rules first
             const rulesRes = await AppUsage.getAppRules();
-            setRules(rulesRes.rules || {});
-
-            // Load apps
-            const appsRes = await AppUsage.getInstalledApps();
-            // Sort: Apps with rules first, then alphabetical
-            const sorted = (appsRes.apps || []).sort((a, b) => {
-                const hasRuleA = !!rulesRes.rules[a.packageName];
-                const hasRuleB = !!rulesRes.rules[b.packageName];
-                if (hasRuleA && !hasRuleB) return -1;
-                if (!hasRuleA && hasRuleB) return 1;
-                return a.label.localeCompare(b.label);
+            const ruleMap = rulesRes.rules || {};
+            setRules(ruleMap);
+
+            // Stream apps: labels arrive first; icons are URLs the WebView loads lazily from the native icon cache
+            let activeStream: number | null = null;
+            listener = await AppUsage.addListener('installedAppsChunk', (event) => {
+                if (activeStream === null) activeStream = event.streamId;
+                if (event.streamId !== activeStream) return;
+
+                if (event.phase === 'labels') {
+                    const chunk = event.apps.map(app => ({
+                        packageName: app.packageName!,
+                        label: app.label || app.packageName!,
+                        icon: app.icon || '',
+                    }));
+                    setInstalledApps(prev => sortApps([...prev, ...chunk], ruleMap));
+                    setIsLoading(false);
+                } else {
+                    const icons = new Map(event.apps.map(app => [app.packageName!, app.icon || '']));
+                    setInstalledApps(prev => prev.map(app =>
+                        icons.has(app.packageName) ? { ...app, icon: icons.get(app.packageName)! } : app
+                    ));
+                }
             });
-            setInstalledApps(sorted);
+
+            setInstalledApps([]);
+            const summary = await AppUsage.getInstalledApps({ stream: true, chunkSize: 30, iconMode: 'url' });
+            console.log(`📱 应用列表: ${summary.total} 个, 首批 ${summary.timing.firstChunkMs}ms, 总耗时 ${summary.timing.totalMs}ms${summary.cancelled ? ' (已取消)' : ''}`);
         } catch (e) { console.error(e); }
+        if (listener) listener.remove();
         setIsLoading(false);
     };
 
@@ -301,7 +334,7 @@ export const AutoRecordSettingsView: React.FC<Props> = ({ onBack, categories })
                                         >
                                             <div className="w-10 h-10 shrink-0">
                                                 {app.icon ? (
-                                                    <img src={app.icon} className="w-full h-full object-contain" />
+                                                    <img src={app.icon} loading="lazy" className="w-full h-full object-contain" />
                                                 ) : (
                                                     <div className="w-full h-full bg-stone-100 rounded-full flex items-center justify-center">
                                                         <Smartphone size={16} className="text-stone-400" />